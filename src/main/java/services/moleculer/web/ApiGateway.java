@@ -27,31 +27,41 @@ package services.moleculer.web;
 
 import static services.moleculer.util.CommonUtils.nameOf;
 import static services.moleculer.web.common.HttpConstants.CONTENT_LENGTH;
+import static services.moleculer.web.common.HttpConstants.PROPERTY_PATH_PARAMS;
 
 import java.util.Arrays;
 import java.util.Collection;
 import java.util.HashSet;
-import java.util.LinkedHashMap;
 import java.util.LinkedHashSet;
 import java.util.LinkedList;
-import java.util.Map;
+import java.util.List;
 import java.util.Objects;
 import java.util.Set;
+import java.util.UUID;
 import java.util.concurrent.ExecutorService;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 import io.datatree.Tree;
 import services.moleculer.ServiceBroker;
+import services.moleculer.context.CallOptions;
+import services.moleculer.error.MoleculerError;
 import services.moleculer.eventbus.Listener;
 import services.moleculer.eventbus.Subscribe;
+import services.moleculer.service.Action;
 import services.moleculer.service.Service;
+import services.moleculer.web.common.WebSocketSubscriptions;
+import services.moleculer.web.common.WebSocketSubscriptions.Subscriber;
 import services.moleculer.web.middleware.HttpMiddleware;
 import services.moleculer.web.middleware.NotFound;
 import services.moleculer.web.router.Alias;
+import services.moleculer.web.router.AliasMatcher;
 import services.moleculer.web.router.Mapping;
+import services.moleculer.web.router.MappingCache;
 import services.moleculer.web.router.MappingPolicy;
+import services.moleculer.web.router.MappingTree;
+import services.moleculer.web.router.PathOffsets;
 import services.moleculer.web.router.Route;
 import services.moleculer.web.template.AbstractTemplateEngine;
 
@@ -86,14 +96,14 @@ public class ApiGateway extends Service implements RequestProcessor {
 	// --- VARIABLES ---
 
 	/**
-	 * Static mappings.
+	 * Cached mappings of the white lists (key: "METHOD path").
 	 */
-	protected LinkedHashMap<String, Mapping> staticMappings;
+	protected final MappingCache mappingCache = new MappingCache(cachedRoutes);
 
 	/**
-	 * Dynamic mappings.
+	 * Compiled aliases of the Routes (rebuilt when the Routes change).
 	 */
-	protected final LinkedList<Mapping> dynamicMappings = new LinkedList<>();
+	protected volatile MappingTree mappingTree = new MappingTree();
 
 	/**
 	 * Global middlewares.
@@ -124,6 +134,42 @@ public class ApiGateway extends Service implements RequestProcessor {
 	 */
 	protected WebSocketFilter webSocketFilter;
 
+	// --- CLUSTER-AWARE WEBSOCKET DELIVERY ---
+
+	/**
+	 * Advertise the subscribed WebSocket paths of this node to the other
+	 * gateways (required by "sendWebSocket").
+	 */
+	protected boolean advertiseWebSockets = true;
+
+	/**
+	 * Period of the re-advertisements in seconds (the advertisements expire
+	 * after three periods).
+	 */
+	protected long webSocketAdvertiseInterval = 15;
+
+	/**
+	 * Delay of the advertisements after the changes in milliseconds (the
+	 * changes in this period are sent in one message).
+	 */
+	protected long webSocketAdvertiseDelay = 50;
+
+	/**
+	 * Subscribed paths of the other gateways.
+	 */
+	protected final WebSocketSubscriptions webSocketSubscriptions = new WebSocketSubscriptions();
+
+	/**
+	 * Random token of this gateway, advertised only in the
+	 * "websocket.subscriptions" events. The "deliverWebSocket" action rejects
+	 * the calls without it (eg. REST calls via a MappingPolicy.ALL route).
+	 */
+	protected final String webSocketToken = UUID.randomUUID().toString();
+
+	protected final AtomicBoolean advertisementScheduled = new AtomicBoolean();
+
+	protected ScheduledFuture<?> advertiseTimer;
+
 	// --- CUSTOM PRE/POST PROCESSORS ---
 
 	/**
@@ -144,15 +190,12 @@ public class ApiGateway extends Service implements RequestProcessor {
 	 */
 	protected ExecutorService executor;
 
-	// --- LOCKS FOR MAPPINGS ---
-
-	protected final ReadLock readLock;
-	protected final WriteLock writeLock;
-
 	// --- SEND WEBSOCKET ---
 
 	/**
-	 * Send WebSocket via broadcasted Moleculer Event.
+	 * Send WebSocket via broadcasted Moleculer Event. Binary "data" (byte
+	 * array, or Base64 String with the "binary" flag) is sent in binary frames,
+	 * without conversion.
 	 */
 	@Subscribe("websocket.send")
 	public Listener webSocketListener = ctx -> {
@@ -172,6 +215,10 @@ public class ApiGateway extends Service implements RequestProcessor {
 			path = '/' + path;
 		}
 		Tree data = ctx.params.get("data");
+		if (isBinary(ctx.params, data)) {
+			webSocketRegistry.send(path, data.asBytes());
+			return;
+		}
 		String msg;
 		if (data == null) {
 			msg = "null";
@@ -181,11 +228,97 @@ public class ApiGateway extends Service implements RequestProcessor {
 		webSocketRegistry.send(path, msg);
 	};
 
+	/**
+	 * Send WebSocket via emitted Moleculer Event. Only one gateway receives
+	 * the event, which forwards the message to the nodes that have clients on
+	 * the path (see "sendWebSocket").
+	 */
+	@Subscribe("websocket.publish")
+	public Listener webSocketPublishListener = ctx -> {
+		if (ctx.params == null) {
+			return;
+		}
+		String path = ctx.params.get("path", "");
+		if (path == null || path.isEmpty()) {
+			logger.warn("Invalid websocket packet, the \"path\" parameter is required: " + ctx.params);
+			return;
+		}
+		Tree data = ctx.params.get("data");
+		if (isBinary(ctx.params, data)) {
+			sendWebSocket(path, data.asBytes());
+		} else {
+			sendWebSocket(path, data);
+		}
+	};
+
+	/**
+	 * Subscribed WebSocket paths of another gateway.
+	 */
+	@Subscribe("websocket.subscriptions")
+	public Listener webSocketSubscriptionListener = ctx -> {
+		if (ctx.params == null || broker == null) {
+			return;
+		}
+		String nodeID = ctx.params.get("nodeID", "");
+		String service = ctx.params.get("service", "");
+		if (nodeID.isEmpty() || (nodeID.equals(broker.getNodeID()) && service.equals(name))) {
+			return;
+		}
+		HashSet<String> paths = new HashSet<>();
+		Tree list = ctx.params.get("paths");
+		if (list != null) {
+			for (Tree path : list) {
+				paths.add(path.asString());
+			}
+		}
+		long timeToLive = ctx.params.get("ttl", 0L);
+		String token = ctx.params.get("token", "");
+		boolean unknown = webSocketSubscriptions.update(nodeID, service, paths, timeToLive, token);
+
+		// Introduce this node to the new (or restarted) gateway
+		if (advertiseWebSockets && (unknown || ctx.params.get("hello", false))) {
+			scheduleAdvertisement();
+		}
+	};
+
+	/**
+	 * Receives WebSocket messages from the other gateways (see
+	 * "sendWebSocket"). Only the remote gateways can call it, with the
+	 * advertised token of this gateway.
+	 */
+	public Action deliverWebSocket = ctx -> {
+		if (ctx.params == null || ctx.nodeID == null || ctx.nodeID.equals(broker.getNodeID())
+				|| !webSocketToken.equals(ctx.params.get("token", ""))) {
+			throw new MoleculerError("Access denied!", null, broker.getNodeID(), false, 403, "FORBIDDEN", null);
+		}
+		if (webSocketRegistry != null) {
+			String path = ctx.params.get("path", "");
+			Tree message = ctx.params.get("message");
+			if (message == null) {
+				webSocketRegistry.send(path, "null");
+			} else if (isBinary(ctx.params, message)) {
+				webSocketRegistry.send(path, message.asBytes());
+			} else {
+				webSocketRegistry.send(path, message.asString());
+			}
+		}
+		return null;
+	};
+
+	protected static boolean isBinary(Tree params, Tree data) {
+		return data != null && (data.getType() == byte[].class || params.get("binary", false));
+	}
+
 	// --- AUTODEPLOYER ---
 
 	@Subscribe("$services.changed")
 	private Listener autoDeployListener = ctx -> {
 
+		// Resolve the local action endpoints again
+		for (Route route : routes) {
+			route.servicesChanged();
+		}
+
 		// Local service?
 		if (ctx.params == null || !ctx.params.get("localService", false)) {
 			return;
@@ -198,6 +331,7 @@ public class ApiGateway extends Service implements RequestProcessor {
 			return;
 		}
 		StringBuilder msg = new StringBuilder(128);
+		boolean changed = false;
 		for (Tree service : services) {
 			String serviceName = service.get("name", "");
 			if (serviceName == null || serviceName.isEmpty() || !checkedNames.add(serviceName)) {
@@ -238,8 +372,14 @@ public class ApiGateway extends Service implements RequestProcessor {
 				Alias alias = new Alias(httpMethod, pathPattern, actionName);
 				route.addAlias(alias);
 				logAlias(msg, route, alias);
+				changed = true;
 			}
 		}
+
+		// Recompile aliases
+		if (changed) {
+			compileMappings();
+		}
 	};
 
 	// --- CONSTRUCTORS ---
@@ -250,11 +390,6 @@ public class ApiGateway extends Service implements RequestProcessor {
 
 	public ApiGateway(String... whiteListEntries) {
 
-		// Init locks for static/dynamic mappings
-		ReentrantReadWriteLock lock = new ReentrantReadWriteLock(false);
-		readLock = lock.readLock();
-		writeLock = lock.writeLock();
-
 		// Add basic route for REST services ("service1*", "service2.action")
 		if (whiteListEntries != null && whiteListEntries.length > 0) {
 			addRoute(new Route()).addToWhiteList(whiteListEntries);
@@ -273,20 +408,6 @@ public class ApiGateway extends Service implements RequestProcessor {
 	public void started(ServiceBroker broker) throws Exception {
 		super.started(broker);
 
-		// Static mappings
-		staticMappings = new LinkedHashMap<String, Mapping>((cachedRoutes + 1) * 2) {
-
-			private static final long serialVersionUID = 2994447707758047152L;
-
-			protected final boolean removeEldestEntry(Map.Entry<String, Mapping> entry) {
-				if (this.size() > cachedRoutes) {
-					return true;
-				}
-				return false;
-			};
-
-		};
-
 		// Start global middlewares
 		for (HttpMiddleware middleware : globalMiddlewares) {
 			middleware.started(broker);
@@ -305,64 +426,114 @@ public class ApiGateway extends Service implements RequestProcessor {
 		lastRoute.started(broker, globalMiddlewares);
 		logRoute(lastRoute);
 
-		// Prepare mappings
-		LinkedList<Mapping> mappingList = new LinkedList<>();
-		for (Route route : routes) {
-			Alias[] aliases = route.getAliases();
-			if (aliases != null) {
-				for (Alias alias : aliases) {
-					String httpMethod = alias.getHttpMethod();
-					if (httpMethod == null || Alias.ALL.equals(httpMethod) || Alias.REST.equals(httpMethod)) {
-						continue;
-					}
-					String path = alias.getPathPattern();
-					Mapping mapping = route.findMapping(httpMethod, path);
-					if (mapping != null) {
-						mappingList.addLast(mapping);
-					}
-				}
+		// Compile aliases
+		compileMappings();
+
+		// Advertise the subscribed WebSocket paths
+		if (advertiseWebSockets) {
+			advertiseTimer = broker.getConfig().getScheduler().scheduleAtFixedRate(() -> {
+				webSocketSubscriptions.removeExpired();
+				advertiseWebSockets(false);
+			}, webSocketAdvertiseInterval, webSocketAdvertiseInterval, TimeUnit.SECONDS);
+			advertiseWebSockets(true);
+		}
+	}
+
+	// --- CLUSTER-AWARE WEBSOCKET DELIVERY ---
+
+	/**
+	 * Sends a WebSocket message to the clients of the local node and to the
+	 * gateways which have advertised clients on the specified path. Unlike
+	 * the "websocket.send" broadcast, the message is sent only to the
+	 * interested nodes.
+	 * 
+	 * @param path
+	 *            WebSocket path (eg. "/ws/chat")
+	 * @param data
+	 *            message
+	 */
+	public void sendWebSocket(String path, Tree data) {
+		if (path.charAt(0) != '/') {
+			path = '/' + path;
+		}
+		String msg = data == null ? "null" : data.toString(null, false, false);
+		if (webSocketRegistry != null) {
+			webSocketRegistry.send(path, msg);
+		}
+		forwardWebSocket(path, msg, false);
+	}
+
+	/**
+	 * Sends pre-serialized bytes (eg. MessagePack) in binary frames to the
+	 * clients of the local node and to the gateways which have advertised
+	 * clients on the specified path.
+	 * 
+	 * @param path
+	 *            WebSocket path (eg. "/ws/feed")
+	 * @param bytes
+	 *            message (must not be modified after the call)
+	 */
+	public void sendWebSocket(String path, byte[] bytes) {
+		if (path.charAt(0) != '/') {
+			path = '/' + path;
+		}
+		if (webSocketRegistry != null) {
+			webSocketRegistry.send(path, bytes);
+		}
+		forwardWebSocket(path, bytes, true);
+	}
+
+	protected void forwardWebSocket(String path, Object message, boolean binary) {
+		List<Subscriber> subscribers = webSocketSubscriptions.find(path);
+		if (subscribers.isEmpty()) {
+			return;
+		}
+		for (Subscriber subscriber : subscribers) {
+			Tree params = new Tree();
+			params.put("path", path);
+			params.put("message", message);
+			if (binary) {
+				params.put("binary", true);
 			}
+			params.put("token", subscriber.getToken());
+			broker.call(subscriber.getService() + ".deliverWebSocket", params,
+					CallOptions.nodeID(subscriber.getNodeID())).catchError(cause -> {
+						logger.debug("Unable to deliver WebSocket message to node \"" + subscriber.getNodeID()
+								+ "\"!", cause);
+					});
 		}
-		if (!mappingList.isEmpty()) {
-			Mapping[] mappingArray = new Mapping[mappingList.size()];
-			mappingList.toArray(mappingArray);
-			Arrays.sort(mappingArray, (m1, m2) -> {
-				int v1 = m1.getVariables();
-				int v2 = m2.getVariables();
-				if (v1 == v2) {
-					v1 = m1.getPathPrefix().length();
-					v2 = m2.getPathPrefix().length();
-				}
-				return Integer.compare(v1, v2);
-			});
-			cachedRoutes = Math.max(cachedRoutes, mappingArray.length);
-			writeLock.lock();
-			try {
-				for (Mapping mapping : mappingArray) {
-					if (!globalMiddlewares.isEmpty()) {
-						mapping.use(globalMiddlewares);
-					}
-					if (mapping.isStatic()) {
-						String staticKey = mapping.getHttpMethod() + ' ' + mapping.getPathPrefix();
-						staticMappings.put(staticKey, mapping);
-						if (debug) {
-							logger.info("New mapping for \"" + mapping.getPathPrefix()
-									+ "\" stored in the static mapping cache (key: " + staticKey + ").");
-						}
-					} else {
-						dynamicMappings.addLast(mapping);
-						if (debug) {
-							logger.info("New mapping for \"" + mapping.getPathPrefix()
-									+ "\" stored in the dynamic mapping cache.");
-						}
-					}
-				}
-			} finally {
-				writeLock.unlock();
+	}
+
+	protected void scheduleAdvertisement() {
+		if (broker == null || !advertisementScheduled.compareAndSet(false, true)) {
+			return;
+		}
+		broker.getConfig().getScheduler().schedule(() -> {
+			advertisementScheduled.set(false);
+			advertiseWebSockets(false);
+		}, webSocketAdvertiseDelay, TimeUnit.MILLISECONDS);
+	}
+
+	protected void advertiseWebSockets(boolean hello) {
+		Tree packet = new Tree();
+		packet.put("nodeID", broker.getNodeID());
+		packet.put("service", name);
+		packet.put("ttl", TimeUnit.SECONDS.toMillis(webSocketAdvertiseInterval * 3));
+		packet.put("token", webSocketToken);
+		if (hello) {
+			packet.put("hello", true);
+		}
+		Tree paths = packet.putList("paths");
+		if (webSocketRegistry != null) {
+			for (String path : webSocketRegistry.getPaths()) {
+				paths.add(path);
 			}
 		}
+		broker.broadcast("websocket.subscriptions", packet);
 	}
 
+	// --- LOG ROUTES ---
+
 	protected void logRoute(Route route) {
 		StringBuilder msg = new StringBuilder(128);
 		msg.append("Route installed on path \"");
@@ -438,6 +609,12 @@ public class ApiGateway extends Service implements RequestProcessor {
 	@Override
 	public void stopped() {
 
+		// Stop advertisements
+		if (advertiseTimer != null) {
+			advertiseTimer.cancel(false);
+			advertiseTimer = null;
+		}
+
 		// Stop middlewares
 		for (HttpMiddleware middleware : globalMiddlewares) {
 			try {
@@ -466,12 +643,29 @@ public class ApiGateway extends Service implements RequestProcessor {
 	}
 
 	protected void clearMappings() {
-		writeLock.lock();
-		try {
-			staticMappings.clear();
-			dynamicMappings.clear();
-		} finally {
-			writeLock.unlock();
+		mappingCache.clear();
+		if (broker != null) {
+			compileMappings();
+		}
+	}
+
+	// --- COMPILE ALIASES ---
+
+	/**
+	 * Builds the per-method segment trie from the aliases of the Routes. The
+	 * new tree is published with a single volatile write, so the requests
+	 * being served use the previous tree without locking.
+	 */
+	protected void compileMappings() {
+		MappingTree tree = new MappingTree();
+		for (Route route : routes) {
+			for (AliasMatcher matcher : route.getAliasMatchers()) {
+				tree.add(matcher);
+			}
+		}
+		mappingTree = tree;
+		if (debug && tree.size() > 0) {
+			logger.info(tree.size() + " aliases compiled into the mapping tree.");
 		}
 	}
 
@@ -494,79 +688,53 @@ public class ApiGateway extends Service implements RequestProcessor {
 	@Override
 	public void service(WebRequest req, WebResponse rsp) throws Exception {
 
-		// Try to find in static mappings (eg. "/user")
+		// Try to find in the compiled aliases (eg. "/user/:id")
 		String httpMethod = req.getMethod();
 		String path = req.getPath();
-		String staticKey = httpMethod + ' ' + path;
-		Mapping mapping;
-		readLock.lock();
-		try {
-			mapping = staticMappings.get(staticKey);
-			if (mapping == null) {
-
-				// Try to find in dynamic mappings (eg. "/user/:id")
-				for (Mapping dynamicMapping : dynamicMappings) {
-					if (dynamicMapping.matches(httpMethod, path)) {
-						if (debug) {
-							logger.info(httpMethod + ' ' + path + " found in dyncmic mapping cache.");
-						}
-						mapping = dynamicMapping;
-						break;
-					}
-				}
-			} else if (debug) {
-				logger.info(httpMethod + ' ' + path + " found in static mapping cache (key: " + staticKey + ").");
+		MappingTree tree = mappingTree;
+		int[] offsets = tree.getMaxVariables() == 0 ? null : new int[tree.getMaxVariables() * 2];
+		Mapping mapping = tree.find(httpMethod, path, offsets);
+		if (mapping != null) {
+			if (debug) {
+				logger.info(httpMethod + ' ' + path + " found in mapping tree.");
+			}
+			if (mapping.getVariables() > 0) {
+				rsp.setProperty(PROPERTY_PATH_PARAMS, new PathOffsets(path, offsets));
 			}
-		} finally {
-			readLock.unlock();
+			mapping.service(req, rsp);
+			return;
 		}
 
-		// Invoke cached mapping
+		// Try to find in cached mappings (eg. "/service/action")
+		String staticKey = httpMethod + ' ' + path;
+		mapping = mappingCache.get(staticKey);
 		if (mapping != null) {
+			if (debug) {
+				logger.info(httpMethod + ' ' + path + " found in mapping cache (key: " + staticKey + ").");
+			}
 			mapping.service(req, rsp);
 			return;
 		}
 
-		// Find in routes
+		// Find in the white lists of the routes
 		for (Route route : routes) {
 			mapping = route.findMapping(httpMethod, path);
 			if (mapping != null) {
-				if (!globalMiddlewares.isEmpty()) {
-					mapping.use(globalMiddlewares);
-				}
 				break;
 			}
 		}
 
 		// Store new mapping in cache
 		if (mapping != null) {
-			writeLock.lock();
-			try {
-				if (mapping.isStatic()) {
-					staticMappings.put(staticKey, mapping);
-					if (debug) {
-						logger.info("New mapping for \"" + mapping.getPathPrefix()
-								+ "\" stored in the static mapping cache (key: " + staticKey + ").");
-					}
-				} else {
-					dynamicMappings.addLast(mapping);
-					if (dynamicMappings.size() > cachedRoutes) {
-						dynamicMappings.removeFirst();
-					}
-					if (debug) {
-						logger.info("New mapping for \"" + mapping.getPathPrefix()
-								+ "\" stored in the dynamic mapping cache.");
-					}
-				}
-			} finally {
-				writeLock.unlock();
+			mapping = mappingCache.put(staticKey, mapping);
+			if (debug) {
+				logger.info("New mapping for \"" + mapping.getPathPrefix()
+						+ "\" stored in the mapping cache (key: " + staticKey + ").");
 			}
 
 			// Invoke new (and cached) mapping
-			if (mapping != null) {
-				mapping.service(req, rsp);
-				return;
-			}
+			mapping.service(req, rsp);
+			return;
 		}
 
 		// Find in "lastRoute" (~=executes NotFound middleware)
@@ -575,9 +743,6 @@ public class ApiGateway extends Service implements RequestProcessor {
 		}
 		mapping = lastRoute.findMapping(httpMethod, path);
 		if (mapping != null) {
-			if (!globalMiddlewares.isEmpty()) {
-				mapping.use(globalMiddlewares);
-			}
 			mapping.service(req, rsp);
 			return;
 		}
@@ -723,6 +888,7 @@ public class ApiGateway extends Service implements RequestProcessor {
 			} catch (Exception cause) {
 				logger.warn("Unable to start route!", cause);
 			}
+			compileMappings();
 		}
 
 		// Return route
@@ -752,6 +918,7 @@ public class ApiGateway extends Service implements RequestProcessor {
 
 	public void setCachedRoutes(int cacheSize) {
 		this.cachedRoutes = cacheSize;
+		mappingCache.setCapacity(cacheSize);
 	}
 
 	public HttpMiddleware getLastMiddleware() {
@@ -845,6 +1012,10 @@ public class ApiGateway extends Service implements RequestProcessor {
 
 	public void setWebSocketRegistry(WebSocketRegistry webSocketRegistry) {
 		this.webSocketRegistry = Objects.requireNonNull(webSocketRegistry);
+		this.webSocketRegistry.setRequestProcessor(this);
+		if (advertiseWebSockets) {
+			this.webSocketRegistry.setSubscriptionListener(this::scheduleAdvertisement);
+		}
 		if (webSocketFilter != null) {
 			this.webSocketRegistry.setWebSocketFilter(webSocketFilter);
 		}
@@ -861,6 +1032,34 @@ public class ApiGateway extends Service implements RequestProcessor {
 		}
 	}
 
+	public boolean isAdvertiseWebSockets() {
+		return advertiseWebSockets;
+	}
+
+	public void setAdvertiseWebSockets(boolean advertiseWebSockets) {
+		this.advertiseWebSockets = advertiseWebSockets;
+	}
+
+	public long getWebSocketAdvertiseInterval() {
+		return webSocketAdvertiseInterval;
+	}
+
+	public void setWebSocketAdvertiseInterval(long webSocketAdvertiseInterval) {
+		this.webSocketAdvertiseInterval = webSocketAdvertiseInterval;
+	}
+
+	public long getWebSocketAdvertiseDelay() {
+		return webSocketAdvertiseDelay;
+	}
+
+	public void setWebSocketAdvertiseDelay(long webSocketAdvertiseDelay) {
+		this.webSocketAdvertiseDelay = webSocketAdvertiseDelay;
+	}
+
+	public WebSocketSubscriptions getWebSocketSubscriptions() {
+		return webSocketSubscriptions;
+	}
+
 	public ExecutorService getExecutor() {
 		return executor;
 	}
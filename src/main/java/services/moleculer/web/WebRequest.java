@@ -101,6 +101,16 @@ public interface WebRequest {
 	 */
 	public PacketStream getBody();
 
+	/**
+	 * Returns the complete request body, if the server received (aggregated)
+	 * the whole body before invoking the ApiGateway.
+	 * 
+	 * @return Request body (or null, if the body is streamed)
+	 */
+	public default byte[] getBodyBytes() {
+		return null;
+	}
+
 	/**
 	 * Returns the value of the specified request header as a String. If the
 	 * request did not include a header of the specified name, this method
@@ -25,37 +25,105 @@
  */
 package services.moleculer.web;
 
+import java.nio.ByteBuffer;
 import java.util.HashMap;
 import java.util.HashSet;
 import java.util.Iterator;
+import java.util.LinkedHashSet;
 import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
 import java.util.concurrent.ScheduledFuture;
 import java.util.concurrent.TimeUnit;
-import java.util.concurrent.atomic.AtomicBoolean;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.ReadLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock.WriteLock;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
 
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import io.datatree.Tree;
 import services.moleculer.ServiceBroker;
+import services.moleculer.error.MoleculerError;
 import services.moleculer.web.common.Endpoint;
+import services.moleculer.web.common.GatewayUtils;
+import services.moleculer.web.common.OutboundQueue;
+import services.moleculer.web.common.OverflowPolicy;
+import services.moleculer.web.common.WebSocketRequest;
+import services.moleculer.web.common.WebSocketResponse;
 
 public abstract class WebSocketRegistry implements Runnable {
 
+	protected final ServiceBroker broker;
+
 	protected WebSocketFilter webSocketFilter;
 
-	protected HashMap<String, EndpointSet> registry = new HashMap<>(128);
+	/**
+	 * Processor of the action calls received over WebSocket (the ApiGateway).
+	 */
+	protected RequestProcessor requestProcessor;
+
+	/**
+	 * Invoked when a path gets its first endpoint or loses its last one (the
+	 * ApiGateway advertises the subscribed paths to the other nodes).
+	 */
+	protected volatile Runnable subscriptionListener;
 
-	protected final ReadLock readLock;
-	protected final WriteLock writeLock;
+	/**
+	 * Endpoints by paths (the broadcasts read it without locking).
+	 */
+	protected final ConcurrentHashMap<String, EndpointSet> registry = new ConcurrentHashMap<>(128);
+
+	/**
+	 * Segment trie of the paths (for the wildcard broadcasts, eg.
+	 * "/ws/orders/**"). The nodes are read without locking.
+	 */
+	protected final PathNode root = new PathNode();
 
 	protected final ScheduledFuture<?> timer;
 
+	protected static final Logger logger = LoggerFactory.getLogger(WebSocketRegistry.class);
+
+	/**
+	 * Max duration of a periodic cleanup, in milliseconds. The closed
+	 * endpoints are removed by the servers' close events; the periodic
+	 * cleanup removes the empty paths and the missed endpoints, and the next
+	 * run continues where the previous one stopped.
+	 */
+	protected long cleanupTimeLimit = 10;
+
+	/**
+	 * Position of the incremental cleanup.
+	 */
+	protected Iterator<String> cleanupCursor;
+
+	// --- OUTBOUND QUEUES OF SLOW CLIENTS ---
+
+	/**
+	 * Max number of messages waiting for a client which does not read.
+	 */
+	protected int maxQueuedMessages = 1024;
+
+	/**
+	 * Max size of the messages waiting for a client in bytes (0 = no limit).
+	 */
+	protected long maxQueuedBytes = 1024 * 1024;
+
+	/**
+	 * What happens when the queue of a client is full.
+	 */
+	protected OverflowPolicy overflowPolicy = OverflowPolicy.DROP_OLDEST;
+
+	// --- QUEUE STATISTICS ---
+
+	protected final LongAdder queuedMessages = new LongAdder();
+	protected final LongAdder queuedBytes = new LongAdder();
+	protected final LongAdder droppedMessages = new LongAdder();
+	protected final LongAdder disconnectedClients = new LongAdder();
+
 	public WebSocketRegistry(ServiceBroker broker, long cleanupSeconds) {
-		ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-		readLock = lock.readLock();
-		writeLock = lock.writeLock();
+		this.broker = broker;
 		timer = broker.getConfig().getScheduler().scheduleAtFixedRate(this, cleanupSeconds, cleanupSeconds,
 				TimeUnit.SECONDS);
 	}
@@ -67,89 +135,350 @@ public abstract class WebSocketRegistry implements Runnable {
 	}
 
 	public void register(String path, Endpoint endpoint) {
-		EndpointSet endpoints;
-		readLock.lock();
-		try {
-			endpoints = registry.get(path);
-		} finally {
-			readLock.unlock();
-		}
-		if (endpoints == null) {
-			endpoints = new EndpointSet();
-			writeLock.lock();
-			try {
-				EndpointSet prev = registry.put(path, endpoints);
-				if (prev != null) {
-					endpoints = prev;
-				}
-			} finally {
-				writeLock.unlock();
+
+		// Atomic with the removal of the empty set (see "run"), the array is
+		// copied outside of the registry's lock
+		Change change = new Change(endpoint, true);
+		EndpointSet endpoints = registry.compute(path, (key, current) -> {
+			if (current == null) {
+				current = new EndpointSet();
+				index(key, current);
 			}
+			current.offer(change);
+			return current;
+		});
+		if (endpoints.commit(change)) {
+			subscriptionsChanged();
 		}
-		endpoints.add(endpoint);
 	}
 
 	public void deregister(String path, Endpoint endpoint) {
-		EndpointSet endpoints;
-		readLock.lock();
-		try {
-			endpoints = registry.get(path);
-		} finally {
-			readLock.unlock();
-		}
+		EndpointSet endpoints = registry.get(path);
 		if (endpoints == null) {
 			return;
 		}
-		endpoints.remove(endpoint);
+		Change change = new Change(endpoint, false);
+		endpoints.offer(change);
+		if (endpoints.commit(change)) {
+			subscriptionsChanged();
+		}
 	}
 
+	protected void subscriptionsChanged() {
+		Runnable listener = subscriptionListener;
+		if (listener != null) {
+			listener.run();
+		}
+	}
+
+	/**
+	 * Returns the paths which have at least one endpoint.
+	 * 
+	 * @return set of subscribed paths
+	 */
+	public Set<String> getPaths() {
+		HashSet<String> paths = new HashSet<>();
+		for (Map.Entry<String, EndpointSet> entry : registry.entrySet()) {
+			if (entry.getValue().size() > 0) {
+				paths.add(entry.getKey());
+			}
+		}
+		return paths;
+	}
+
+	/**
+	 * Sends a message to the endpoints of the path. The path can be a pattern:
+	 * "*" matches one segment, "**" matches any number of segments (eg.
+	 * "/ws/orders/**" matches "/ws/orders" and "/ws/orders/1/items").
+	 * 
+	 * @param path
+	 *            WebSocket path or pattern
+	 * @param message
+	 *            message
+	 */
 	public void send(String path, String message) {
-		EndpointSet endpoints;
-		readLock.lock();
+		Endpoint[] snapshot = findEndpoints(path);
+		if (snapshot.length == 0) {
+			return;
+		}
+		send(snapshot, message);
+	}
+
+	/**
+	 * Returns the endpoints of the path or the pattern (must not be
+	 * modified).
+	 * 
+	 * @param path
+	 *            WebSocket path or pattern
+	 * 
+	 * @return array of endpoints
+	 */
+	protected Endpoint[] findEndpoints(String path) {
+		if (!isPattern(path)) {
+			EndpointSet endpoints = registry.get(path);
+			return endpoints == null ? EndpointSet.EMPTY : endpoints.array();
+		}
+
+		// Walk the trie (the cost depends on the depth of the pattern and the
+		// number of matching paths)
+		LinkedHashSet<EndpointSet> sets = new LinkedHashSet<>();
+		collect(root, split(path), 0, sets);
+		int count = 0;
+		Endpoint[][] arrays = new Endpoint[sets.size()][];
+		int i = 0;
+		for (EndpointSet set : sets) {
+			Endpoint[] array = set.array();
+			arrays[i++] = array;
+			count += array.length;
+		}
+		if (arrays.length == 1) {
+			return arrays[0];
+		}
+		Endpoint[] endpoints = new Endpoint[count];
+		int pos = 0;
+		for (Endpoint[] array : arrays) {
+			System.arraycopy(array, 0, endpoints, pos, array.length);
+			pos += array.length;
+		}
+		return endpoints;
+	}
+
+	/**
+	 * Sends a message to the specified endpoints. Subclasses may override it
+	 * to serialize the message only once per broadcast.
+	 * 
+	 * @param endpoints
+	 *            recipients (must not be modified)
+	 * @param message
+	 *            message
+	 */
+	protected void send(Endpoint[] endpoints, String message) {
+		for (Endpoint endpoint : endpoints) {
+			sendTo(endpoint, message);
+		}
+	}
+
+	/**
+	 * Sends a message to one endpoint of a broadcast (the failure of an
+	 * endpoint does not stop the broadcast).
+	 * 
+	 * @param endpoint
+	 *            recipient
+	 * @param message
+	 *            message
+	 */
+	protected void sendTo(Endpoint endpoint, String message) {
 		try {
-			endpoints = registry.get(path);
-		} finally {
-			readLock.unlock();
+			endpoint.send(message);
+		} catch (Throwable cause) {
+			logger.warn("Unable to send WebSocket message to " + endpoint + "!", cause);
 		}
-		if (endpoints == null) {
+	}
+
+	// --- BINARY MESSAGES ---
+
+	/**
+	 * Sends pre-serialized bytes (eg. MessagePack) in binary frames, without
+	 * conversion.
+	 * 
+	 * @param path
+	 *            WebSocket path
+	 * @param message
+	 *            bytes to send (must not be modified after the call)
+	 */
+	public void send(String path, byte[] message) {
+		send(path, ByteBuffer.wrap(message));
+	}
+
+	/**
+	 * Sends the remaining bytes of the buffer in binary frames. The position
+	 * of the buffer does not change.
+	 * 
+	 * @param path
+	 *            WebSocket path
+	 * @param message
+	 *            bytes to send (must not be modified after the call)
+	 */
+	public void send(String path, ByteBuffer message) {
+		Endpoint[] snapshot = findEndpoints(path);
+		if (snapshot.length == 0) {
 			return;
 		}
-		Set<Endpoint> snapshot = endpoints.get();
-		if (snapshot == null) {
-			return;
+		send(snapshot, message);
+	}
+
+	/**
+	 * Sends a binary message to the specified endpoints (each endpoint gets
+	 * its own view of the buffer).
+	 * 
+	 * @param endpoints
+	 *            recipients (must not be modified)
+	 * @param message
+	 *            message
+	 */
+	protected void send(Endpoint[] endpoints, ByteBuffer message) {
+		for (Endpoint endpoint : endpoints) {
+			sendTo(endpoint, message);
 		}
-		for (Endpoint endpoint : snapshot) {
-			endpoint.send(message);
+	}
+
+	/**
+	 * Sends a binary message to one endpoint of a broadcast, in its own view
+	 * of the buffer (the failure of an endpoint does not stop the broadcast).
+	 * 
+	 * @param endpoint
+	 *            recipient
+	 * @param message
+	 *            message
+	 */
+	protected void sendTo(Endpoint endpoint, ByteBuffer message) {
+		try {
+			endpoint.send(message.duplicate());
+		} catch (Throwable cause) {
+			logger.warn("Unable to send WebSocket message to " + endpoint + "!", cause);
+		}
+	}
+
+	// --- OUTBOUND QUEUES ---
+
+	/**
+	 * Creates an outbound queue for a client, with the current limits and
+	 * policy of this registry.
+	 * 
+	 * @param sizer
+	 *            returns the size of a message in bytes
+	 * @param releaser
+	 *            releases the dropped messages (or null)
+	 * 
+	 * @return new queue
+	 */
+	public <T> OutboundQueue<T> createOutboundQueue(ToIntFunction<T> sizer, Consumer<T> releaser) {
+		return new OutboundQueue<>(this, sizer, releaser);
+	}
+
+	public void queued(int messages, long bytes) {
+		queuedMessages.add(messages);
+		queuedBytes.add(bytes);
+	}
+
+	public void messageDropped() {
+		droppedMessages.increment();
+	}
+
+	public void slowClientDisconnected() {
+		disconnectedClients.increment();
+	}
+
+	/**
+	 * Returns the number of messages waiting for slow clients.
+	 * 
+	 * @return total depth of the outbound queues
+	 */
+	public long getQueuedMessages() {
+		return queuedMessages.sum();
+	}
+
+	public long getQueuedBytes() {
+		return queuedBytes.sum();
+	}
+
+	public long getDroppedMessages() {
+		return droppedMessages.sum();
+	}
+
+	public long getDisconnectedClients() {
+		return disconnectedClients.sum();
+	}
+
+	// --- RPC OVER WEBSOCKET ---
+
+	/**
+	 * Processes an action call received from a WebSocket client. The message
+	 * is a JSON object, eg.
+	 * <code>{"id":1,"action":"math.add","params":{"a":1,"b":2}}</code>. The
+	 * "action" is converted to a path ("/math/add"), or the request path can
+	 * be specified directly with the "path" (and the optional "method")
+	 * property. The call goes through the Routes, Mappings and Middlewares of
+	 * the ApiGateway, like a REST call. The response is sent back
+	 * asynchronously, as <code>{"id":1,"result":3}</code> or
+	 * <code>{"id":1,"status":404,"error":{...}}</code>, so a client can have
+	 * many calls in flight on the same connection.
+	 * 
+	 * @param endpoint
+	 *            sender of the message
+	 * @param connection
+	 *            the upgrade request of the WebSocket connection (headers,
+	 *            address)
+	 * @param message
+	 *            incoming message
+	 */
+	public void onMessage(Endpoint endpoint, WebRequest connection, String message) {
+		WebSocketResponse rsp = null;
+		try {
+			Tree call = new Tree(message);
+			Tree id = call.get("id");
+			rsp = new WebSocketResponse(endpoint, id == null ? null : id.asObject());
+			RequestProcessor processor = requestProcessor;
+			if (processor == null) {
+				throw new MoleculerError("WebSocket RPC is not enabled!", null, broker.getNodeID(), false, 501,
+						"NOT_IMPLEMENTED", null);
+			}
+			String path = call.get("path", (String) null);
+			if (path == null) {
+				String action = call.get("action", (String) null);
+				if (action == null || action.isEmpty()) {
+					throw new MoleculerError("Missing \"action\" or \"path\" property!", null, broker.getNodeID(),
+							false, 400, "BAD_REQUEST", null);
+				}
+				path = '/' + action.replace('.', '/');
+			}
+			String method = call.get("method", "POST");
+			Tree params = call.get("params");
+			byte[] body = params == null ? null : params.toBinary();
+			processor.service(new WebSocketRequest(broker, connection, method, path, body), rsp);
+		} catch (Throwable cause) {
+			if (rsp == null) {
+				rsp = new WebSocketResponse(endpoint, null);
+			}
+			GatewayUtils.sendError(rsp, cause);
 		}
 	}
 
 	@Override
 	public void run() {
-		readLock.lock();
-		try {
+		Iterator<String> i = cleanupCursor;
+		if (i == null || !i.hasNext()) {
 			if (registry.isEmpty()) {
 				return;
 			}
-			for (EndpointSet endpoints : registry.values()) {
-				endpoints.cleanup();
-			}
-		} finally {
-			readLock.unlock();
+			i = registry.keySet().iterator();
 		}
+		long deadline = System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(cleanupTimeLimit);
 		HashSet<String> paths = new HashSet<>();
-		Map.Entry<String, EndpointSet> entry;
-		writeLock.lock();
-		try {
-			Iterator<Map.Entry<String, EndpointSet>> i = registry.entrySet().iterator();
-			while (i.hasNext()) {
-				entry = i.next();
-				if (entry.getValue().canRemove()) {
-					paths.add(entry.getKey());
-					i.remove();
+		boolean changed = false;
+		while (i.hasNext()) {
+			String path = i.next();
+			EndpointSet endpoints = registry.get(path);
+			if (endpoints != null) {
+				changed |= endpoints.cleanup();
+				if (endpoints.canRemove()) {
+					registry.computeIfPresent(path, (key, current) -> {
+						if (current.canRemove()) {
+							paths.add(key);
+							unindex(key);
+							return null;
+						}
+						return current;
+					});
 				}
 			}
-		} finally {
-			writeLock.unlock();
+			if (System.nanoTime() >= deadline) {
+				break;
+			}
+		}
+		cleanupCursor = i;
+		if (changed) {
+			subscriptionsChanged();
 		}
 		if (webSocketFilter != null && !paths.isEmpty()) {
 			webSocketFilter.onClose(paths);
@@ -160,98 +489,311 @@ public abstract class WebSocketRegistry implements Runnable {
 		this.webSocketFilter = webSocketFilter;
 	}
 
+	public int getMaxQueuedMessages() {
+		return maxQueuedMessages;
+	}
+
+	public void setMaxQueuedMessages(int maxQueuedMessages) {
+		this.maxQueuedMessages = maxQueuedMessages;
+	}
+
+	public long getMaxQueuedBytes() {
+		return maxQueuedBytes;
+	}
+
+	public void setMaxQueuedBytes(long maxQueuedBytes) {
+		this.maxQueuedBytes = maxQueuedBytes;
+	}
+
+	public OverflowPolicy getOverflowPolicy() {
+		return overflowPolicy;
+	}
+
+	public void setOverflowPolicy(OverflowPolicy overflowPolicy) {
+		this.overflowPolicy = overflowPolicy;
+	}
+
+	public Runnable getSubscriptionListener() {
+		return subscriptionListener;
+	}
+
+	public void setSubscriptionListener(Runnable subscriptionListener) {
+		this.subscriptionListener = subscriptionListener;
+	}
+
+	public RequestProcessor getRequestProcessor() {
+		return requestProcessor;
+	}
+
+	public void setRequestProcessor(RequestProcessor requestProcessor) {
+		this.requestProcessor = requestProcessor;
+	}
+
+	public long getCleanupTimeLimit() {
+		return cleanupTimeLimit;
+	}
+
+	public void setCleanupTimeLimit(long cleanupTimeLimit) {
+		this.cleanupTimeLimit = cleanupTimeLimit;
+	}
+
 	public Map<String, Integer> countClients() {
 		HashMap<String, Integer> clients = new HashMap<>(128);
-		readLock.lock();
-		try {
-			for (Map.Entry<String, EndpointSet> entry: registry.entrySet()) {
-				clients.put(entry.getKey(), entry.getValue().count());
-			}
-		} finally {
-			readLock.unlock();
+		for (Map.Entry<String, EndpointSet> entry : registry.entrySet()) {
+			clients.put(entry.getKey(), entry.getValue().size());
 		}
 		return clients;
 	}
-	
-	private final class EndpointSet {
-
-		private final AtomicBoolean empty = new AtomicBoolean();		
-		private final AtomicLong lastTouched = new AtomicLong(); 
-		
-		private final ReadLock endpointReadLock;
-		private final WriteLock endpointWriteLock;
-
-		private final HashSet<Endpoint> set = new HashSet<>(128);
-		
-		private EndpointSet() {
-			ReentrantReadWriteLock lock = new ReentrantReadWriteLock();
-			endpointReadLock = lock.readLock();
-			endpointWriteLock = lock.writeLock();
-		}
-
-		private final int count() {
-			endpointReadLock.lock();
-			try {
-				return set.size();
-			} finally {
-				endpointReadLock.unlock();
-			}			
-		}
-		
-		private final Set<Endpoint> get() {
-			lastTouched.set(System.currentTimeMillis());			
-			endpointReadLock.lock();
-			try {
-				if (set.isEmpty()) {
-					return null;
+
+	// --- PATH TRIE ---
+
+	public static final boolean isPattern(String path) {
+		return path.indexOf('*') > -1;
+	}
+
+	protected static final String[] split(String path) {
+		int start = path.startsWith("/") ? 1 : 0;
+		if (start >= path.length()) {
+			return new String[0];
+		}
+		return path.substring(start).split("/", -1);
+	}
+
+	/**
+	 * Returns true if the path matches the pattern ("*" = one segment, "**" =
+	 * any number of segments).
+	 * 
+	 * @param pattern
+	 *            pattern (eg. "/ws/orders/**")
+	 * @param path
+	 *            path (eg. "/ws/orders/1")
+	 * 
+	 * @return true if the path matches
+	 */
+	public static final boolean matches(String pattern, String path) {
+		if (!isPattern(pattern)) {
+			return pattern.equals(path);
+		}
+		return matches(split(pattern), 0, split(path), 0);
+	}
+
+	private static final boolean matches(String[] pattern, int p, String[] path, int i) {
+		if (p == pattern.length) {
+			return i == path.length;
+		}
+		String segment = pattern[p];
+		if ("**".equals(segment)) {
+			for (int j = i; j <= path.length; j++) {
+				if (matches(pattern, p + 1, path, j)) {
+					return true;
 				}
-				return new HashSet<>(set);
-			} finally {
-				endpointReadLock.unlock();
 			}
+			return false;
+		}
+		if (i == path.length) {
+			return false;
+		}
+		if ("*".equals(segment) || segment.equals(path[i])) {
+			return matches(pattern, p + 1, path, i + 1);
 		}
+		return false;
+	}
 
-		private final void add(Endpoint endpoint) {
-			lastTouched.set(System.currentTimeMillis());
-			empty.set(false);
-			endpointWriteLock.lock();
-			try {
-				set.add(endpoint);
-			} finally {
-				endpointWriteLock.unlock();
+	/**
+	 * Adds a new path to the trie (invoked in the atomic "compute" block of
+	 * the registry).
+	 */
+	protected void index(String path, EndpointSet endpoints) {
+		synchronized (root) {
+			PathNode node = root;
+			for (String segment : split(path)) {
+				node = node.children.computeIfAbsent(segment, key -> new PathNode());
 			}
+			node.endpoints = endpoints;
 		}
+	}
 
-		private final void remove(Endpoint endpoint) {
-			lastTouched.set(System.currentTimeMillis());			
-			endpointWriteLock.lock();
-			try {
-				if (set.remove(endpoint)) {
-					empty.set(set.isEmpty());
+	/**
+	 * Removes a path from the trie, and the nodes without paths.
+	 */
+	protected void unindex(String path) {
+		synchronized (root) {
+			String[] segments = split(path);
+			PathNode[] nodes = new PathNode[segments.length + 1];
+			nodes[0] = root;
+			for (int i = 0; i < segments.length; i++) {
+				nodes[i + 1] = nodes[i].children.get(segments[i]);
+				if (nodes[i + 1] == null) {
+					return;
 				}
-			} finally {
-				endpointWriteLock.unlock();
+			}
+			nodes[segments.length].endpoints = null;
+			for (int i = segments.length; i > 0; i--) {
+				PathNode node = nodes[i];
+				if (node.endpoints != null || !node.children.isEmpty()) {
+					break;
+				}
+				nodes[i - 1].children.remove(segments[i - 1]);
 			}
 		}
+	}
 
-		private final boolean canRemove() {
-			long now = System.currentTimeMillis();
-			return empty.get() && now - lastTouched.get() > 60000;
+	protected void collect(PathNode node, String[] pattern, int p, Set<EndpointSet> sets) {
+		if (p == pattern.length) {
+			EndpointSet endpoints = node.endpoints;
+			if (endpoints != null && endpoints.size() > 0) {
+				sets.add(endpoints);
+			}
+			return;
+		}
+		String segment = pattern[p];
+		if ("**".equals(segment)) {
+
+			// Zero or more segments
+			collect(node, pattern, p + 1, sets);
+			for (PathNode child : node.children.values()) {
+				collect(child, pattern, p, sets);
+			}
+		} else if ("*".equals(segment)) {
+			for (PathNode child : node.children.values()) {
+				collect(child, pattern, p + 1, sets);
+			}
+		} else {
+			PathNode child = node.children.get(segment);
+			if (child != null) {
+				collect(child, pattern, p + 1, sets);
+			}
+		}
+	}
+
+	protected static final class PathNode {
+
+		private final ConcurrentHashMap<String, PathNode> children = new ConcurrentHashMap<>(8);
+
+		private volatile EndpointSet endpoints;
+
+	}
+
+	/**
+	 * Copy-on-write set of endpoints. The writers publish a new array, the
+	 * senders read the current array without locking and copying. The changes
+	 * are applied in batches: the writer which holds the monitor applies all
+	 * queued changes and copies the array once, so concurrent connects and
+	 * disconnects (eg. from several event loops) share one copy.
+	 */
+	protected static final class EndpointSet {
+
+		private static final Endpoint[] EMPTY = new Endpoint[0];
+
+		private volatile Endpoint[] array = EMPTY;
+		private volatile long lastTouched = System.currentTimeMillis();
+
+		/**
+		 * Changes waiting for the next copy.
+		 */
+		private final ConcurrentLinkedQueue<Change> changes = new ConcurrentLinkedQueue<>();
+
+		/**
+		 * Members of the set (guarded by the monitor, the array is built from
+		 * it).
+		 */
+		private final LinkedHashSet<Endpoint> members = new LinkedHashSet<>();
+
+		/**
+		 * Queues a change (invoked in the atomic "compute" block of the
+		 * registry, so a set with pending changes cannot be removed).
+		 */
+		private final void offer(Change change) {
+			lastTouched = System.currentTimeMillis();
+			changes.add(change);
 		}
 
-		private final void cleanup() {
-			endpointWriteLock.lock();
-			try {
-				Iterator<Endpoint> i = set.iterator();
-				while (i.hasNext()) {
-					if (!i.next().isOpen()) {
-						i.remove();
+		/**
+		 * Waits until the change is visible to the senders. Returns true if
+		 * the set was empty before the addition or became empty by the
+		 * removal.
+		 */
+		private final synchronized boolean commit(Change change) {
+			if (!change.applied) {
+				boolean modified = false;
+				Change next;
+				while ((next = changes.poll()) != null) {
+					if (next.add) {
+						if (members.add(next.endpoint)) {
+							modified = true;
+							next.result = members.size() == 1;
+						}
+					} else if (members.remove(next.endpoint)) {
+						modified = true;
+						next.result = members.isEmpty();
 					}
+					next.applied = true;
+				}
+				if (modified) {
+					publish();
+				}
+			}
+			return change.result;
+		}
+
+		private final void publish() {
+			array = members.isEmpty() ? EMPTY : members.toArray(new Endpoint[members.size()]);
+		}
+
+		/**
+		 * Returns the current endpoints (must not be modified).
+		 */
+		private final Endpoint[] array() {
+			return array;
+		}
+
+		private final int size() {
+			return array.length;
+		}
+
+		private final synchronized boolean canRemove() {
+			return members.isEmpty() && changes.isEmpty() && System.currentTimeMillis() - lastTouched > 60000;
+		}
+
+		/**
+		 * Returns true if the set became empty.
+		 */
+		private final synchronized boolean cleanup() {
+			if (members.isEmpty()) {
+				return false;
+			}
+			boolean removed = false;
+			Iterator<Endpoint> i = members.iterator();
+			while (i.hasNext()) {
+				if (!i.next().isOpen()) {
+					i.remove();
+					removed = true;
 				}
-				empty.set(set.isEmpty());
-			} finally {
-				endpointWriteLock.unlock();
 			}
+			if (!removed) {
+				return false;
+			}
+			publish();
+			return members.isEmpty();
+		}
+
+	}
+
+	/**
+	 * Registration or deregistration of an endpoint.
+	 */
+	protected static final class Change {
+
+		private final Endpoint endpoint;
+		private final boolean add;
+
+		// Guarded by the monitor of the EndpointSet
+		private boolean applied;
+		private boolean result;
+
+		private Change(Endpoint endpoint, boolean add) {
+			this.endpoint = endpoint;
+			this.add = add;
 		}
 
 	}
@@ -1,8 +1,25 @@
 package services.moleculer.web.common;
 
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+
 public interface Endpoint {
 
 	public void send(String message);
+
+	/**
+	 * Sends a binary message (eg. MessagePack or other pre-serialized bytes).
+	 * The endpoint must not modify the position or the content of the buffer.
+	 * The default implementation sends the bytes as a Base64 encoded text
+	 * message (for endpoints without binary frames).
+	 * 
+	 * @param message
+	 *            bytes to send
+	 */
+	public default void send(ByteBuffer message) {
+		send(StandardCharsets.US_ASCII.decode(Base64.getEncoder().encode(message.duplicate())).toString());
+	}
 	
 	public boolean isOpen();
 	
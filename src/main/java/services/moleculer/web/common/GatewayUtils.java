@@ -29,9 +29,11 @@ import static services.moleculer.util.CommonUtils.readFully;
 
 import java.io.File;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.net.HttpCookie;
 import java.net.URI;
 import java.net.URL;
+import java.net.URLDecoder;
 import java.util.HashMap;
 import java.util.List;
 
@@ -110,6 +112,100 @@ public final class GatewayUtils implements HttpConstants {
 		}
 	}
 
+	// --- QUERY STRING AND PATH PARAMETER PARSERS ---
+
+	/**
+	 * Parses a QueryString (eg. "a=1&b=x%20y") into the "params" structure in
+	 * one pass. Only the keys and values containing '%' or '+' are URL-decoded,
+	 * the others are trimmed substrings of the query.
+	 * 
+	 * @param params
+	 *            target structure
+	 * @param query
+	 *            QueryString (without the '?')
+	 * 
+	 * @throws UnsupportedEncodingException
+	 *             never thrown (UTF-8 is always supported)
+	 */
+	public static final void parseQueryString(Tree params, String query) throws UnsupportedEncodingException {
+		int length = query.length();
+		int start = 0;
+		while (start < length) {
+			int eq = -1;
+			boolean encodedKey = false;
+			boolean encodedValue = false;
+			int end = start;
+			for (; end < length; end++) {
+				char c = query.charAt(end);
+				if (c == '&') {
+					break;
+				}
+				if (c == '=') {
+					if (eq == -1) {
+						eq = end;
+					}
+				} else if (c == '%' || c == '+') {
+					if (eq == -1) {
+						encodedKey = true;
+					} else {
+						encodedValue = true;
+					}
+				}
+			}
+			if (eq > -1) {
+				params.put(decode(query, start, eq, encodedKey), decode(query, eq + 1, end, encodedValue));
+			}
+			start = end + 1;
+		}
+	}
+
+	private static final String decode(String query, int start, int end, boolean encoded)
+			throws UnsupportedEncodingException {
+		if (encoded) {
+			return URLDecoder.decode(query.substring(start, end), "UTF-8").trim();
+		}
+		while (start < end && query.charAt(start) <= ' ') {
+			start++;
+		}
+		while (end > start && query.charAt(end - 1) <= ' ') {
+			end--;
+		}
+		return query.substring(start, end);
+	}
+
+	/**
+	 * Copies the path parameters (eg. "/path/:id/:name") into the "params"
+	 * structure without splitting the path.
+	 * 
+	 * @param params
+	 *            target structure
+	 * @param path
+	 *            path of the request (eg. "/path/123/abc")
+	 * @param indexes
+	 *            ascending indexes of the parameter segments (0 = the segment
+	 *            before the first '/')
+	 * @param names
+	 *            names of the parameters
+	 */
+	public static final void parsePathParams(Tree params, String path, int[] indexes, String[] names) {
+		int length = path.length();
+		int segment = 0;
+		int start = 0;
+		for (int i = 0; i < indexes.length; i++) {
+			int index = indexes[i];
+			while (segment < index && start <= length) {
+				int next = path.indexOf('/', start);
+				start = next < 0 ? length + 1 : next + 1;
+				segment++;
+			}
+			if (start > length) {
+				return;
+			}
+			int end = path.indexOf('/', start);
+			params.put(names[i], path.substring(start, end < 0 ? length : end));
+		}
+	}
+
 	// --- FIND SERVICE BY CLASS ---
 
 	@SuppressWarnings("unchecked")
@@ -238,6 +334,21 @@ public final class GatewayUtils implements HttpConstants {
 		return -1;
 	}
 
+	public static final File getLocalFile(String path) {
+		try {
+			URL url = getFileURL(path);
+			if (url != null && "file".equals(url.getProtocol())) {
+				File file = new File(new URI(url.toString()));
+				if (file.isFile()) {
+					return file;
+				}
+			}
+		} catch (Exception ignored) {
+			logger.debug("Unable to get local file: " + path);
+		}
+		return null;
+	}
+
 	public static final long getLastModifiedTime(String path) {
 		try {
 			URL url = getFileURL(path);
@@ -77,6 +77,7 @@ public interface HttpConstants {
 	public static final String PROPERTY_SESSION_ID = "sid";
 	public static final String PROPERTY_COOKIES = "cookies";
 	public static final String PROPERTY_USER = "user";
+	public static final String PROPERTY_PATH_PARAMS = "$pathParams";
 	
 	// --- SPECIAL VALUES IN META ---
 
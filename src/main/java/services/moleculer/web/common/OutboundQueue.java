@@ -0,0 +1,206 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2018 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web.common;
+
+import java.util.ArrayDeque;
+import java.util.function.Consumer;
+import java.util.function.ToIntFunction;
+
+import services.moleculer.web.WebSocketRegistry;
+
+/**
+ * Bounded queue of the messages waiting for a slow WebSocket client. The
+ * messages are queued only while the connection cannot accept more data; the
+ * limits and the overflow policy come from the WebSocketRegistry, which also
+ * collects the statistics of the queues.
+ *
+ * @param <T>
+ *            type of the messages (eg. String or WebSocket frame)
+ */
+public class OutboundQueue<T> {
+
+	// --- PROPERTIES ---
+
+	protected final WebSocketRegistry registry;
+	protected final int maxMessages;
+	protected final long maxBytes;
+	protected final OverflowPolicy policy;
+
+	/**
+	 * Returns the size of a message in bytes.
+	 */
+	protected final ToIntFunction<T> sizer;
+
+	/**
+	 * Releases the dropped messages (eg. pooled buffers).
+	 */
+	protected final Consumer<T> releaser;
+
+	// --- QUEUE ---
+
+	protected final ArrayDeque<T> messages = new ArrayDeque<>();
+
+	/**
+	 * Sizes of the messages (ring buffer, in the order of the messages).
+	 */
+	protected int[] sizes = new int[16];
+
+	/**
+	 * Position of the oldest size in the ring buffer.
+	 */
+	protected int head;
+
+	protected long bytes;
+
+	// --- CONSTRUCTOR ---
+
+	public OutboundQueue(WebSocketRegistry registry, ToIntFunction<T> sizer, Consumer<T> releaser) {
+		this.registry = registry;
+		this.maxMessages = Math.max(1, registry.getMaxQueuedMessages());
+		this.maxBytes = registry.getMaxQueuedBytes();
+		this.policy = registry.getOverflowPolicy();
+		this.sizer = sizer;
+		this.releaser = releaser;
+	}
+
+	// --- ADD / POLL ---
+
+	/**
+	 * Adds a message to the queue, and applies the overflow policy when the
+	 * queue is full.
+	 * 
+	 * @param message
+	 *            message to send later
+	 * 
+	 * @return false if the connection must be closed
+	 */
+	public synchronized boolean add(T message) {
+		int size = sizer.applyAsInt(message);
+		if (policy == OverflowPolicy.COALESCE) {
+			while (!messages.isEmpty()) {
+				drop(removeFirst());
+			}
+		} else if (isFull(size)) {
+			switch (policy) {
+			case DROP_NEWEST:
+				drop(message);
+				return true;
+			case DISCONNECT:
+				clear();
+				drop(message);
+				registry.slowClientDisconnected();
+				return false;
+			default:
+				while (!messages.isEmpty() && isFull(size)) {
+					drop(removeFirst());
+				}
+				if (isFull(size)) {
+
+					// Larger than the queue
+					drop(message);
+					return true;
+				}
+			}
+		}
+		int count = messages.size();
+		if (count == sizes.length) {
+			grow(count);
+		}
+		sizes[(head + count) & (sizes.length - 1)] = size;
+		messages.addLast(message);
+		bytes += size;
+		registry.queued(1, size);
+		return true;
+	}
+
+	/**
+	 * Retrieves and removes the oldest message.
+	 * 
+	 * @return message or null if the queue is empty
+	 */
+	public synchronized T poll() {
+		if (messages.isEmpty()) {
+			return null;
+		}
+		return removeFirst();
+	}
+
+	/**
+	 * Drops the queued messages (eg. when the connection is closed).
+	 */
+	public synchronized void clear() {
+		while (!messages.isEmpty()) {
+			T message = removeFirst();
+			if (releaser != null) {
+				releaser.accept(message);
+			}
+		}
+	}
+
+	public synchronized boolean isEmpty() {
+		return messages.isEmpty();
+	}
+
+	public synchronized int size() {
+		return messages.size();
+	}
+
+	public synchronized long bytes() {
+		return bytes;
+	}
+
+	// --- PRIVATE METHODS ---
+
+	protected boolean isFull(int size) {
+		return messages.size() >= maxMessages || (maxBytes > 0 && bytes + size > maxBytes);
+	}
+
+	protected T removeFirst() {
+		T message = messages.removeFirst();
+		int size = sizes[head];
+		head = (head + 1) & (sizes.length - 1);
+		bytes -= size;
+		registry.queued(-1, -size);
+		return message;
+	}
+
+	protected void grow(int count) {
+		int[] copy = new int[sizes.length << 1];
+		for (int i = 0; i < count; i++) {
+			copy[i] = sizes[(head + i) & (sizes.length - 1)];
+		}
+		sizes = copy;
+		head = 0;
+	}
+
+	protected void drop(T message) {
+		if (releaser != null) {
+			releaser.accept(message);
+		}
+		registry.messageDropped();
+	}
+
+}
@@ -0,0 +1,151 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2018 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web.common;
+
+import java.util.Collections;
+import java.util.Iterator;
+
+import services.moleculer.ServiceBroker;
+import services.moleculer.stream.PacketStream;
+import services.moleculer.web.WebRequest;
+
+/**
+ * Action call received over a WebSocket connection. It behaves like a POST
+ * request with JSON body; the headers, the address and the protocol are
+ * taken from the WebSocket connection's upgrade request.
+ */
+public class WebSocketRequest implements WebRequest, HttpConstants {
+
+	// --- REQUEST VARIABLES ---
+
+	protected final ServiceBroker broker;
+	protected final WebRequest connection;
+	protected final String method;
+	protected final String path;
+	protected final String query;
+	protected final byte[] body;
+
+	protected PacketStream stream;
+
+	// --- CONSTRUCTOR ---
+
+	public WebSocketRequest(ServiceBroker broker, WebRequest connection, String method, String path, byte[] body) {
+		this.broker = broker;
+		this.connection = connection;
+		this.method = method;
+		this.body = body;
+		int i = path.indexOf('?');
+		if (i > -1) {
+			this.path = path.substring(0, i);
+			this.query = path.substring(i + 1);
+		} else {
+			this.path = path;
+			this.query = null;
+		}
+	}
+
+	// --- PROPERTY GETTERS ---
+
+	@Override
+	public String getAddress() {
+		return connection == null ? "0.0.0.0" : connection.getAddress();
+	}
+
+	@Override
+	public String getMethod() {
+		return method;
+	}
+
+	@Override
+	public String getPath() {
+		return path;
+	}
+
+	@Override
+	public String getQuery() {
+		return query;
+	}
+
+	@Override
+	public int getContentLength() {
+		return body == null ? 0 : body.length;
+	}
+
+	@Override
+	public String getContentType() {
+		return CONTENT_TYPE_JSON;
+	}
+
+	@Override
+	public PacketStream getBody() {
+		if (stream == null && body != null) {
+			stream = broker.createStream();
+			stream.sendData(body);
+			stream.sendClose();
+		}
+		return stream;
+	}
+
+	@Override
+	public byte[] getBodyBytes() {
+		return body;
+	}
+
+	@Override
+	public String getHeader(String name) {
+		if (CONTENT_TYPE.equalsIgnoreCase(name)) {
+			return CONTENT_TYPE_JSON;
+		}
+		if (CONTENT_LENGTH.equalsIgnoreCase(name)) {
+			return Integer.toString(getContentLength());
+		}
+		return connection == null ? null : connection.getHeader(name);
+	}
+
+	@Override
+	public Iterator<String> getHeaders() {
+		if (connection == null) {
+			return Collections.emptyIterator();
+		}
+		return connection.getHeaders();
+	}
+
+	@Override
+	public boolean isMultipart() {
+		return false;
+	}
+
+	@Override
+	public String getProtocol() {
+		return connection == null ? "HTTP/1.1" : connection.getProtocol();
+	}
+
+	@Override
+	public Object getInternalObject() {
+		return connection == null ? null : connection.getInternalObject();
+	}
+
+}
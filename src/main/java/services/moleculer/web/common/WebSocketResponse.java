@@ -0,0 +1,161 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2018 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web.common;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import io.datatree.Tree;
+import services.moleculer.web.WebResponse;
+
+/**
+ * Response of an action call received over a WebSocket connection. The
+ * collected body is sent back in one message, as the "result" (or "error")
+ * property of a JSON object with the "id" of the call.
+ */
+public class WebSocketResponse implements WebResponse, HttpConstants {
+
+	// --- RESPONSE VARIABLES ---
+
+	protected final Endpoint endpoint;
+	protected final Object id;
+
+	protected volatile int status = 200;
+	protected HashMap<String, String> headers;
+	protected HashMap<String, Object> properties;
+	protected ByteArrayOutputStream body;
+
+	protected final AtomicBoolean ended = new AtomicBoolean();
+
+	// --- CONSTRUCTOR ---
+
+	public WebSocketResponse(Endpoint endpoint, Object id) {
+		this.endpoint = endpoint;
+		this.id = id;
+	}
+
+	// --- PUBLIC WEBRESPONSE METHODS ---
+
+	@Override
+	public void setStatus(int code) {
+		status = code;
+	}
+
+	@Override
+	public int getStatus() {
+		return status;
+	}
+
+	@Override
+	public synchronized void setHeader(String name, String value) {
+		if (headers == null) {
+			headers = new HashMap<>();
+		}
+		headers.put(name, value);
+	}
+
+	@Override
+	public synchronized String getHeader(String name) {
+		if (headers == null) {
+			return null;
+		}
+		return headers.get(name);
+	}
+
+	@Override
+	public synchronized void send(byte[] bytes) throws IOException {
+		if (bytes != null && bytes.length > 0) {
+			if (body == null) {
+				body = new ByteArrayOutputStream(bytes.length);
+			}
+			body.write(bytes);
+		}
+	}
+
+	@Override
+	public boolean end() {
+		if (!ended.compareAndSet(false, true)) {
+			return false;
+		}
+		Tree message = new Tree();
+		if (id != null) {
+			message.putObject("id", id);
+		}
+		int code = status;
+		if (code != 200) {
+			message.put("status", code);
+		}
+		String name = code < 400 ? "result" : "error";
+		byte[] bytes;
+		String contentType;
+		synchronized (this) {
+			bytes = body == null ? null : body.toByteArray();
+			contentType = headers == null ? null : headers.get(CONTENT_TYPE);
+		}
+		if (bytes == null || bytes.length == 0) {
+			message.putObject(name, null);
+		} else if (contentType == null || contentType.contains("json")) {
+			try {
+				message.putObject(name, new Tree(bytes).asObject());
+			} catch (Exception notJson) {
+				message.put(name, new String(bytes, StandardCharsets.UTF_8));
+			}
+		} else {
+			message.put(name, new String(bytes, StandardCharsets.UTF_8));
+		}
+		endpoint.send(message.toString(null, false, false));
+		return true;
+	}
+
+	// --- CUSTOM PROPERTIES ---
+
+	@Override
+	public synchronized void setProperty(String name, Object value) {
+		if (properties == null) {
+			properties = new HashMap<>();
+		}
+		properties.put(name, value);
+	}
+
+	@Override
+	public synchronized Object getProperty(String name) {
+		if (properties == null) {
+			return null;
+		}
+		return properties.get(name);
+	}
+
+	// --- ACCESS TO INTERNAL OBJECT ---
+
+	@Override
+	public Object getInternalObject() {
+		return endpoint.getInternal();
+	}
+
+}
@@ -0,0 +1,178 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2018 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web.common;
+
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+
+import services.moleculer.web.WebSocketRegistry;
+
+/**
+ * WebSocket paths subscribed on the other ApiGateway nodes. The gateways
+ * advertise their paths periodically and when they change; the entries that
+ * are not refreshed in time are ignored and removed.
+ */
+public class WebSocketSubscriptions {
+
+	// --- VARIABLES ---
+
+	/**
+	 * Subscribers by "nodeID:serviceName" keys.
+	 */
+	protected final ConcurrentHashMap<String, Subscriber> subscribers = new ConcurrentHashMap<>();
+
+	// --- UPDATE ---
+
+	/**
+	 * Stores the advertised paths of a remote gateway.
+	 * 
+	 * @param nodeID
+	 *            node ID of the gateway
+	 * @param service
+	 *            service name of the gateway
+	 * @param paths
+	 *            paths with WebSocket clients
+	 * @param timeToLive
+	 *            validity of the entry in milliseconds
+	 * @param token
+	 *            delivery token of the gateway (the forwarded messages must
+	 *            contain it)
+	 * 
+	 * @return true if the gateway was unknown (or expired)
+	 */
+	public boolean update(String nodeID, String service, Collection<String> paths, long timeToLive,
+			String token) {
+		Subscriber subscriber = new Subscriber(nodeID, service, paths,
+				System.currentTimeMillis() + timeToLive, token);
+		Subscriber previous = subscribers.put(nodeID + ':' + service, subscriber);
+		return previous == null || previous.isExpired(System.currentTimeMillis());
+	}
+
+	public void remove(String nodeID) {
+		subscribers.values().removeIf(subscriber -> subscriber.nodeID.equals(nodeID));
+	}
+
+	public void removeExpired() {
+		long now = System.currentTimeMillis();
+		Iterator<Subscriber> i = subscribers.values().iterator();
+		while (i.hasNext()) {
+			if (i.next().isExpired(now)) {
+				i.remove();
+			}
+		}
+	}
+
+	// --- FIND ---
+
+	/**
+	 * Returns the gateways with WebSocket clients on the specified path.
+	 * 
+	 * @param path
+	 *            WebSocket path or pattern (eg. "/ws/orders/**")
+	 * 
+	 * @return list of subscribers (empty if there is no subscriber)
+	 */
+	public List<Subscriber> find(String path) {
+		if (subscribers.isEmpty()) {
+			return Collections.emptyList();
+		}
+		long now = System.currentTimeMillis();
+		boolean pattern = WebSocketRegistry.isPattern(path);
+		LinkedList<Subscriber> list = null;
+		for (Subscriber subscriber : subscribers.values()) {
+			if ((pattern ? subscriber.matches(path) : subscriber.paths.contains(path)) && !subscriber.isExpired(now)) {
+				if (list == null) {
+					list = new LinkedList<>();
+				}
+				list.add(subscriber);
+			}
+		}
+		if (list == null) {
+			return Collections.emptyList();
+		}
+		return list;
+	}
+
+	public int size() {
+		return subscribers.size();
+	}
+
+	// --- SUBSCRIBER ---
+
+	public static final class Subscriber {
+
+		protected final String nodeID;
+		protected final String service;
+		protected final Set<String> paths;
+		protected final long expires;
+		protected final String token;
+
+		protected Subscriber(String nodeID, String service, Collection<String> paths, long expires, String token) {
+			this.nodeID = nodeID;
+			this.service = service;
+			this.paths = new HashSet<>(paths);
+			this.expires = expires;
+			this.token = token;
+		}
+
+		protected boolean matches(String pattern) {
+			for (String path : paths) {
+				if (WebSocketRegistry.matches(pattern, path)) {
+					return true;
+				}
+			}
+			return false;
+		}
+
+		protected boolean isExpired(long now) {
+			return now > expires;
+		}
+
+		public String getNodeID() {
+			return nodeID;
+		}
+
+		public String getService() {
+			return service;
+		}
+
+		public Set<String> getPaths() {
+			return Collections.unmodifiableSet(paths);
+		}
+
+		public String getToken() {
+			return token;
+		}
+
+	}
+
+}
@@ -30,11 +30,12 @@ import static services.moleculer.util.CommonUtils.formatPath;
 import static services.moleculer.web.common.GatewayUtils.getFileSize;
 import static services.moleculer.web.common.GatewayUtils.getFileURL;
 import static services.moleculer.web.common.GatewayUtils.getLastModifiedTime;
+import static services.moleculer.web.common.GatewayUtils.getLocalFile;
 import static services.moleculer.web.common.GatewayUtils.isReadable;
 import static services.moleculer.web.common.GatewayUtils.readAllBytes;
 import static services.moleculer.web.common.GatewayUtils.sendError;
 
-import java.nio.charset.StandardCharsets;
+import java.io.File;
 import java.util.HashMap;
 import java.util.zip.Deflater;
 
@@ -46,6 +47,7 @@ import services.moleculer.web.RequestProcessor;
 import services.moleculer.web.WebRequest;
 import services.moleculer.web.WebResponse;
 import services.moleculer.web.common.HttpConstants;
+import services.moleculer.web.netty.NettyWebResponse;
 
 /**
  * Service to serve files from within a given root directory. When a file is not
@@ -351,36 +353,33 @@ public class ServeStatic extends HttpMiddleware implements HttpConstants {
 						} else {
 							
 							// Add "Content-Length" header
+							// (or the server uses chunked transfer encoding)
 							if (size > -1) {
 								rsp.setHeader(CONTENT_LENGTH, Long.toString(size));
-							} else {
-								rsp.setHeader(TRANSFER_ENCODING, CHUNKED);
 							}
 
-							// Create stream
-							PacketStream stream = broker.createStream();
-							stream.onPacket((bytes, cause, close) -> {
-								if (bytes != null) {
-									if (size > -1) {
-										rsp.send(bytes);
-									} else {
-										rsp.send(Integer.toString(bytes.length).getBytes(StandardCharsets.US_ASCII));
-										rsp.send("\r\n".getBytes(StandardCharsets.US_ASCII));
+							// Zero-copy transfer of a local file (sendfile)
+							File file = null;
+							if (size > -1 && rsp instanceof NettyWebResponse) {
+								file = getLocalFile(absolutePath);
+							}
+							if (file == null || !((NettyWebResponse) rsp).sendFile(file, 0, size)) {
+
+								// Create stream
+								PacketStream stream = broker.createStream();
+								stream.onPacket((bytes, cause, close) -> {
+									if (bytes != null) {
 										rsp.send(bytes);
-										rsp.send("\r\n".getBytes(StandardCharsets.US_ASCII));
 									}
-								}
-								if (close) {
-									if (size == -1) {
-										rsp.send("0\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+									if (close) {
+										rsp.end();
 									}
-									rsp.end();
-								}
-							});
-							
-							// Transfer data
-							stream.transferFrom(getFileURL(absolutePath).openStream());
-							return;
+								});
+
+								// Transfer data
+								stream.transferFrom(getFileURL(absolutePath).openStream());
+								return;
+							}
 						}
 					}
 
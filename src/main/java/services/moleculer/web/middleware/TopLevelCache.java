@@ -120,7 +120,7 @@ public class TopLevelCache extends HttpMiddleware implements HttpConstants {
 			public void service(WebRequest req, WebResponse rsp) throws Exception {
 
 				// Check method and Query String
-				if (req.getBody() != null || !"GET".equals(req.getMethod())) {
+				if (!"GET".equals(req.getMethod()) || req.getBody() != null) {
 
 					// Disable caching POST methods and/or any methods
 					// with Query Strings (uploaded data)
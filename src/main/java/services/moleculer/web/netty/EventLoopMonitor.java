@@ -0,0 +1,183 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2018 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web.netty;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import io.netty.channel.EventLoopGroup;
+import io.netty.util.concurrent.EventExecutor;
+
+/**
+ * Measures how long the event loops are blocked. A probe task is scheduled
+ * periodically on each event loop; the difference between the scheduled and
+ * the actual start time of the probe is the time while the loop was busy
+ * (eg. by a blocking middleware).
+ */
+public class EventLoopMonitor {
+
+	// --- PROPERTIES ---
+
+	/**
+	 * Sampling interval, in nanoseconds.
+	 */
+	protected final long interval;
+
+	/**
+	 * Delays above this limit are counted as blocked periods, in nanoseconds.
+	 */
+	protected final long threshold;
+
+	protected volatile boolean running;
+
+	// --- STATISTICS ---
+
+	protected final LongAdder samples = new LongAdder();
+	protected final LongAdder totalDelay = new LongAdder();
+	protected final LongAdder blockedCount = new LongAdder();
+	protected final LongAdder blockedTime = new LongAdder();
+	protected final AtomicLong maxDelay = new AtomicLong();
+
+	// --- CONSTRUCTOR ---
+
+	/**
+	 * Creates a monitor.
+	 * 
+	 * @param intervalMillis
+	 *            sampling interval in milliseconds
+	 * @param thresholdMillis
+	 *            delays above this limit are counted as blocked periods
+	 */
+	public EventLoopMonitor(long intervalMillis, long thresholdMillis) {
+		this.interval = TimeUnit.MILLISECONDS.toNanos(Math.max(1, intervalMillis));
+		this.threshold = TimeUnit.MILLISECONDS.toNanos(Math.max(0, thresholdMillis));
+	}
+
+	// --- START / STOP ---
+
+	public void start(EventLoopGroup group) {
+		running = true;
+		for (EventExecutor executor : group) {
+			schedule(executor);
+		}
+	}
+
+	public void stop() {
+		running = false;
+	}
+
+	protected void schedule(EventExecutor executor) {
+		if (!running || executor.isShuttingDown()) {
+			return;
+		}
+		long start = System.nanoTime();
+		executor.schedule(() -> {
+			record(System.nanoTime() - start - interval);
+			schedule(executor);
+		}, interval, TimeUnit.NANOSECONDS);
+	}
+
+	protected void record(long delay) {
+		if (delay < 0) {
+			delay = 0;
+		}
+		samples.increment();
+		totalDelay.add(delay);
+		if (delay > threshold) {
+			blockedCount.increment();
+			blockedTime.add(delay);
+		}
+		long max = maxDelay.get();
+		while (delay > max && !maxDelay.compareAndSet(max, delay)) {
+			max = maxDelay.get();
+		}
+	}
+
+	public void reset() {
+		samples.reset();
+		totalDelay.reset();
+		blockedCount.reset();
+		blockedTime.reset();
+		maxDelay.set(0);
+	}
+
+	// --- GETTERS ---
+
+	/**
+	 * Returns the number of the probes (of all event loops).
+	 * 
+	 * @return number of samples
+	 */
+	public long getSamples() {
+		return samples.sum();
+	}
+
+	/**
+	 * Returns the average delay of the probes, in microseconds.
+	 * 
+	 * @return average delay
+	 */
+	public long getAverageDelay() {
+		long count = samples.sum();
+		return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalDelay.sum() / count);
+	}
+
+	/**
+	 * Returns the longest delay of the probes, in microseconds.
+	 * 
+	 * @return max delay
+	 */
+	public long getMaxDelay() {
+		return TimeUnit.NANOSECONDS.toMicros(maxDelay.get());
+	}
+
+	/**
+	 * Returns the number of the probes which were delayed more than the
+	 * threshold.
+	 * 
+	 * @return number of blocked periods
+	 */
+	public long getBlockedCount() {
+		return blockedCount.sum();
+	}
+
+	/**
+	 * Returns the sum of the delays above the threshold, in milliseconds.
+	 * 
+	 * @return blocked time
+	 */
+	public long getBlockedTime() {
+		return TimeUnit.NANOSECONDS.toMillis(blockedTime.sum());
+	}
+
+	@Override
+	public String toString() {
+		return "samples: " + getSamples() + ", average delay: " + getAverageDelay() + " us, max delay: "
+				+ getMaxDelay() + " us, blocked: " + getBlockedCount() + " times (" + getBlockedTime() + " ms)";
+	}
+
+}
@@ -27,19 +27,21 @@ package services.moleculer.web.netty;
 
 import static services.moleculer.web.common.GatewayUtils.sendError;
 
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+
 import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
-import io.netty.channel.ChannelPipeline;
 import io.netty.channel.SimpleChannelInboundHandler;
 import io.netty.handler.codec.http.DefaultFullHttpRequest;
 import io.netty.handler.codec.http.DefaultHttpHeaders;
 import io.netty.handler.codec.http.HttpContent;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpRequest;
-import io.netty.handler.codec.http.HttpResponseEncoder;
 import io.netty.handler.codec.http.LastHttpContent;
 import io.netty.handler.codec.http.websocketx.CloseWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.ContinuationWebSocketFrame;
@@ -51,6 +53,7 @@ import io.netty.handler.codec.http.websocketx.WebSocketServerHandshaker;
 import io.netty.handler.codec.http.websocketx.WebSocketServerHandshakerFactory;
 import services.moleculer.ServiceBroker;
 import services.moleculer.web.ApiGateway;
+import services.moleculer.web.common.Endpoint;
 
 public class MoleculerHandler extends SimpleChannelInboundHandler<Object> {
 
@@ -58,11 +61,32 @@ public class MoleculerHandler extends SimpleChannelInboundHandler<Object> {
 
 	protected final ApiGateway gateway;
 	protected final ServiceBroker broker;
+	protected final int aggregationThreshold;
+
+	/**
+	 * Executor of the ApiGateway's request processing (null = I/O thread).
+	 */
+	protected final Executor executor;
 
 	// --- PROCESSING VARIABLES ---
 
 	protected volatile NettyWebRequest req;
 
+	/**
+	 * Responses of the pipelined HTTP/1.1 requests (in order of the requests).
+	 */
+	protected final LinkedList<NettyWebResponse> responses = new LinkedList<>();
+
+	/**
+	 * Response of the request whose body is being aggregated.
+	 */
+	protected NettyWebResponse aggregated;
+
+	/**
+	 * Queued response of the request being received (for the error handler).
+	 */
+	protected NettyWebResponse current;
+
 	// --- WEBSOCKET VARIABLES ---
 
 	protected final NettyWebSocketRegistry webSocketRegistry;
@@ -70,18 +94,64 @@ public class MoleculerHandler extends SimpleChannelInboundHandler<Object> {
 	protected volatile String path;
 	protected volatile WebSocketServerHandshaker handshaker;
 
+	/**
+	 * Upgrade request of the WebSocket connection (headers and address of the
+	 * action calls received over WebSocket).
+	 */
+	protected volatile NettyWebRequest webSocketRequest;
+
+	protected volatile Endpoint endpoint;
+
 	// --- CONSTRUCTOR ---
 
 	public MoleculerHandler(ApiGateway gateway, ServiceBroker broker, NettyWebSocketRegistry nettyWebSocketRegistry) {
+		this(gateway, broker, nettyWebSocketRegistry, 0);
+	}
+
+	public MoleculerHandler(ApiGateway gateway, ServiceBroker broker, NettyWebSocketRegistry nettyWebSocketRegistry,
+			int aggregationThreshold) {
+		this(gateway, broker, nettyWebSocketRegistry, aggregationThreshold, null);
+	}
+
+	public MoleculerHandler(ApiGateway gateway, ServiceBroker broker, NettyWebSocketRegistry nettyWebSocketRegistry,
+			int aggregationThreshold, Executor executor) {
 		this.gateway = gateway;
 		this.broker = broker;
 		this.webSocketRegistry = nettyWebSocketRegistry;
+		this.aggregationThreshold = aggregationThreshold;
+		this.executor = executor;
+	}
+
+	// --- BACKPRESSURE ---
+
+	@Override
+	public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+
+		// Wake up the blocked NettyWebResponses
+		synchronized (this) {
+			notifyAll();
+		}
+
+		// Send the queued WebSocket frames
+		if (handshaker != null && webSocketRegistry != null) {
+			webSocketRegistry.writabilityChanged(ctx);
+		}
+		super.channelWritabilityChanged(ctx);
+	}
+
+	@Override
+	public void channelInactive(ChannelHandlerContext ctx) throws Exception {
+		synchronized (this) {
+			notifyAll();
+		}
+		super.channelInactive(ctx);
 	}
 
 	// --- PROCESS INCOMING HTTP REQUEST ---
 
 	@Override
 	protected void channelRead0(ChannelHandlerContext ctx, final Object request) throws Exception {
+		NettyWebResponse rsp = null;
 
 		// --- HTTP MESSAGES ---
 
@@ -90,6 +160,7 @@ public class MoleculerHandler extends SimpleChannelInboundHandler<Object> {
 			// HTTP request -> begin
 			if (request instanceof HttpRequest) {
 				HttpRequest httpRequest = (HttpRequest) request;
+				current = null;
 
 				// Get URI + QueryString
 				path = httpRequest.uri();
@@ -114,19 +185,25 @@ public class MoleculerHandler extends SimpleChannelInboundHandler<Object> {
 										httpRequest.method(), path, Unpooled.buffer(0), httpHeaders,
 										new DefaultHttpHeaders(false));
 
-								ChannelPipeline p = ctx.pipeline();
-								p.addAfter("decoder", "encoder", new HttpResponseEncoder());
-
 								handshaker.handshake(ctx.channel(), req).addListener(new ChannelFutureListener() {
 
 									@Override
 									public void operationComplete(ChannelFuture future) throws Exception {
 										if (future.isSuccess()) {
+											webSocketRequest = new NettyWebRequest(ctx, httpRequest, httpHeaders, broker,
+													path);
+											endpoint = webSocketRegistry.toEnpoint(ctx);
 											int i = path.indexOf('?');
 											if (i > 0) {
 												path = path.substring(0, i);
 											}
-											webSocketRegistry.register(path, ctx);
+											String endpointPath = path;
+											webSocketRegistry.register(endpointPath, ctx);
+
+											// Deregister when the connection is closed
+											ctx.channel().closeFuture().addListener(closed -> {
+												webSocketRegistry.deregister(endpointPath, ctx);
+											});
 										}
 									}
 								});
@@ -136,39 +213,36 @@ public class MoleculerHandler extends SimpleChannelInboundHandler<Object> {
 					return;
 				}
 
-				req = new NettyWebRequest(ctx, httpRequest, httpHeaders, broker, path);
-				gateway.service(req, new NettyWebResponse(ctx, req));
-				return;
-			}
+				req = new NettyWebRequest(ctx, httpRequest, httpHeaders, broker, path, aggregationThreshold);
+				rsp = new NettyWebResponse(ctx, req, responses);
+				current = rsp;
+				if (req.body == null) {
+					service(req, rsp);
+				} else {
 
-			// HTTP request -> content
-			if (request instanceof HttpContent) {
-				HttpContent content = (HttpContent) request;
-				byte[] data = null;
-				ByteBuf byteBuffer = content.content();
-				if (byteBuffer == null) {
-					return;
+					// Small body -> invoke gateway when the body is complete
+					aggregated = rsp;
 				}
-				int len = byteBuffer.readableBytes();
-				if (len < 1) {
-					if (req != null && req.stream != null && request instanceof LastHttpContent) {
-						req.stream.sendClose();
-					}
+
+				// Full request (eg. HTTP/2 headers with "end of stream" flag)
+				if (!(request instanceof HttpContent)) {
 					return;
 				}
-				data = new byte[len];
-				byteBuffer.readBytes(data);
-
-				// Push data into the stream
-				if (req.parser == null) {
-					if (req.stream != null) {
-						req.stream.sendData(data);
-						if (request instanceof LastHttpContent) {
-							req.stream.sendClose();
-						}
+			}
+
+			// HTTP request -> content
+			if (request instanceof HttpContent) {
+				ByteBuf byteBuffer = ((HttpContent) request).content();
+				if (byteBuffer != null && req != null) {
+
+					// Push data into the parser or stream (without retaining)
+					boolean last = request instanceof LastHttpContent;
+					req.receive(byteBuffer, last);
+					if (last && aggregated != null) {
+						rsp = aggregated;
+						aggregated = null;
+						service(req, rsp);
 					}
-				} else {
-					req.parser.write(data);
 				}
 				return;
 			}
@@ -200,7 +274,7 @@ public class MoleculerHandler extends SimpleChannelInboundHandler<Object> {
 			// Process WebSocket message frame
 			if (request instanceof WebSocketFrame) {
 				WebSocketFrame frame = (WebSocketFrame) request;
-				ByteBuf byteBuffer = frame.content().retain();
+				ByteBuf byteBuffer = frame.content();
 				if (byteBuffer == null) {
 					return;
 				}
@@ -208,10 +282,23 @@ public class MoleculerHandler extends SimpleChannelInboundHandler<Object> {
 				if (len < 1) {
 					return;
 				}
-				byte[] data = new byte[len];
-				byteBuffer.readBytes(data);
-				if (data.length > 0 && data[0] == '!') {
+
+				// Heartbeat
+				if (byteBuffer.getByte(byteBuffer.readerIndex()) == '!') {
 					ctx.channel().writeAndFlush(new TextWebSocketFrame("!"));
+					return;
+				}
+
+				// Action call (the frame is released after this method)
+				if (frame instanceof TextWebSocketFrame && endpoint != null) {
+					String message = byteBuffer.toString(StandardCharsets.UTF_8);
+					if (executor == null) {
+						webSocketRegistry.onMessage(endpoint, webSocketRequest, message);
+					} else {
+						executor.execute(() -> {
+							webSocketRegistry.onMessage(endpoint, webSocketRequest, message);
+						});
+					}
 				}
 				return;
 			}
@@ -222,14 +309,46 @@ public class MoleculerHandler extends SimpleChannelInboundHandler<Object> {
 			throw new IllegalStateException("Unknown package type: " + request);
 
 		} catch (Throwable cause) {
-			sendError(new NettyWebResponse(ctx, req), cause);
-			if (broker == null) {
-				if (cause != null) {
-					cause.printStackTrace();
-				}
-			} else {
-				broker.getLogger(MoleculerHandler.class).error("Unable to process request!", cause);
+
+			// Keep the order of the pipelined responses
+			if (rsp == null) {
+				rsp = current;
+			}
+			if (rsp == null || rsp.isEnded()) {
+				rsp = new NettyWebResponse(ctx, req, responses);
+			}
+			handleError(rsp, cause);
+		}
+	}
+
+	// --- INVOKE API GATEWAY ---
+
+	protected void service(NettyWebRequest req, NettyWebResponse rsp) throws Exception {
+		if (executor == null) {
+
+			// Process request on the I/O thread
+			gateway.service(req, rsp);
+			return;
+		}
+
+		// Release the I/O thread (the body is received in the meantime)
+		executor.execute(() -> {
+			try {
+				gateway.service(req, rsp);
+			} catch (Throwable cause) {
+				handleError(rsp, cause);
+			}
+		});
+	}
+
+	protected void handleError(NettyWebResponse rsp, Throwable cause) {
+		sendError(rsp, cause);
+		if (broker == null) {
+			if (cause != null) {
+				cause.printStackTrace();
 			}
+		} else {
+			broker.getLogger(MoleculerHandler.class).error("Unable to process request!", cause);
 		}
 	}
 
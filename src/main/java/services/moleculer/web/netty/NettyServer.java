@@ -29,14 +29,24 @@ import static services.moleculer.web.common.GatewayUtils.getFileURL;
 import static services.moleculer.web.common.GatewayUtils.getService;
 
 import java.io.InputStream;
+import java.lang.reflect.Method;
 import java.net.InetSocketAddress;
 import java.security.KeyStore;
+import java.security.SecureRandom;
 import java.security.cert.CertificateException;
 import java.security.cert.X509Certificate;
 import java.util.ArrayList;
 import java.util.Collection;
 import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import javax.net.ssl.KeyManagerFactory;
 import javax.net.ssl.ManagerFactoryParameters;
@@ -48,23 +58,49 @@ import javax.net.ssl.TrustManagerFactory;
 import javax.net.ssl.X509TrustManager;
 
 import io.netty.bootstrap.ServerBootstrap;
-import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.PooledByteBufAllocator;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelHandler;
+import io.netty.channel.ChannelHandlerContext;
 import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
 import io.netty.channel.ChannelPipeline;
 import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollChannelOption;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.epoll.EpollServerSocketChannel;
 import io.netty.channel.nio.NioEventLoopGroup;
 import io.netty.channel.socket.nio.NioServerSocketChannel;
-import io.netty.handler.codec.http.HttpRequestDecoder;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpServerUpgradeHandler;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandler;
+import io.netty.handler.codec.http2.CleartextHttp2ServerUpgradeHandler;
+import io.netty.handler.codec.http2.Http2CodecUtil;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2ServerUpgradeCodec;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.handler.ssl.ApplicationProtocolConfig;
+import io.netty.handler.ssl.ApplicationProtocolConfig.Protocol;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectedListenerFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolConfig.SelectorFailureBehavior;
+import io.netty.handler.ssl.ApplicationProtocolNames;
+import io.netty.handler.ssl.ApplicationProtocolNegotiationHandler;
 import io.netty.handler.ssl.OpenSsl;
-import io.netty.handler.ssl.OpenSslServerContext;
-import io.netty.handler.ssl.OpenSslServerSessionContext;
+import io.netty.handler.ssl.OpenSslSessionContext;
+import io.netty.handler.ssl.OpenSslSessionTicketKey;
 import io.netty.handler.ssl.SslContext;
 import io.netty.handler.ssl.SslContextBuilder;
 import io.netty.handler.ssl.SslHandler;
 import io.netty.handler.ssl.SslProvider;
 import io.netty.handler.ssl.util.SimpleTrustManagerFactory;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.AsciiString;
+import io.netty.util.concurrent.EventExecutor;
 import services.moleculer.ServiceBroker;
 import services.moleculer.eventbus.Listener;
 import services.moleculer.eventbus.Subscribe;
@@ -83,14 +119,56 @@ public class NettyServer extends Service {
 
 	protected String address;
 
-	protected EventLoopGroup threadGroup;
-
 	protected ChannelHandler handler;
 
 	protected int webSocketCleanupSeconds = 15;
 
 	protected boolean shutDownThreadPools = true;
-	
+
+	// --- EVENT LOOPS ---
+
+	/**
+	 * Number of acceptor threads (0 = one thread, or one thread per I/O thread
+	 * when SO_REUSEPORT is enabled).
+	 */
+	protected int bossThreads;
+
+	/**
+	 * Number of I/O threads (0 = number of available processors).
+	 */
+	protected int workerThreads;
+
+	/**
+	 * Event loop group which accepts the incoming connections.
+	 */
+	protected EventLoopGroup bossGroup;
+
+	/**
+	 * Event loop group which processes the accepted channels (the channels are
+	 * distributed evenly between the event loops).
+	 */
+	protected EventLoopGroup workerGroup;
+
+	// --- TRANSPORT ---
+
+	/**
+	 * Use the native epoll transport, when it is available (Linux only).
+	 */
+	protected boolean useEpoll = true;
+
+	/**
+	 * Enables SO_REUSEPORT (epoll transport only). In this mode one listening
+	 * socket is bound per acceptor thread (by default, one per I/O thread; see
+	 * "bossThreads"), and the kernel balances the incoming connections between
+	 * them.
+	 */
+	protected boolean reusePort;
+
+	/**
+	 * Listening sockets.
+	 */
+	protected final LinkedList<Channel> serverChannels = new LinkedList<>();
+
 	// --- SSL PROPERTIES ---
 
 	protected boolean useSSL;
@@ -115,10 +193,167 @@ public class NettyServer extends Service {
 
 	protected SslContext cachedSslContext;
 
+	// --- TLS PERFORMANCE PROPERTIES ---
+
+	/**
+	 * Use the OpenSSL engine (instead of the JDK's engine) whenever it is
+	 * available (netty-tcnative is on the classpath), also with Java
+	 * KeyStores.
+	 */
+	protected boolean preferOpenSsl = true;
+
+	/**
+	 * Rotation period of the session ticket keys in seconds (OpenSSL engine
+	 * only, 0 = use the OpenSSL's default key). The JDK engine manages its own
+	 * ticket keys (Java 13+).
+	 */
+	protected int sessionTicketKeyRotationSeconds = 3600;
+
+	/**
+	 * Number of the accepted session ticket keys. The newest key encrypts the
+	 * new tickets, the older keys only decrypt the tickets issued before the
+	 * rotation.
+	 */
+	protected int sessionTicketKeys = 2;
+
+	/**
+	 * Size of the server-side session cache (0 = engine's default).
+	 */
+	protected int sslSessionCacheSize;
+
+	/**
+	 * Lifetime of the cached sessions and tickets in seconds (0 = engine's
+	 * default).
+	 */
+	protected int sslSessionTimeout;
+
+	/**
+	 * Use the pooled allocator for the channels (and the SSL engines).
+	 */
+	protected boolean usePooledAllocator = true;
+
+	/**
+	 * Statistics of the TLS handshakes.
+	 */
+	protected SslHandshakeMonitor sslHandshakeMonitor = new SslHandshakeMonitor();
+
+	protected final LinkedList<OpenSslSessionTicketKey> ticketKeys = new LinkedList<>();
+
+	protected ScheduledFuture<?> ticketKeyTimer;
+
 	// --- WEBSOCKET REGISTRY ---
 
 	protected NettyWebSocketRegistry webSocketRegistry;
 
+	// --- WEBSOCKET COMPRESSION ---
+
+	/**
+	 * Enables the "permessage-deflate" WebSocket extension (if the client
+	 * supports it).
+	 */
+	protected boolean webSocketCompression;
+
+	/**
+	 * Compression level of the WebSocket messages (0...9).
+	 */
+	protected int webSocketCompressionLevel = 6;
+
+	/**
+	 * Window size of the WebSocket compressors (8...15 bits). Server windows
+	 * smaller than 15 bits require JZlib on the classpath.
+	 */
+	protected int webSocketWindowBits = 15;
+
+	/**
+	 * WebSocket messages smaller than this size are sent uncompressed.
+	 */
+	protected int webSocketMinCompressSize = 256;
+
+	/**
+	 * Reset the server's compressor after each message (less memory per
+	 * socket, lower compression ratio).
+	 */
+	protected boolean webSocketNoContextTakeover;
+
+	// --- HTTP/2 PROPERTIES ---
+
+	/**
+	 * Enables HTTP/2 (h2c upgrade and prior knowledge, or ALPN when "useSSL" is
+	 * set).
+	 */
+	protected boolean useHttp2;
+
+	/**
+	 * Max size of the body of a h2c upgrade request.
+	 */
+	protected static final int MAX_UPGRADE_CONTENT_LENGTH = 65536;
+
+	// --- REQUEST BODY PROPERTIES ---
+
+	/**
+	 * Max size of the aggregated request bodies. Smaller bodies (with known
+	 * Content-Length) are collected into a byte array and passed to the
+	 * ApiGateway in one piece, without creating a PacketStream (0 = streaming
+	 * all bodies).
+	 */
+	protected int aggregationThreshold = 4096;
+
+	// --- FLOW CONTROL ---
+
+	/**
+	 * Low water mark of the outbound buffer and the undelivered request body
+	 * (the response stream / reading is resumed below this limit).
+	 */
+	protected int writeBufferLowWaterMark = 32 * 1024;
+
+	/**
+	 * High water mark of the outbound buffer and the undelivered request body
+	 * (the response stream / reading is paused above this limit).
+	 */
+	protected int writeBufferHighWaterMark = 64 * 1024;
+
+	// --- REQUEST DISPATCHING ---
+
+	/**
+	 * Process the requests (the middlewares and the ApiGateway) outside of the
+	 * I/O threads. Use it when there are blocking middlewares (eg.
+	 * HostNameFilter, session stores, template engines).
+	 */
+	protected boolean offloadRequests;
+
+	/**
+	 * Use virtual threads to process the requests when the JVM supports them
+	 * (Java 21+, otherwise the broker's executor is used).
+	 */
+	protected boolean useVirtualThreads = true;
+
+	/**
+	 * Custom executor of the requests (overrides the "offloadRequests" and
+	 * "useVirtualThreads" properties).
+	 */
+	protected Executor executor;
+
+	/**
+	 * Executor created by this server (shut down at stop).
+	 */
+	protected ExecutorService createdExecutor;
+
+	// --- EVENT LOOP MONITORING ---
+
+	/**
+	 * Sampling interval of the event loop monitor in milliseconds (0 =
+	 * disabled).
+	 */
+	protected long eventLoopMonitorInterval;
+
+	/**
+	 * Delays of the event loops above this limit are counted as blocked periods
+	 * (in milliseconds).
+	 */
+	protected long eventLoopBlockedThreshold = 20;
+
+	protected EventLoopMonitor eventLoopMonitor;
+
 	// --- LOCK ---
 	
 	private final Object gatewayLock = new Object();
@@ -160,20 +395,79 @@ public class NettyServer extends Service {
 	public void started(ServiceBroker broker) throws Exception {
 		super.started(broker);
 
+		// Native transport is available? (a custom group defines the transport)
+		boolean epoll;
+		if (bossGroup != null) {
+			epoll = bossGroup instanceof EpollEventLoopGroup;
+		} else if (workerGroup != null) {
+			epoll = workerGroup instanceof EpollEventLoopGroup;
+		} else {
+			epoll = useEpoll && Epoll.isAvailable();
+		}
+
 		// Worker group
-		if (threadGroup == null) {
-			threadGroup = new NioEventLoopGroup(1, Executors.newSingleThreadExecutor(r -> {
-				Thread t = new Thread(r, "Netty Server on port " + port  + " (" + hashCode() + ")");
-				t.setPriority(Thread.MAX_PRIORITY - 1);
-				return t;
-			}));
+		if (workerGroup == null) {
+			int threads = workerThreads < 1 ? Runtime.getRuntime().availableProcessors() : workerThreads;
+			workerGroup = createEventLoopGroup(epoll, threads, "Worker");
+		}
+
+		// Number of listening sockets (SO_REUSEPORT: one per event loop)
+		int listeners = 1;
+		if (epoll && reusePort) {
+			if (bossThreads > 0) {
+				listeners = bossThreads;
+			} else {
+				listeners = 0;
+				Iterator<EventExecutor> i = workerGroup.iterator();
+				while (i.hasNext()) {
+					i.next();
+					listeners++;
+				}
+			}
+		}
+
+		// Acceptor group
+		if (bossGroup == null) {
+			bossGroup = createEventLoopGroup(epoll, Math.max(listeners, bossThreads), "Acceptor");
+		}
+		if (epoll != workerGroup instanceof EpollEventLoopGroup) {
+			throw new IllegalStateException("The acceptor group (" + bossGroup.getClass().getSimpleName()
+					+ ") and the worker group (" + workerGroup.getClass().getSimpleName()
+					+ ") must use the same transport (epoll or NIO)!");
+		}
+
+		// Executor of the requests
+		if (executor == null && offloadRequests) {
+			executor = createExecutor();
+		}
+
+		// Measure the blocked time of the I/O threads
+		if (eventLoopMonitorInterval > 0) {
+			eventLoopMonitor = new EventLoopMonitor(eventLoopMonitorInterval, eventLoopBlockedThreshold);
+			eventLoopMonitor.start(workerGroup);
 		}
 
 		// Create request chain
 		ServerBootstrap bootstrap = new ServerBootstrap();
-		bootstrap.group(threadGroup, threadGroup);
+		bootstrap.group(bossGroup, workerGroup);
+		bootstrap.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+				new WriteBufferWaterMark(writeBufferLowWaterMark, writeBufferHighWaterMark));
+		if (usePooledAllocator) {
+			bootstrap.childOption(ChannelOption.ALLOCATOR, PooledByteBufAllocator.DEFAULT);
+		}
 
-		bootstrap.channel(NioServerSocketChannel.class);
+		// Set channel type
+		if (epoll) {
+			bootstrap.channel(EpollServerSocketChannel.class);
+			if (reusePort) {
+				bootstrap.option(EpollChannelOption.SO_REUSEPORT, true);
+			}
+		} else {
+			bootstrap.channel(NioServerSocketChannel.class);
+			if (reusePort) {
+				logger.warn("SO_REUSEPORT is supported only by the native epoll transport.");
+			}
+		}
 
 		// Create webSocketRegistry
 		if (webSocketRegistry == null) {
@@ -186,17 +480,63 @@ public class NettyServer extends Service {
 
 				@Override
 				protected void initChannel(Channel ch) throws Exception {
+					waitForGateway();
 					ChannelPipeline p = ch.pipeline();
 					if (useSSL) {
 						p.addLast("ssl", createSslHandler(ch));
-					}
-					p.addLast("decoder", new HttpRequestDecoder());
-					while (gateway == null) {
-						synchronized (gatewayLock) {
-							gatewayLock.wait(200);
+						if (useHttp2) {
+
+							// Select HTTP/2 or HTTP/1.1 by ALPN
+							p.addLast("negotiator",
+									new ApplicationProtocolNegotiationHandler(ApplicationProtocolNames.HTTP_1_1) {
+
+										@Override
+										protected void configurePipeline(ChannelHandlerContext ctx, String protocol)
+												throws Exception {
+											if (ApplicationProtocolNames.HTTP_2.equals(protocol)) {
+												configureHttp2(ctx.pipeline(), true);
+											} else {
+												configureHttp1(ctx.pipeline());
+											}
+										}
+
+									});
+							return;
 						}
+					} else if (useHttp2) {
+
+						// HTTP/1.1, h2c upgrade or h2c with prior knowledge
+						HttpServerCodec codec = new HttpServerCodec();
+						HttpServerUpgradeHandler upgradeHandler = new HttpServerUpgradeHandler(codec, protocol -> {
+							if (AsciiString.contentEquals(Http2CodecUtil.HTTP_UPGRADE_PROTOCOL_NAME, protocol)) {
+								return new Http2ServerUpgradeCodec(Http2FrameCodecBuilder.forServer().build(),
+										new ChannelInitializer<Channel>() {
+
+											@Override
+											protected void initChannel(Channel ch) throws Exception {
+												configureHttp2(ch.pipeline(), false);
+											}
+
+										});
+							}
+							return null;
+						}, MAX_UPGRADE_CONTENT_LENGTH);
+						p.addLast("cleartext", new CleartextHttp2ServerUpgradeHandler(codec, upgradeHandler,
+								new ChannelInitializer<Channel>() {
+
+									@Override
+									protected void initChannel(Channel ch) throws Exception {
+										configureHttp2(ch.pipeline(), true);
+									}
+
+								}));
+						if (webSocketCompression) {
+							p.addLast("wsdeflate", createWebSocketExtensionHandler());
+						}
+						p.addLast("handler", createHandler());
+						return;
 					}
-					p.addLast("handler", new MoleculerHandler(gateway, broker, webSocketRegistry));
+					configureHttp1(p);
 				}
 
 			};
@@ -206,12 +546,131 @@ public class NettyServer extends Service {
 		bootstrap.childHandler(handler);
 
 		// Start server
+		try {
+			for (int i = 0; i < listeners; i++) {
+				ChannelFuture future = address == null ? bootstrap.bind(port) : bootstrap.bind(address, port);
+				future.get();
+				serverChannels.addLast(future.channel());
+			}
+		} catch (Exception cause) {
+
+			// Close the bound sockets and release the event loops
+			stopped();
+			throw cause;
+		}
 		if (address == null) {
-			bootstrap.bind(port).get();
-			logger.info("Netty Server started at \"" + (useSSL ? "https" : "http") + "://localhost:" + port + "\".");
-		} else {
-			bootstrap.bind(address, port).get();
+			logger.info("Netty Server started at \"" + (useSSL ? "https" : "http") + "://localhost:" + port + "\" ("
+					+ (epoll ? "epoll" : "nio") + " transport, " + listeners + " listener"
+					+ (listeners == 1 ? "" : "s") + (executor == null ? "" : ", offloaded requests") + ").");
+		}
+	}
+
+	// --- PIPELINE BUILDERS ---
+
+	protected void waitForGateway() throws InterruptedException {
+		while (gateway == null) {
+			synchronized (gatewayLock) {
+				gatewayLock.wait(200);
+			}
+		}
+	}
+
+	protected void configureHttp1(ChannelPipeline p) {
+		p.addLast("codec", new HttpServerCodec());
+		if (useSSL) {
+
+			// Writer of the ChunkedNioFiles (static files under TLS)
+			p.addLast("chunked", new ChunkedWriteHandler());
+		}
+		if (webSocketCompression) {
+			p.addLast("wsdeflate", createWebSocketExtensionHandler());
+		}
+		p.addLast("handler", createHandler());
+	}
+
+	protected void configureHttp2(ChannelPipeline p, boolean addFrameCodec) {
+
+		// HTTP/1.1 handler is not required on the parent channel
+		if (p.get("handler") != null) {
+			p.remove("handler");
+		}
+		if (p.get("wsdeflate") != null) {
+			p.remove("wsdeflate");
+		}
+		if (addFrameCodec) {
+			p.addLast("http2", Http2FrameCodecBuilder.forServer().build());
+		}
+
+		// Each HTTP/2 stream has its own child channel (and WebRequest)
+		p.addLast("multiplexer", new Http2MultiplexHandler(new ChannelInitializer<Http2StreamChannel>() {
+
+			@Override
+			protected void initChannel(Http2StreamChannel ch) throws Exception {
+				ChannelPipeline sp = ch.pipeline();
+				sp.addLast("codec", new Http2StreamFrameToHttpObjectCodec(true));
+				ch.config().setWriteBufferWaterMark(
+						new WriteBufferWaterMark(writeBufferLowWaterMark, writeBufferHighWaterMark));
+				sp.addLast("handler", createHandler());
+			}
+
+		}));
+	}
+
+	protected MoleculerHandler createHandler() {
+		return new MoleculerHandler(gateway, broker, webSocketRegistry, aggregationThreshold, executor);
+	}
+
+	protected Executor createExecutor() {
+		if (useVirtualThreads) {
+
+			// Java 21+ (the code is compiled for Java 8)
+			try {
+				Method factory = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+				createdExecutor = (ExecutorService) factory.invoke(null);
+				logger.info("Requests are processed by virtual threads.");
+				return createdExecutor;
+			} catch (NoSuchMethodException unsupported) {
+
+				// Older JVM
+			} catch (Exception cause) {
+				logger.warn("Unable to create virtual thread executor!", cause);
+			}
 		}
+		return broker.getConfig().getExecutor();
+	}
+
+	protected ChannelHandler createWebSocketExtensionHandler() {
+		int windowBits = webSocketWindowBits;
+		if (windowBits < 15) {
+			try {
+				Class.forName("com.jcraft.jzlib.Deflater");
+			} catch (ClassNotFoundException notFound) {
+
+				// The JDK's Deflater supports only 15 bits
+				logger.warn("JZlib not found, the WebSocket compressors use 15-bit window.");
+				webSocketWindowBits = windowBits = 15;
+			}
+		}
+		return new WebSocketServerExtensionHandler(new WebSocketDeflateHandshaker(webSocketCompressionLevel,
+				windowBits, webSocketMinCompressSize, webSocketNoContextTakeover));
+	}
+
+	protected EventLoopGroup createEventLoopGroup(boolean epoll, int threads, String type) {
+		ThreadFactory threadFactory = createThreadFactory(type);
+		if (epoll) {
+			return new EpollEventLoopGroup(threads, threadFactory);
+		}
+		return new NioEventLoopGroup(threads, threadFactory);
+	}
+
+	protected ThreadFactory createThreadFactory(String type) {
+		AtomicInteger counter = new AtomicInteger();
+		return r -> {
+			Thread t = new Thread(r, "Netty " + type + " #" + counter.incrementAndGet() + " on port " + port + " ("
+					+ hashCode() + ")");
+			t.setPriority(Thread.MAX_PRIORITY - 1);
+			return t;
+		};
 	}
 
 	// --- STOP NETTY SERVER ---
@@ -219,11 +678,46 @@ public class NettyServer extends Service {
 	@Override
 	public void stopped() {
 		super.stopped();
-		if (threadGroup != null && shutDownThreadPools) {
-			threadGroup.shutdownGracefully();
+		for (Channel channel : serverChannels) {
+			channel.close();
+		}
+		serverChannels.clear();
+		if (shutDownThreadPools) {
+			if (bossGroup != null) {
+				bossGroup.shutdownGracefully();
+			}
+			if (workerGroup != null && workerGroup != bossGroup) {
+				workerGroup.shutdownGracefully();
+			}
 		}
-		threadGroup = null;
+		bossGroup = null;
+		workerGroup = null;
 		handler = null;
+		if (eventLoopMonitor != null) {
+			eventLoopMonitor.stop();
+			logger.info("Event loop statistics: " + eventLoopMonitor);
+			eventLoopMonitor = null;
+		}
+		synchronized (this) {
+			if (ticketKeyTimer != null) {
+				ticketKeyTimer.cancel(false);
+				ticketKeyTimer = null;
+
+				// Rotation restarts with new keys
+				cachedSslContext = null;
+				ticketKeys.clear();
+			}
+		}
+		if (useSSL && sslHandshakeMonitor != null) {
+			logger.info("TLS handshake statistics: " + sslHandshakeMonitor);
+		}
+		if (createdExecutor != null) {
+			createdExecutor.shutdown();
+			if (executor == createdExecutor) {
+				executor = null;
+			}
+			createdExecutor = null;
+		}
 		if (webSocketRegistry != null) {
 			webSocketRegistry.stopped();
 			webSocketRegistry = null;
@@ -235,15 +729,22 @@ public class NettyServer extends Service {
 	protected SslHandler createSslHandler(Channel ch) throws Exception {
 		SslContext sslContext = getSslContext();
 		InetSocketAddress remoteAddress = (InetSocketAddress) ch.remoteAddress();
-		SSLEngine sslEngine = sslContext.newEngine(ByteBufAllocator.DEFAULT,
-				remoteAddress.getAddress().getHostAddress(), remoteAddress.getPort());
-		return new SslHandler(sslEngine);
+		SSLEngine sslEngine = sslContext.newEngine(ch.alloc(), remoteAddress.getAddress().getHostAddress(),
+				remoteAddress.getPort());
+		SslHandler sslHandler = new SslHandler(sslEngine);
+		if (sslHandshakeMonitor != null) {
+			sslHandshakeMonitor.watch(sslHandler);
+		}
+		return sslHandler;
 	}
 
 	protected synchronized SslContext getSslContext() throws Exception {
 		if (cachedSslContext == null) {
 			SslContextBuilder builder;
-			if (keyCertChainFilePath != null || keyFilePath != null) {
+			boolean pemFiles = keyCertChainFilePath != null || keyFilePath != null;
+			boolean openSsl = pemFiles
+					|| (preferOpenSsl && OpenSsl.isAvailable() && OpenSsl.supportsKeyManagerFactory());
+			if (pemFiles) {
 
 				// OpenSSL
 				InputStream keyCertChainInputStream = getFileURL(keyCertChainFilePath).openStream();
@@ -264,7 +765,7 @@ public class NettyServer extends Service {
 
 			}
 			Collection<String> cipherSuites;
-			if (keyCertChainFilePath != null || keyFilePath != null) {
+			if (openSsl) {
 
 				// OpenSSL
 				builder.sslProvider(SslProvider.OPENSSL);
@@ -332,18 +833,61 @@ public class NettyServer extends Service {
 			} else {
 				builder.trustManager(trustManagerFactory);
 			}
+			if (useHttp2) {
+				builder.applicationProtocolConfig(new ApplicationProtocolConfig(Protocol.ALPN,
+						SelectorFailureBehavior.NO_ADVERTISE, SelectedListenerFailureBehavior.ACCEPT,
+						ApplicationProtocolNames.HTTP_2, ApplicationProtocolNames.HTTP_1_1));
+			}
 			cachedSslContext = builder.build();
-			if (cachedSslContext instanceof OpenSslServerContext) {
-				SSLSessionContext sslSessionContext = cachedSslContext.sessionContext();
-				if (sslSessionContext instanceof OpenSslServerSessionContext) {
-					((OpenSslServerSessionContext) sslSessionContext)
-							.setSessionCacheEnabled(openSslSessionCacheEnabled);
+			SSLSessionContext sslSessionContext = cachedSslContext.sessionContext();
+			if (sslSessionContext != null) {
+				if (sslSessionCacheSize > 0) {
+					sslSessionContext.setSessionCacheSize(sslSessionCacheSize);
+				}
+				if (sslSessionTimeout > 0) {
+					sslSessionContext.setSessionTimeout(sslSessionTimeout);
 				}
 			}
+			if (sslSessionContext instanceof OpenSslSessionContext) {
+				((OpenSslSessionContext) sslSessionContext).setSessionCacheEnabled(openSslSessionCacheEnabled);
+
+				// Stateless session resumption with rotating keys
+				if (sessionTicketKeyRotationSeconds > 0) {
+					rotateTicketKeys();
+					ticketKeyTimer = broker.getConfig().getScheduler().scheduleAtFixedRate(this::rotateTicketKeys,
+							sessionTicketKeyRotationSeconds, sessionTicketKeyRotationSeconds, TimeUnit.SECONDS);
+				}
+			}
+			logger.info("TLS engine: " + (openSsl ? "OpenSSL" : "JDK") + ".");
 		}
 		return cachedSslContext;
 	}
 
+	protected synchronized void rotateTicketKeys() {
+		if (cachedSslContext == null) {
+			return;
+		}
+		SSLSessionContext sslSessionContext = cachedSslContext.sessionContext();
+		if (!(sslSessionContext instanceof OpenSslSessionContext)) {
+			return;
+		}
+		SecureRandom random = new SecureRandom();
+		byte[] name = new byte[OpenSslSessionTicketKey.NAME_SIZE];
+		byte[] hmacKey = new byte[OpenSslSessionTicketKey.HMAC_KEY_SIZE];
+		byte[] aesKey = new byte[OpenSslSessionTicketKey.AES_KEY_SIZE];
+		random.nextBytes(name);
+		random.nextBytes(hmacKey);
+		random.nextBytes(aesKey);
+
+		// The first key encrypts, the others decrypt the older tickets
+		ticketKeys.addFirst(new OpenSslSessionTicketKey(name, hmacKey, aesKey));
+		while (ticketKeys.size() > Math.max(1, sessionTicketKeys)) {
+			ticketKeys.removeLast();
+		}
+		((OpenSslSessionContext) sslSessionContext)
+				.setTicketKeys(ticketKeys.toArray(new OpenSslSessionTicketKey[ticketKeys.size()]));
+	}
+
 	// --- GETTERS AND SETTERS ---
 
 	public int getWebSocketCleanupSeconds() {
@@ -434,12 +978,257 @@ public class NettyServer extends Service {
 		this.address = address;
 	}
 
+	/**
+	 * Returns the event loop group of the I/O threads.
+	 * 
+	 * @return the worker group
+	 * 
+	 * @deprecated use {@link #getWorkerGroup()}
+	 */
+	@Deprecated
 	public EventLoopGroup getThreadGroup() {
-		return threadGroup;
+		return workerGroup;
 	}
 
+	/**
+	 * Sets a shared event loop group for accepting and processing connections.
+	 * 
+	 * @param singletonGroup
+	 *            the event loop group
+	 * 
+	 * @deprecated use {@link #setBossGroup(EventLoopGroup)} and
+	 *             {@link #setWorkerGroup(EventLoopGroup)}
+	 */
+	@Deprecated
 	public void setThreadGroup(EventLoopGroup singletonGroup) {
-		this.threadGroup = singletonGroup;
+		this.bossGroup = singletonGroup;
+		this.workerGroup = singletonGroup;
+	}
+
+	public EventLoopGroup getBossGroup() {
+		return bossGroup;
+	}
+
+	public void setBossGroup(EventLoopGroup bossGroup) {
+		this.bossGroup = bossGroup;
+	}
+
+	public EventLoopGroup getWorkerGroup() {
+		return workerGroup;
+	}
+
+	public void setWorkerGroup(EventLoopGroup workerGroup) {
+		this.workerGroup = workerGroup;
+	}
+
+	public boolean isUseHttp2() {
+		return useHttp2;
+	}
+
+	public void setUseHttp2(boolean useHttp2) {
+		this.useHttp2 = useHttp2;
+	}
+
+	public boolean isUseEpoll() {
+		return useEpoll;
+	}
+
+	public void setUseEpoll(boolean useEpoll) {
+		this.useEpoll = useEpoll;
+	}
+
+	public boolean isReusePort() {
+		return reusePort;
+	}
+
+	public void setReusePort(boolean reusePort) {
+		this.reusePort = reusePort;
+	}
+
+	public int getBossThreads() {
+		return bossThreads;
+	}
+
+	public void setBossThreads(int bossThreads) {
+		this.bossThreads = bossThreads;
+	}
+
+	public int getWorkerThreads() {
+		return workerThreads;
+	}
+
+	public void setWorkerThreads(int workerThreads) {
+		this.workerThreads = workerThreads;
+	}
+
+	public int getAggregationThreshold() {
+		return aggregationThreshold;
+	}
+
+	public void setAggregationThreshold(int aggregationThreshold) {
+		this.aggregationThreshold = aggregationThreshold;
+	}
+
+	public int getWriteBufferLowWaterMark() {
+		return writeBufferLowWaterMark;
+	}
+
+	public void setWriteBufferLowWaterMark(int writeBufferLowWaterMark) {
+		this.writeBufferLowWaterMark = writeBufferLowWaterMark;
+	}
+
+	public int getWriteBufferHighWaterMark() {
+		return writeBufferHighWaterMark;
+	}
+
+	public void setWriteBufferHighWaterMark(int writeBufferHighWaterMark) {
+		this.writeBufferHighWaterMark = writeBufferHighWaterMark;
+	}
+
+	public boolean isOffloadRequests() {
+		return offloadRequests;
+	}
+
+	public void setOffloadRequests(boolean offloadRequests) {
+		this.offloadRequests = offloadRequests;
+	}
+
+	public boolean isUseVirtualThreads() {
+		return useVirtualThreads;
+	}
+
+	public void setUseVirtualThreads(boolean useVirtualThreads) {
+		this.useVirtualThreads = useVirtualThreads;
+	}
+
+	public Executor getExecutor() {
+		return executor;
+	}
+
+	public void setExecutor(Executor executor) {
+		this.executor = executor;
+	}
+
+	public long getEventLoopMonitorInterval() {
+		return eventLoopMonitorInterval;
+	}
+
+	public void setEventLoopMonitorInterval(long eventLoopMonitorInterval) {
+		this.eventLoopMonitorInterval = eventLoopMonitorInterval;
+	}
+
+	public long getEventLoopBlockedThreshold() {
+		return eventLoopBlockedThreshold;
+	}
+
+	public void setEventLoopBlockedThreshold(long eventLoopBlockedThreshold) {
+		this.eventLoopBlockedThreshold = eventLoopBlockedThreshold;
+	}
+
+	/**
+	 * Returns the statistics of the I/O threads (or null, if the
+	 * "eventLoopMonitorInterval" is 0).
+	 * 
+	 * @return the event loop monitor
+	 */
+	public EventLoopMonitor getEventLoopMonitor() {
+		return eventLoopMonitor;
+	}
+
+	public boolean isPreferOpenSsl() {
+		return preferOpenSsl;
+	}
+
+	public void setPreferOpenSsl(boolean preferOpenSsl) {
+		this.preferOpenSsl = preferOpenSsl;
+	}
+
+	public int getSessionTicketKeyRotationSeconds() {
+		return sessionTicketKeyRotationSeconds;
+	}
+
+	public void setSessionTicketKeyRotationSeconds(int sessionTicketKeyRotationSeconds) {
+		this.sessionTicketKeyRotationSeconds = sessionTicketKeyRotationSeconds;
+	}
+
+	public int getSessionTicketKeys() {
+		return sessionTicketKeys;
+	}
+
+	public void setSessionTicketKeys(int sessionTicketKeys) {
+		this.sessionTicketKeys = sessionTicketKeys;
+	}
+
+	public int getSslSessionCacheSize() {
+		return sslSessionCacheSize;
+	}
+
+	public void setSslSessionCacheSize(int sslSessionCacheSize) {
+		this.sslSessionCacheSize = sslSessionCacheSize;
+	}
+
+	public int getSslSessionTimeout() {
+		return sslSessionTimeout;
+	}
+
+	public void setSslSessionTimeout(int sslSessionTimeout) {
+		this.sslSessionTimeout = sslSessionTimeout;
+	}
+
+	public boolean isUsePooledAllocator() {
+		return usePooledAllocator;
+	}
+
+	public void setUsePooledAllocator(boolean usePooledAllocator) {
+		this.usePooledAllocator = usePooledAllocator;
+	}
+
+	public SslHandshakeMonitor getSslHandshakeMonitor() {
+		return sslHandshakeMonitor;
+	}
+
+	public void setSslHandshakeMonitor(SslHandshakeMonitor sslHandshakeMonitor) {
+		this.sslHandshakeMonitor = sslHandshakeMonitor;
+	}
+
+	public boolean isWebSocketCompression() {
+		return webSocketCompression;
+	}
+
+	public void setWebSocketCompression(boolean webSocketCompression) {
+		this.webSocketCompression = webSocketCompression;
+	}
+
+	public int getWebSocketCompressionLevel() {
+		return webSocketCompressionLevel;
+	}
+
+	public void setWebSocketCompressionLevel(int webSocketCompressionLevel) {
+		this.webSocketCompressionLevel = webSocketCompressionLevel;
+	}
+
+	public int getWebSocketWindowBits() {
+		return webSocketWindowBits;
+	}
+
+	public void setWebSocketWindowBits(int webSocketWindowBits) {
+		this.webSocketWindowBits = webSocketWindowBits;
+	}
+
+	public int getWebSocketMinCompressSize() {
+		return webSocketMinCompressSize;
+	}
+
+	public void setWebSocketMinCompressSize(int webSocketMinCompressSize) {
+		this.webSocketMinCompressSize = webSocketMinCompressSize;
+	}
+
+	public boolean isWebSocketNoContextTakeover() {
+		return webSocketNoContextTakeover;
+	}
+
+	public void setWebSocketNoContextTakeover(boolean webSocketNoContextTakeover) {
+		this.webSocketNoContextTakeover = webSocketNoContextTakeover;
 	}
 
 	public ChannelHandler getHandler() {
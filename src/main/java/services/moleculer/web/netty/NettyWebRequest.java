@@ -28,18 +28,29 @@ package services.moleculer.web.netty;
 import java.io.IOException;
 import java.net.InetSocketAddress;
 import java.net.SocketAddress;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.synchronoss.cloud.nio.multipart.Multipart;
 import org.synchronoss.cloud.nio.multipart.MultipartContext;
 import org.synchronoss.cloud.nio.multipart.MultipartUtils;
 import org.synchronoss.cloud.nio.multipart.NioMultipartParser;
 
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.channel.ChannelConfig;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoop;
+import io.netty.channel.WriteBufferWaterMark;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpRequest;
 import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.Http2StreamChannel;
 import services.moleculer.ServiceBroker;
+import services.moleculer.stream.PacketListener;
 import services.moleculer.stream.PacketStream;
 import services.moleculer.web.WebRequest;
 import services.moleculer.web.common.ParserListener;
@@ -62,12 +73,67 @@ public class NettyWebRequest implements WebRequest {
 
 	protected PacketStream stream;
 	protected NioMultipartParser parser;
+	protected ServiceBroker broker;
+
+	/**
+	 * Aggregated (small) request body.
+	 */
+	protected byte[] body;
+	protected int bodyLength;
+
+	/**
+	 * Reusable buffer for copying direct ByteBufs into the multipart parser.
+	 */
+	protected byte[] parserBuffer;
+
+	/**
+	 * Max size of the parser's buffer.
+	 */
+	protected static final int PARSER_BUFFER_SIZE = 16384;
+
+	// --- INBOUND FLOW CONTROL ---
+
+	/**
+	 * Packets waiting for delivery into the body stream.
+	 */
+	protected ConcurrentLinkedQueue<byte[]> packets;
+
+	/**
+	 * Size of the packets not yet processed by the consumer (reading is paused
+	 * above the high water mark of the channel).
+	 */
+	protected final AtomicLong pendingBytes = new AtomicLong();
+
+	protected final AtomicBoolean delivering = new AtomicBoolean();
+
+	/**
+	 * A listener is attached to the body stream (packets are delivered only
+	 * to a listener, the PacketStream would buffer them without limit).
+	 */
+	protected volatile boolean consumed;
+
+	/**
+	 * The response is completed without reading the body (the rest of the body
+	 * is dropped).
+	 */
+	protected volatile boolean discarded;
+
+	/**
+	 * Marks the end of the body in the packet queue.
+	 */
+	protected static final byte[] CLOSE_MARKER = new byte[0];
 
 	// --- CONSTRUCTOR ---
 
 	public NettyWebRequest(ChannelHandlerContext ctx, HttpRequest req, HttpHeaders headers, ServiceBroker broker,
 			String path) throws IOException {
+		this(ctx, req, headers, broker, path, 0);
+	}
+
+	public NettyWebRequest(ChannelHandlerContext ctx, HttpRequest req, HttpHeaders headers, ServiceBroker broker,
+			String path, int aggregationThreshold) throws IOException {
 		this.ctx = ctx;
+		this.broker = broker;
 		this.headers = headers;
 
 		// Get method
@@ -111,11 +177,17 @@ public class NettyWebRequest implements WebRequest {
 			return;
 		}
 
+		// Small body with known length -> aggregate
+		multipart = MultipartUtils.isMultipart(contentType);
+		if (!multipart && contentLength > 0 && contentLength <= aggregationThreshold) {
+			body = new byte[contentLength];
+			return;
+		}
+
 		// Create stream
-		stream = broker.createStream();
+		stream = new BodyStream(broker);
 
 		// Create body stream
-		multipart = MultipartUtils.isMultipart(contentType);
 		if (multipart) {
 			MultipartContext context = new MultipartContext(contentType, contentLength, null);
 			ParserListener listener = new ParserListener(stream, context);
@@ -218,9 +290,27 @@ public class NettyWebRequest implements WebRequest {
 	 */
 	@Override
 	public PacketStream getBody() {
+		if (stream == null && body != null) {
+
+			// Convert the aggregated body to stream
+			stream = broker.createStream();
+			stream.sendData(body);
+			stream.sendClose();
+		}
 		return stream;
 	}
 
+	/**
+	 * Returns the complete request body, if the server received (aggregated)
+	 * the whole body before invoking the ApiGateway.
+	 * 
+	 * @return Request body (or null, if the body is streamed)
+	 */
+	@Override
+	public byte[] getBodyBytes() {
+		return body;
+	}
+
 	/**
 	 * Returns the value of the specified request header as a String. If the
 	 * request did not include a header of the specified name, this method
@@ -260,7 +350,10 @@ public class NettyWebRequest implements WebRequest {
 	 */
 	@Override
 	public String getProtocol() {
-		return httpVersion == null ? "HTTP/1.1" : httpVersion.protocolName();
+		if (ctx.channel() instanceof Http2StreamChannel) {
+			return "HTTP/2.0";
+		}
+		return httpVersion == null ? "HTTP/1.1" : httpVersion.text();
 	}
 
 	/**
@@ -273,6 +366,185 @@ public class NettyWebRequest implements WebRequest {
 		return multipart;
 	}
 
+	// --- BODY PROCESSING ---
+
+	/**
+	 * Pushes a chunk of the request body into the multipart parser or into the
+	 * body stream. The ByteBuf is not retained and its reader index is not
+	 * modified (the caller releases the buffer).
+	 * 
+	 * @param content
+	 *            the received data
+	 * @param last
+	 *            true, if this is the last chunk of the body
+	 * 
+	 * @throws IOException
+	 *             if the multipart parser cannot process the data
+	 */
+	public void receive(ByteBuf content, boolean last) throws IOException {
+		if (discarded) {
+			return;
+		}
+		int len = content.readableBytes();
+		if (body != null) {
+
+			// Copy into the aggregated body
+			len = Math.min(len, body.length - bodyLength);
+			content.getBytes(content.readerIndex(), body, bodyLength, len);
+			bodyLength += len;
+			if (last && bodyLength < body.length) {
+				body = Arrays.copyOf(body, bodyLength);
+			}
+			return;
+		}
+		if (parser == null) {
+			if (stream != null) {
+
+				// The stream stores the packets (it needs its own copy)
+				offer(len < 1 ? null : ByteBufUtil.getBytes(content), last);
+			}
+			return;
+		}
+		if (len < 1) {
+			if (last) {
+				stream.sendClose();
+			}
+			return;
+		}
+
+		// The parser processes (copies) the bytes synchronously
+		int index = content.readerIndex();
+		if (content.hasArray()) {
+			parser.write(content.array(), content.arrayOffset() + index, len);
+			return;
+		}
+		if (parserBuffer == null) {
+			parserBuffer = new byte[Math.min(len, PARSER_BUFFER_SIZE)];
+		}
+		while (len > 0) {
+			int size = Math.min(len, parserBuffer.length);
+			content.getBytes(index, parserBuffer, 0, size);
+			parser.write(parserBuffer, 0, size);
+			index += size;
+			len -= size;
+		}
+	}
+
+	protected void offer(byte[] bytes, boolean last) {
+		if (packets == null) {
+			packets = new ConcurrentLinkedQueue<>();
+		}
+		if (bytes != null) {
+			packets.add(bytes);
+			ChannelConfig config = ctx.channel().config();
+			WriteBufferWaterMark waterMark = config.getWriteBufferWaterMark();
+			if (pendingBytes.addAndGet(bytes.length) > waterMark.high() && config.isAutoRead()) {
+
+				// The consumer is slower than the client -> pause reading
+				config.setAutoRead(false);
+				if (pendingBytes.get() <= waterMark.low()) {
+
+					// The consumer has caught up in the meantime
+					config.setAutoRead(true);
+				}
+			}
+		}
+		if (last) {
+			packets.add(CLOSE_MARKER);
+		}
+		if (consumed && delivering.compareAndSet(false, true)) {
+			broker.getConfig().getExecutor().execute(this::deliver);
+		}
+	}
+
+	protected void deliver() {
+		ChannelConfig config = ctx.channel().config();
+		int lowWaterMark = config.getWriteBufferWaterMark().low();
+		try {
+			byte[] bytes;
+			while ((bytes = packets.poll()) != null) {
+				if (bytes == CLOSE_MARKER) {
+					stream.sendClose();
+					continue;
+				}
+				// The listener processes the packet synchronously
+				stream.sendData(bytes);
+				if (pendingBytes.addAndGet(-bytes.length) <= lowWaterMark && !config.isAutoRead()) {
+
+					// The consumer has caught up -> resume reading
+					config.setAutoRead(true);
+				}
+			}
+		} finally {
+			delivering.set(false);
+		}
+		if (!packets.isEmpty() && delivering.compareAndSet(false, true)) {
+			broker.getConfig().getExecutor().execute(this::deliver);
+		}
+	}
+
+	/**
+	 * Drops the unread body when the response is completed before anyone
+	 * consumed it (eg. "404 Not Found" or a rejected request). The queued
+	 * packets are released and reading is resumed, so the rest of the body is
+	 * received (and dropped) and the next request of the keep-alive connection
+	 * can be processed.
+	 */
+	public void discard() {
+		if (stream == null || discarded || (consumed && !multipart)) {
+			return;
+		}
+		discarded = true;
+		EventLoop eventLoop = ctx.channel().eventLoop();
+		if (eventLoop.inEventLoop()) {
+			release();
+		} else {
+			eventLoop.execute(this::release);
+		}
+	}
+
+	protected void release() {
+		if (packets != null) {
+			packets.clear();
+		}
+		pendingBytes.set(0);
+		ctx.channel().config().setAutoRead(true);
+	}
+
+	/**
+	 * Returns the size of the received packets not yet processed by the
+	 * consumer of the body stream.
+	 * 
+	 * @return number of pending bytes
+	 */
+	public long getPendingBytes() {
+		return pendingBytes.get();
+	}
+
+	// --- BODY STREAM ---
+
+	/**
+	 * Body stream, which starts the delivery of the received packets when the
+	 * consumer attaches its listener.
+	 */
+	protected class BodyStream extends PacketStream {
+
+		protected BodyStream(ServiceBroker broker) {
+			super(broker.getNodeID(), broker.getConfig().getScheduler());
+		}
+
+		@Override
+		public PacketStream onPacket(PacketListener listener) {
+			super.onPacket(listener);
+			consumed = true;
+			if (packets != null && !packets.isEmpty() && delivering.compareAndSet(false, true)) {
+				broker.getConfig().getExecutor().execute(NettyWebRequest.this::deliver);
+			}
+			return this;
+		}
+
+	}
+
 	// --- ACCESS TO INTERNAL OBJECT ---
 	
 	/**
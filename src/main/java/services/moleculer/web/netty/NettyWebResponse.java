@@ -25,27 +25,73 @@
  */
 package services.moleculer.web.netty;
 
+import java.io.File;
 import java.io.IOException;
-import java.nio.charset.StandardCharsets;
+import java.io.InterruptedIOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
 import java.util.HashMap;
+import java.util.LinkedList;
 import java.util.Map;
 import java.util.concurrent.atomic.AtomicBoolean;
 
+import io.netty.buffer.ByteBuf;
 import io.netty.buffer.Unpooled;
 import io.netty.channel.Channel;
+import io.netty.channel.ChannelFuture;
 import io.netty.channel.ChannelFutureListener;
 import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.DefaultFileRegion;
+import io.netty.handler.codec.http.DefaultFullHttpResponse;
+import io.netty.handler.codec.http.DefaultHttpContent;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.EmptyHttpHeaders;
+import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.LastHttpContent;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.ssl.SslHandler;
+import io.netty.handler.stream.ChunkedNioFile;
+import io.netty.handler.stream.ChunkedWriteHandler;
+import io.netty.util.AsciiString;
 import services.moleculer.web.WebResponse;
 import services.moleculer.web.common.HttpConstants;
 
 public class NettyWebResponse implements WebResponse, HttpConstants {
 
+	// --- CONSTANTS ---
+
+	/**
+	 * Size of the file chunks under TLS.
+	 */
+	protected static final int FILE_CHUNK_SIZE = 8192;
+
+	// --- PRE-ENCODED HEADER NAMES AND VALUES ---
+
+	protected static final HashMap<String, AsciiString> asciiStrings = new HashMap<>();
+
+	static {
+		String[] constants = { CONTENT_TYPE, CONTENT_LENGTH, CONNECTION, CONTENT_ENCODING, ETAG, SET_COOKIE,
+				CACHE_CONTROL, LOCATION, WWW_AUTHENTICATE, TRANSFER_ENCODING, GZIP, DEFLATE, KEEP_ALIVE, CLOSE,
+				NO_CACHE, CHUNKED, CONTENT_TYPE_JSON, CONTENT_TYPE_HTML };
+		for (String constant : constants) {
+			asciiStrings.put(constant, AsciiString.cached(constant));
+		}
+	}
+
 	// --- REQUEST PROPERTIES ----
 
 	protected final ChannelHandlerContext ctx;
 	protected final NettyWebRequest req;
 	protected final Channel channel;
+	protected final boolean http2;
+
+	/**
+	 * In-order response queue of the HTTP/1.1 connection (pipelining).
+	 */
+	protected final LinkedList<NettyWebResponse> queue;
 
 	/**
 	 * Custom properties (for inter-middleware communication).
@@ -57,13 +103,59 @@ public class NettyWebResponse implements WebResponse, HttpConstants {
 	protected int code = 200;
 	protected HashMap<String, String> headers;
 	protected AtomicBoolean first = new AtomicBoolean(true);
+	protected AtomicBoolean last = new AtomicBoolean(true);
+
+	/**
+	 * Response is written as one FullHttpResponse (with Content-Length).
+	 */
+	protected volatile boolean completed;
 
-	// --- CONSTRUCTOR ---
+	/**
+	 * Unflushed response (Content-Length is known, flush at the end).
+	 */
+	protected boolean buffered;
+
+	/**
+	 * Close connection after this response.
+	 */
+	protected boolean close;
+
+	/**
+	 * Future of the last written message.
+	 */
+	protected volatile ChannelFuture lastWrite;
+
+	// --- PIPELINING VARIABLES (GUARDED BY THE QUEUE) ---
+
+	/**
+	 * Messages of this response, waiting for the previous responses.
+	 */
+	protected LinkedList<Object> pending;
+
+	/**
+	 * The end() method was invoked, but the response is still in the queue.
+	 */
+	protected boolean ended;
+
+	// --- CONSTRUCTORS ---
 
 	public NettyWebResponse(ChannelHandlerContext ctx, NettyWebRequest req) {
+		this(ctx, req, null);
+	}
+
+	public NettyWebResponse(ChannelHandlerContext ctx, NettyWebRequest req, LinkedList<NettyWebResponse> queue) {
 		this.ctx = ctx;
 		this.req = req;
 		this.channel = ctx.channel();
+		this.http2 = channel instanceof Http2StreamChannel;
+		if (queue == null || http2) {
+			this.queue = null;
+		} else {
+			this.queue = queue;
+			synchronized (queue) {
+				queue.addLast(this);
+			}
+		}
 	}
 
 	// --- PUBLIC WEBRESPONSE METHODS ---
@@ -146,12 +238,90 @@ public class NettyWebResponse implements WebResponse, HttpConstants {
 			if (!channel.isOpen()) {
 				throw new IOException("Socket closed!");
 			}
-			sendHeaders();
-			ctx.write(Unpooled.wrappedBuffer(bytes));
-			ctx.flush();
+			if (completed) {
+				throw new IOException("Content-Length exceeded!");
+			}
+			waitForWritability();
+			ByteBuf content = Unpooled.wrappedBuffer(bytes);
+			if (first.compareAndSet(true, false)) {
+				long contentLength = getContentLength();
+				HttpHeaders httpHeaders = createHeaders(contentLength, true);
+				if (contentLength == bytes.length) {
+
+					// Headers and body in one message, with one flush
+					completed = true;
+					write(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.valueOf(code), content,
+							httpHeaders, EmptyHttpHeaders.INSTANCE), true);
+					return;
+				}
+				buffered = contentLength > 0;
+				write(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.valueOf(code), httpHeaders),
+						false);
+			}
+
+			// Flush at the end (or when the outbound buffer is full)
+			write(new DefaultHttpContent(content), !buffered || !channel.isWritable());
 		}
 	}
 
+	/**
+	 * Sends a region of a local file without copying it through the heap. It
+	 * uses a FileRegion (sendfile) on cleartext HTTP/1 connections and a
+	 * ChunkedNioFile on TLS connections. If the Content-Length header is
+	 * missing, it is set to the length of the region.
+	 * 
+	 * @param file
+	 *            the local file
+	 * @param offset
+	 *            the position of the first byte
+	 * @param length
+	 *            number of bytes to send
+	 * 
+	 * @return true if the file is sent, false if the channel does not support
+	 *         zero-copy transfer (eg. HTTP/2 streams)
+	 * 
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public boolean sendFile(File file, long offset, long length) throws IOException {
+		if (http2 || completed || length < 1) {
+			return false;
+		}
+		boolean ssl = ctx.pipeline().get(SslHandler.class) != null;
+		if (ssl && ctx.pipeline().get(ChunkedWriteHandler.class) == null) {
+			return false;
+		}
+		if (!channel.isOpen()) {
+			throw new IOException("Socket closed!");
+		}
+		Object content;
+		if (ssl) {
+			content = new ChunkedNioFile(FileChannel.open(file.toPath(), StandardOpenOption.READ), offset, length,
+					FILE_CHUNK_SIZE);
+		} else {
+			content = new DefaultFileRegion(file, offset, length);
+		}
+		if (first.compareAndSet(true, false)) {
+			if (getHeader(CONTENT_LENGTH) == null) {
+				setHeader(CONTENT_LENGTH, Long.toString(length));
+			}
+			HttpHeaders httpHeaders = createHeaders(getContentLength(), true);
+			write(new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.valueOf(code), httpHeaders),
+					false);
+		}
+		write(content, true);
+		return true;
+	}
+
+	/**
+	 * Returns true if the end() method of this response has been invoked.
+	 * 
+	 * @return true if the response is ended
+	 */
+	public boolean isEnded() {
+		return !last.get();
+	}
+
 	/**
 	 * Completes the asynchronous operation that was started on the request.
 	 * 
@@ -159,7 +329,30 @@ public class NettyWebResponse implements WebResponse, HttpConstants {
 	 */
 	@Override
 	public boolean end() {
-		sendHeaders();
+		if (!last.compareAndSet(true, false)) {
+			return false;
+		}
+		if (first.compareAndSet(true, false)) {
+
+			// Response without body
+			HttpHeaders httpHeaders = createHeaders(getContentLength(), false);
+			write(new DefaultFullHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.valueOf(code),
+					Unpooled.EMPTY_BUFFER, httpHeaders, EmptyHttpHeaders.INSTANCE), true);
+		} else if (!completed) {
+			write(LastHttpContent.EMPTY_LAST_CONTENT, true);
+		}
+		if (queue == null) {
+			if (close) {
+				closeAfter(lastWrite);
+			}
+		} else {
+			finish();
+		}
+		if (req != null) {
+
+			// Drop the unread body (the connection can read the next request)
+			req.discard();
+		}
 		if (req != null && req.parser != null) {
 			try {
 				req.parser.close();
@@ -168,42 +361,187 @@ public class NettyWebResponse implements WebResponse, HttpConstants {
 			req.parser = null;
 			return true;
 		}
-		try {
-			boolean close = headers.get(CONTENT_LENGTH) == null;
-			if (!close) {
-				String connection = req.getHeader(CONNECTION);
-				close = connection != null && CLOSE.equalsIgnoreCase(connection);
+		return false;
+	}
+
+	// --- HEADER PROCESSING ---
+
+	protected HttpHeaders createHeaders(long contentLength, boolean hasBody) {
+		HttpHeaders httpHeaders = new DefaultHttpHeaders(false);
+		if (headers != null) {
+			for (Map.Entry<String, String> entry : headers.entrySet()) {
+				httpHeaders.set(toAsciiString(entry.getKey()), toAsciiString(entry.getValue()));
 			}
-			if (close) {
-				ctx.flush();
-				ctx.writeAndFlush(Unpooled.EMPTY_BUFFER).addListener(ChannelFutureListener.CLOSE);
+		}
+		if (http2) {
+
+			// HTTP/2 stream (the connection remains open)
+			return httpHeaders;
+		}
+		boolean http10 = req != null && "HTTP/1.0".equals(req.getProtocol());
+		String connection = req == null ? null : req.getHeader(CONNECTION);
+		if (connection == null) {
+			close = http10;
+		} else {
+			close = CLOSE.equalsIgnoreCase(connection) || (http10 && !KEEP_ALIVE.equalsIgnoreCase(connection));
+		}
+		if (!close && contentLength < 0 && headers != null && headers.get(TRANSFER_ENCODING) != null) {
+
+			// Custom Transfer-Encoding
+			contentLength = 0;
+		}
+		if (!close && contentLength < 0) {
+			if (hasBody) {
+				if (http10) {
+
+					// HTTP/1.0 client: the end of the body is marked by closing
+					close = true;
+				} else {
+
+					// Body of unknown length -> chunked transfer encoding
+					httpHeaders.set(toAsciiString(TRANSFER_ENCODING), toAsciiString(CHUNKED));
+				}
+			} else if (code >= 200 && code != 204 && code != 304 && !HEAD.equals(req == null ? null : req.getMethod())) {
+
+				// Empty body
+				httpHeaders.set(toAsciiString(CONTENT_LENGTH), "0");
 			}
-		} catch (Exception ignored) {
 		}
-		return false;
+		if (close) {
+			httpHeaders.set(toAsciiString(CONNECTION), toAsciiString(CLOSE));
+		} else if (http10) {
+			httpHeaders.set(toAsciiString(CONNECTION), toAsciiString(KEEP_ALIVE));
+		}
+		return httpHeaders;
 	}
 
-	protected void sendHeaders() {
-		if (first.compareAndSet(true, false)) {
-			StringBuilder header = new StringBuilder(512);
-			if (code == 200) {
-				header.append("HTTP/1.1 200 Ok\r\n");
-			} else {
-				header.append("HTTP/1.1 ");
-				header.append(HttpResponseStatus.valueOf(code));
-				header.append("\r\n");
+	protected static CharSequence toAsciiString(String value) {
+		if (value == null) {
+			return null;
+		}
+		AsciiString asciiString = asciiStrings.get(value);
+		return asciiString == null ? value : asciiString;
+	}
+
+	protected long getContentLength() {
+		if (headers != null) {
+			String value = headers.get(CONTENT_LENGTH);
+			if (value != null) {
+				try {
+					return Long.parseLong(value.trim());
+				} catch (NumberFormatException ignored) {
+				}
+			}
+		}
+		return -1;
+	}
+
+	// --- OUTBOUND FLOW CONTROL ---
+
+	/**
+	 * Blocks the producer (eg. the thread of a PacketStream) while the
+	 * outbound buffer of the channel is above the high water mark.
+	 * 
+	 * @throws IOException
+	 *             if the channel is closed
+	 */
+	protected void waitForWritability() throws IOException {
+		if (channel.isWritable() || channel.eventLoop().inEventLoop()) {
+			return;
+		}
+		if (queue != null) {
+			synchronized (queue) {
+				if (queue.peekFirst() != this) {
+
+					// Messages are stored in the "pending" list
+					return;
+				}
 			}
-			if (headers != null) {
-				for (Map.Entry<String, String> entry : headers.entrySet()) {
-					header.append(entry.getKey());
-					header.append(": ");
-					header.append(entry.getValue());
-					header.append("\r\n");
+		}
+
+		// The MoleculerHandler notifies the waiting threads
+		Object lock = ctx.handler();
+		ctx.flush();
+		synchronized (lock) {
+			while (!channel.isWritable()) {
+				if (!channel.isActive()) {
+					throw new IOException("Socket closed!");
+				}
+				try {
+					lock.wait(1000);
+				} catch (InterruptedException interrupt) {
+					Thread.currentThread().interrupt();
+					throw new InterruptedIOException();
+				}
+			}
+		}
+	}
+
+	// --- IN-ORDER WRITING ---
+
+	protected ChannelFuture write(Object msg, boolean flush) {
+		if (queue == null) {
+			return lastWrite = flush ? ctx.writeAndFlush(msg) : ctx.write(msg);
+		}
+		synchronized (queue) {
+			if (queue.peekFirst() != this) {
+
+				// Previous response is in progress
+				if (pending == null) {
+					pending = new LinkedList<>();
 				}
+				pending.addLast(msg);
+				return null;
 			}
-			header.append("\r\n");
-			ctx.write(Unpooled.wrappedBuffer(header.toString().getBytes(StandardCharsets.UTF_8)));
-			ctx.flush();
+			return lastWrite = flush ? ctx.writeAndFlush(msg) : ctx.write(msg);
+		}
+	}
+
+	protected void finish() {
+		synchronized (queue) {
+			if (queue.peekFirst() != this) {
+
+				// Wait for the previous responses
+				ended = true;
+				return;
+			}
+			if (close) {
+
+				// Drop the pipelined requests
+				queue.clear();
+				closeAfter(lastWrite);
+				return;
+			}
+			queue.removeFirst();
+
+			// Write the waiting responses
+			NettyWebResponse next;
+			while ((next = queue.peekFirst()) != null) {
+				if (next.pending != null) {
+					Object msg;
+					while ((msg = next.pending.pollFirst()) != null) {
+						next.lastWrite = next.pending.isEmpty() ? ctx.writeAndFlush(msg) : ctx.write(msg);
+					}
+					next.pending = null;
+				}
+				if (!next.ended) {
+					return;
+				}
+				if (next.close) {
+					queue.clear();
+					closeAfter(next.lastWrite);
+					return;
+				}
+				queue.removeFirst();
+			}
+		}
+	}
+
+	protected void closeAfter(ChannelFuture future) {
+		if (future == null) {
+			ctx.close();
+		} else {
+			future.addListener(ChannelFutureListener.CLOSE);
 		}
 	}
 
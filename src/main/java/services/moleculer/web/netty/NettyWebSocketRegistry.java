@@ -26,18 +26,34 @@
 package services.moleculer.web.netty;
 
 import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import io.datatree.Promise;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufAllocator;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
 import io.netty.channel.ChannelHandlerContext;
 import io.netty.handler.codec.http.HttpHeaders;
 import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
 import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.util.Attribute;
+import io.netty.util.AttributeKey;
+import io.netty.util.concurrent.EventExecutor;
 import services.moleculer.ServiceBroker;
 import services.moleculer.web.WebSocketRegistry;
 import services.moleculer.web.common.Endpoint;
+import services.moleculer.web.common.OutboundQueue;
 
 public class NettyWebSocketRegistry extends WebSocketRegistry {
 
@@ -45,6 +61,11 @@ public class NettyWebSocketRegistry extends WebSocketRegistry {
 
 	private static final Logger logger = LoggerFactory.getLogger(NettyWebSocketRegistry.class);
 
+	// --- OUTBOUND QUEUE OF THE CHANNEL ---
+
+	protected static final AttributeKey<OutboundQueue<WebSocketFrame>> QUEUE = AttributeKey
+			.valueOf("moleculer.websocket.queue");
+
 	// --- CONSTRUCTOR ---
 
 	public NettyWebSocketRegistry(ServiceBroker broker, long cleanupSeconds) {
@@ -64,7 +85,12 @@ public class NettyWebSocketRegistry extends WebSocketRegistry {
 
 			@Override
 			public final void send(String message) {
-				ctx.writeAndFlush(new TextWebSocketFrame(message));
+				write(ctx, new TextWebSocketFrame(message));
+			}
+
+			@Override
+			public final void send(ByteBuffer message) {
+				write(ctx, new BinaryWebSocketFrame(Unpooled.wrappedBuffer(message)));
 			}
 
 			@Override
@@ -94,6 +120,175 @@ public class NettyWebSocketRegistry extends WebSocketRegistry {
 		};
 	}
 
+	// --- BROADCAST ---
+
+	@Override
+	protected void send(Endpoint[] endpoints, String message) {
+
+		// Group the channels by event loops
+		HashMap<EventExecutor, ArrayList<ChannelHandlerContext>> batches = new HashMap<>();
+		for (Endpoint endpoint : endpoints) {
+			Object internal = endpoint.getInternal();
+			if (internal instanceof ChannelHandlerContext) {
+				ChannelHandlerContext ctx = (ChannelHandlerContext) internal;
+				batches.computeIfAbsent(ctx.executor(), executor -> new ArrayList<>()).add(ctx);
+			} else {
+				sendTo(endpoint, message);
+			}
+		}
+		if (batches.isEmpty()) {
+			return;
+		}
+
+		// Encode the message once (the frames share the same buffer)
+		send(batches, ByteBufUtil.writeUtf8(ByteBufAllocator.DEFAULT, message), false);
+	}
+
+	@Override
+	protected void send(Endpoint[] endpoints, ByteBuffer message) {
+
+		// Group the channels by event loops
+		HashMap<EventExecutor, ArrayList<ChannelHandlerContext>> batches = new HashMap<>();
+		for (Endpoint endpoint : endpoints) {
+			Object internal = endpoint.getInternal();
+			if (internal instanceof ChannelHandlerContext) {
+				ChannelHandlerContext ctx = (ChannelHandlerContext) internal;
+				batches.computeIfAbsent(ctx.executor(), executor -> new ArrayList<>()).add(ctx);
+			} else {
+				sendTo(endpoint, message);
+			}
+		}
+		if (batches.isEmpty()) {
+			return;
+		}
+
+		// Wrap the bytes without copying (the frames share the same buffer)
+		send(batches, Unpooled.wrappedBuffer(message), true);
+	}
+
+	/**
+	 * Writes the payload into the channels, with one task per event loop.
+	 * Releases the payload.
+	 */
+	protected void send(HashMap<EventExecutor, ArrayList<ChannelHandlerContext>> batches, ByteBuf payload,
+			boolean binary) {
+		try {
+			for (Map.Entry<EventExecutor, ArrayList<ChannelHandlerContext>> batch : batches.entrySet()) {
+				EventExecutor executor = batch.getKey();
+				ArrayList<ChannelHandlerContext> contexts = batch.getValue();
+
+				// Each frame releases one reference
+				payload.retain(contexts.size());
+				Runnable task = () -> {
+					for (ChannelHandlerContext ctx : contexts) {
+						ByteBuf content = payload.duplicate();
+						writeInEventLoop(ctx, binary ? new BinaryWebSocketFrame(content) : new TextWebSocketFrame(content));
+					}
+				};
+
+				// One task per event loop
+				if (executor.inEventLoop()) {
+					task.run();
+				} else {
+					try {
+						executor.execute(task);
+					} catch (RejectedExecutionException shutdown) {
+						payload.release(contexts.size());
+					}
+				}
+			}
+		} finally {
+			payload.release();
+		}
+	}
+
+	// --- WRITE OR QUEUE ---
+
+	/**
+	 * Writes a frame, or queues it if the channel is not writable (the client
+	 * does not read). Can be called from any thread.
+	 * 
+	 * @param ctx
+	 *            channel context
+	 * @param frame
+	 *            frame to send
+	 */
+	public void write(ChannelHandlerContext ctx, WebSocketFrame frame) {
+		EventExecutor executor = ctx.executor();
+		if (executor.inEventLoop()) {
+			writeInEventLoop(ctx, frame);
+			return;
+		}
+		try {
+			executor.execute(() -> {
+				writeInEventLoop(ctx, frame);
+			});
+		} catch (RejectedExecutionException shutdown) {
+			frame.release();
+		}
+	}
+
+	protected void writeInEventLoop(ChannelHandlerContext ctx, WebSocketFrame frame) {
+		Channel channel = ctx.channel();
+		if (!channel.isActive()) {
+			frame.release();
+			return;
+		}
+		OutboundQueue<WebSocketFrame> queue = channel.attr(QUEUE).get();
+		if ((queue == null || queue.isEmpty()) && channel.isWritable()) {
+			ctx.writeAndFlush(frame);
+			return;
+		}
+		if (queue == null) {
+			queue = getQueue(ctx);
+		}
+		if (!queue.add(frame)) {
+			logger.info("WebSocket connection closed due to a full outbound queue: " + channel);
+			ctx.close();
+		}
+	}
+
+	protected OutboundQueue<WebSocketFrame> getQueue(ChannelHandlerContext ctx) {
+		Channel channel = ctx.channel();
+		Attribute<OutboundQueue<WebSocketFrame>> attribute = channel.attr(QUEUE);
+		OutboundQueue<WebSocketFrame> queue = attribute.get();
+		if (queue == null) {
+			queue = createOutboundQueue(frame -> frame.content().readableBytes(), WebSocketFrame::release);
+			attribute.set(queue);
+
+			// Release the queued frames of the closed channel
+			OutboundQueue<WebSocketFrame> closed = queue;
+			channel.closeFuture().addListener(future -> {
+				closed.clear();
+			});
+		}
+		return queue;
+	}
+
+	/**
+	 * Sends the queued frames when the channel becomes writable (must be
+	 * invoked by the "channelWritabilityChanged" method of the handler).
+	 * 
+	 * @param ctx
+	 *            channel context
+	 */
+	public void writabilityChanged(ChannelHandlerContext ctx) {
+		Channel channel = ctx.channel();
+		OutboundQueue<WebSocketFrame> queue = channel.attr(QUEUE).get();
+		if (queue == null) {
+			return;
+		}
+		boolean written = false;
+		WebSocketFrame frame;
+		while (channel.isWritable() && (frame = queue.poll()) != null) {
+			ctx.write(frame);
+			written = true;
+		}
+		if (written) {
+			ctx.flush();
+		}
+	}
+
 	// --- CHECK ACCESS ---
 
 	public Promise isRefused(ChannelHandlerContext ctx, HttpRequest req, HttpHeaders headers, ServiceBroker broker,
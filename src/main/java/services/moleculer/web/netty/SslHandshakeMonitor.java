@@ -0,0 +1,153 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2018 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web.netty;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.net.ssl.SSLSession;
+
+import io.netty.handler.ssl.SslHandler;
+
+/**
+ * Collects statistics about the TLS handshakes (number of full and resumed
+ * handshakes, handshake latency). A handshake is counted as resumed when the
+ * negotiated session (restored from the session cache or from a session
+ * ticket) is older than the handshake.
+ */
+public class SslHandshakeMonitor {
+
+	// --- STATISTICS ---
+
+	protected final LongAdder handshakes = new LongAdder();
+	protected final LongAdder resumed = new LongAdder();
+	protected final LongAdder failed = new LongAdder();
+	protected final LongAdder totalLatency = new LongAdder();
+	protected final AtomicLong maxLatency = new AtomicLong();
+
+	// --- WATCH HANDSHAKE ---
+
+	public void watch(SslHandler handler) {
+		long start = System.nanoTime();
+		long timestamp = System.currentTimeMillis();
+		handler.handshakeFuture().addListener(future -> {
+			if (future.isSuccess()) {
+				SSLSession session = handler.engine().getSession();
+				record(System.nanoTime() - start, session != null && session.getCreationTime() < timestamp);
+			} else {
+				failed.increment();
+			}
+		});
+	}
+
+	protected void record(long latency, boolean resumedSession) {
+		handshakes.increment();
+		if (resumedSession) {
+			resumed.increment();
+		}
+		totalLatency.add(latency);
+		long max = maxLatency.get();
+		while (latency > max && !maxLatency.compareAndSet(max, latency)) {
+			max = maxLatency.get();
+		}
+	}
+
+	public void reset() {
+		handshakes.reset();
+		resumed.reset();
+		failed.reset();
+		totalLatency.reset();
+		maxLatency.set(0);
+	}
+
+	// --- GETTERS ---
+
+	/**
+	 * Returns the number of the successful handshakes.
+	 * 
+	 * @return number of handshakes
+	 */
+	public long getHandshakes() {
+		return handshakes.sum();
+	}
+
+	/**
+	 * Returns the number of the resumed (abbreviated) handshakes.
+	 * 
+	 * @return number of resumed handshakes
+	 */
+	public long getResumedHandshakes() {
+		return resumed.sum();
+	}
+
+	/**
+	 * Returns the number of the failed or aborted handshakes.
+	 * 
+	 * @return number of failed handshakes
+	 */
+	public long getFailedHandshakes() {
+		return failed.sum();
+	}
+
+	/**
+	 * Returns the ratio of the resumed handshakes (0...1).
+	 * 
+	 * @return resumption ratio
+	 */
+	public double getResumptionRatio() {
+		long count = handshakes.sum();
+		return count == 0 ? 0 : (double) resumed.sum() / count;
+	}
+
+	/**
+	 * Returns the average latency of the successful handshakes, in
+	 * microseconds.
+	 * 
+	 * @return average latency
+	 */
+	public long getAverageLatency() {
+		long count = handshakes.sum();
+		return count == 0 ? 0 : TimeUnit.NANOSECONDS.toMicros(totalLatency.sum() / count);
+	}
+
+	/**
+	 * Returns the longest handshake latency, in microseconds.
+	 * 
+	 * @return max latency
+	 */
+	public long getMaxLatency() {
+		return TimeUnit.NANOSECONDS.toMicros(maxLatency.get());
+	}
+
+	@Override
+	public String toString() {
+		return "handshakes: " + getHandshakes() + ", resumed: " + getResumedHandshakes() + " ("
+				+ Math.round(getResumptionRatio() * 100) + "%), failed: " + getFailedHandshakes()
+				+ ", average latency: " + getAverageLatency() + " us, max latency: " + getMaxLatency() + " us";
+	}
+
+}
@@ -0,0 +1,135 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2018 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web.netty;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionData;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilter;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketExtensionFilterProvider;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtension;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandshaker;
+import io.netty.handler.codec.http.websocketx.extensions.compression.PerMessageDeflateServerExtensionHandshaker;
+
+/**
+ * Negotiates the "permessage-deflate" WebSocket extension (RFC 7692). The
+ * server's window size and context takeover are set by the server (they are
+ * added to the client's offer), small frames are sent uncompressed.
+ */
+public class WebSocketDeflateHandshaker implements WebSocketServerExtensionHandshaker {
+
+	// --- PARAMETER NAMES ---
+
+	protected static final String PERMESSAGE_DEFLATE = "permessage-deflate";
+	protected static final String SERVER_MAX_WINDOW = "server_max_window_bits";
+	protected static final String SERVER_NO_CONTEXT = "server_no_context_takeover";
+
+	// --- PROPERTIES ---
+
+	/**
+	 * Window size of the server's compressor (8...15 bits).
+	 */
+	protected final int windowBits;
+
+	/**
+	 * Reset the compressor after each message (less memory per socket, lower
+	 * compression ratio).
+	 */
+	protected final boolean noContextTakeover;
+
+	/**
+	 * The original Netty handshaker.
+	 */
+	protected final PerMessageDeflateServerExtensionHandshaker handshaker;
+
+	// --- CONSTRUCTOR ---
+
+	/**
+	 * Creates a "permessage-deflate" handshaker.
+	 * 
+	 * @param compressionLevel
+	 *            compression level (0...9)
+	 * @param windowBits
+	 *            window size of the compressors (8...15 bits); smaller server
+	 *            windows than 15 bits require JZlib on the classpath
+	 * @param minFrameSize
+	 *            frames smaller than this size are sent uncompressed
+	 * @param noContextTakeover
+	 *            reset the server's compressor after each message
+	 */
+	public WebSocketDeflateHandshaker(int compressionLevel, int windowBits, int minFrameSize,
+			boolean noContextTakeover) {
+		windowBits = Math.max(PerMessageDeflateServerExtensionHandshaker.MIN_WINDOW_SIZE,
+				Math.min(PerMessageDeflateServerExtensionHandshaker.MAX_WINDOW_SIZE, windowBits));
+		this.windowBits = windowBits;
+		this.noContextTakeover = noContextTakeover;
+		WebSocketExtensionFilter encoderFilter = frame -> frame.content().readableBytes() < minFrameSize;
+		handshaker = new PerMessageDeflateServerExtensionHandshaker(compressionLevel, true, windowBits, true, false,
+				new WebSocketExtensionFilterProvider() {
+
+					@Override
+					public WebSocketExtensionFilter encoderFilter() {
+						return encoderFilter;
+					}
+
+					@Override
+					public WebSocketExtensionFilter decoderFilter() {
+						return WebSocketExtensionFilter.NEVER_SKIP;
+					}
+
+				});
+	}
+
+	// --- NEGOTIATION ---
+
+	@Override
+	public WebSocketServerExtension handshakeExtension(WebSocketExtensionData extensionData) {
+		if (!PERMESSAGE_DEFLATE.equals(extensionData.name())) {
+			return null;
+		}
+		Map<String, String> parameters = new HashMap<>(extensionData.parameters());
+
+		// Limit the server's window (the server may set it without request)
+		if (windowBits < PerMessageDeflateServerExtensionHandshaker.MAX_WINDOW_SIZE) {
+			String requested = parameters.get(SERVER_MAX_WINDOW);
+			int bits = windowBits;
+			if (requested != null) {
+				try {
+					bits = Math.min(bits, Integer.parseInt(requested));
+				} catch (NumberFormatException invalid) {
+					return null;
+				}
+			}
+			parameters.put(SERVER_MAX_WINDOW, Integer.toString(bits));
+		}
+		if (noContextTakeover) {
+			parameters.put(SERVER_NO_CONTEXT, null);
+		}
+		return handshaker.handshakeExtension(new WebSocketExtensionData(PERMESSAGE_DEFLATE, parameters));
+	}
+
+}
@@ -25,14 +25,15 @@
  */
 package services.moleculer.web.router;
 
+import static services.moleculer.web.common.GatewayUtils.parsePathParams;
 import static services.moleculer.web.common.GatewayUtils.sendError;
 
 import java.io.ByteArrayOutputStream;
 import java.io.UnsupportedEncodingException;
-import java.net.URLDecoder;
 import java.nio.charset.StandardCharsets;
 import java.util.Map;
 import java.util.StringTokenizer;
+import java.util.concurrent.CompletionStage;
 import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -41,6 +42,7 @@ import java.util.concurrent.atomic.AtomicInteger;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
+import io.datatree.Promise;
 import io.datatree.Tree;
 import io.datatree.dom.TreeWriter;
 import io.datatree.dom.TreeWriterRegistry;
@@ -49,7 +51,11 @@ import services.moleculer.context.CallOptions;
 import services.moleculer.context.CallOptions.Options;
 import services.moleculer.eventbus.Eventbus;
 import services.moleculer.context.Context;
+import services.moleculer.service.Action;
+import services.moleculer.service.DefaultServiceInvoker;
+import services.moleculer.service.LocalActionEndpoint;
 import services.moleculer.service.ServiceInvoker;
+import services.moleculer.service.ServiceRegistry;
 import services.moleculer.stream.PacketStream;
 import services.moleculer.uid.UidGenerator;
 import services.moleculer.util.CheckedTree;
@@ -57,6 +63,7 @@ import services.moleculer.web.CallProcessor;
 import services.moleculer.web.RequestProcessor;
 import services.moleculer.web.WebRequest;
 import services.moleculer.web.WebResponse;
+import services.moleculer.web.common.GatewayUtils;
 import services.moleculer.web.common.HttpConstants;
 import services.moleculer.web.template.AbstractTemplateEngine;
 import services.moleculer.web.template.languages.MessageLoader;
@@ -93,6 +100,12 @@ public class ActionInvoker implements RequestProcessor, HttpConstants {
 	protected final MessageLoader messageLoader;
 	protected final Eventbus eventbus;
 	protected final UidGenerator uidGenerator;
+	protected final ServiceRegistry serviceRegistry;
+
+	// --- LOCAL ACTION ---
+
+	protected volatile Action localAction;
+	protected volatile long resolvedVersion = -1;
 
 	// --- MESSAGE-FILE CACHE ---
 
@@ -121,6 +134,7 @@ public class ActionInvoker implements RequestProcessor, HttpConstants {
 
 		ServiceBrokerConfig cfg = eventbus.getBroker().getConfig();
 		this.uidGenerator = cfg.getUidGenerator();
+		this.serviceRegistry = cfg.getServiceRegistry();
 		this.nodeID = cfg.getNodeID();
 	}
 
@@ -151,9 +165,17 @@ public class ActionInvoker implements RequestProcessor, HttpConstants {
 		if (indexes.length > 0) {
 
 			// Parameters in URL (eg "/path/:id/:name")
-			String[] tokens = req.getPath().split("/");
-			for (int i = 0; i < indexes.length; i++) {
-				params.put(names[i], tokens[indexes[i]]);
+			String path = req.getPath();
+			Object value = rsp.getProperty(PROPERTY_PATH_PARAMS);
+			if (value instanceof PathOffsets && ((PathOffsets) value).matches(path, indexes.length)) {
+
+				// Offsets are captured by the MappingTree
+				int[] offsets = ((PathOffsets) value).getOffsets();
+				for (int i = 0; i < indexes.length; i++) {
+					params.put(names[i], path.substring(offsets[i * 2], offsets[i * 2 + 1]));
+				}
+			} else {
+				parsePathParams(params, path, indexes, names);
 			}
 		}
 
@@ -186,12 +208,7 @@ public class ActionInvoker implements RequestProcessor, HttpConstants {
 				}
 				
 				// Invoke service
-				serviceInvoker.call(new Context(serviceInvoker, eventbus, uidGenerator, uidGenerator.nextUID(),
-						actionName, params, 1, null, null, req.getBody(), opts, nodeID)).then(out -> {
-							sendResponse(req, rsp, out);
-						}).catchError(cause -> {
-							sendError(rsp, cause);
-						});
+				call(req, rsp, params, req.getBody());
 			});
 			return;
 
@@ -214,18 +231,19 @@ public class ActionInvoker implements RequestProcessor, HttpConstants {
 				}
 
 				// Invoke service
-				serviceInvoker.call(new Context(serviceInvoker, eventbus, uidGenerator, uidGenerator.nextUID(),
-						actionName, params, 1, null, null, null, opts, nodeID)).then(out -> {
-							sendResponse(req, rsp, out);
-						}).catchError(cause -> {
-							logger.error("Unable to invoke action!", cause);
-							sendError(rsp, cause);
-						});
+				call(req, rsp, params, null);
 			});
 			return;
 		}
 
-		// POST with JSON / QueryString body
+		// POST with aggregated JSON / QueryString body
+		byte[] aggregated = req.getBodyBytes();
+		if (aggregated != null) {
+			invoke(req, rsp, parsePostBody(params, aggregated, req.getContentType()));
+			return;
+		}
+
+		// POST with streamed JSON / QueryString body
 		byte[] body = contentLength > 0 ? new byte[contentLength] : null;
 		ByteArrayOutputStream buffer = contentLength > 0 ? null : new ByteArrayOutputStream(1024);
 		AtomicInteger pos = new AtomicInteger();
@@ -246,36 +264,127 @@ public class ActionInvoker implements RequestProcessor, HttpConstants {
 			if (close && !faulty.get()) {
 
 				// Parse and merge body
-				Tree merged = parsePostBody(params, body == null ? buffer.toByteArray() : body, req.getContentType());
+				invoke(req, rsp, parsePostBody(params, body == null ? buffer.toByteArray() : body, req.getContentType()));
+			}
+		});
+	}
 
-				// Forward to Thread Pool
-				executor.execute(() -> {
+	protected void invoke(WebRequest req, WebResponse rsp, Tree merged) {
 
-					// Clear "meta" block to avoid a vulnerability
-					Tree meta = merged.getMeta(false);
-					if (meta != null) {
-						meta.clear();
-					}
+		// Forward to Thread Pool
+		executor.execute(() -> {
 
-					// Custom "before call" processor
-					// (eg. copy HTTP headers into the "params" variable)
-					if (beforeCall != null) {
-						beforeCall.onCall(route, req, rsp, merged);
-					}
+			// Clear "meta" block to avoid a vulnerability
+			Tree meta = merged.getMeta(false);
+			if (meta != null) {
+				meta.clear();
+			}
+
+			// Custom "before call" processor
+			// (eg. copy HTTP headers into the "params" variable)
+			if (beforeCall != null) {
+				beforeCall.onCall(route, req, rsp, merged);
+			}
 
-					// Invoke service
-					serviceInvoker.call(new Context(serviceInvoker, eventbus, uidGenerator, uidGenerator.nextUID(),
-							actionName, merged, 1, null, null, null, opts, nodeID)).then(out -> {
-								sendResponse(req, rsp, out);
-							}).catchError(err -> {
-								logger.error("Unable to invoke action!", err);
-								sendError(rsp, err);
-							});
+			// Invoke service
+			call(req, rsp, merged, null);
+		});
+	}
+
+	// --- INVOKE ACTION ---
+
+	protected void call(WebRequest req, WebResponse rsp, Tree params, PacketStream stream) {
+
+		// Local action (direct call, without the ServiceInvoker)
+		Action action = getLocalAction();
+		if (action != null) {
+			Object result;
+			try {
+				result = action.handler(createContext(params, stream));
+			} catch (Throwable cause) {
+				logger.error("Unable to invoke action!", cause);
+				sendError(rsp, cause);
+				return;
+			}
+			if (result instanceof Promise || result instanceof CompletionStage) {
+				Promise.resolve(result).then(out -> {
+					sendResponse(req, rsp, out);
+				}).catchError(cause -> {
+					logger.error("Unable to invoke action!", cause);
+					sendError(rsp, cause);
 				});
+				return;
 			}
+			try {
+				sendResponse(req, rsp, result == null || result instanceof Tree ? (Tree) result : new CheckedTree(result));
+			} catch (Throwable cause) {
+				logger.error("Unable to send response!", cause);
+				sendError(rsp, cause);
+			}
+			return;
+		}
+
+		// Local or remote action (with timeout and retry handling)
+		serviceInvoker.call(createContext(params, stream)).then(out -> {
+			sendResponse(req, rsp, out);
+		}).catchError(cause -> {
+			logger.error("Unable to invoke action!", cause);
+			sendError(rsp, cause);
 		});
 	}
 
+	/**
+	 * Creates the Context of the call, when the call is dispatched.
+	 * 
+	 * @param params
+	 *            parameters of the action
+	 * @param stream
+	 *            streamed request body (or null)
+	 * 
+	 * @return new Context
+	 */
+	protected Context createContext(Tree params, PacketStream stream) {
+		return new Context(serviceInvoker, eventbus, uidGenerator, uidGenerator.nextUID(), actionName, params, 1, null,
+				null, stream, opts, nodeID);
+	}
+
+	/**
+	 * Returns the local endpoint of the action, or null if the action must be
+	 * called via the ServiceInvoker (direct calls are disabled, remote action,
+	 * custom ServiceInvoker, or timeout, retry count or target node in the
+	 * CallOptions). The endpoint is resolved again after each
+	 * "$services.changed" event of the ApiGateway. The endpoint of the
+	 * ServiceRegistry contains the Moleculer middlewares of the action.
+	 * 
+	 * @return local endpoint or null
+	 */
+	protected Action getLocalAction() {
+		if (route == null || !route.isDirectLocalCalls()) {
+			return null;
+		}
+		long version = route.getServicesVersion();
+		if (resolvedVersion != version) {
+			Action action = null;
+			if (serviceRegistry != null && serviceInvoker != null
+					&& serviceInvoker.getClass() == DefaultServiceInvoker.class
+					&& (opts == null || (opts.timeout < 1 && opts.retryCount < 1
+							&& (opts.nodeID == null || opts.nodeID.equals(nodeID))))) {
+				try {
+					Action endpoint = serviceRegistry.getAction(actionName, nodeID);
+					if (endpoint instanceof LocalActionEndpoint) {
+						action = endpoint;
+					}
+				} catch (Exception notFound) {
+
+					// Not a local action
+				}
+			}
+			localAction = action;
+			resolvedVersion = version;
+		}
+		return localAction;
+	}
+
 	// --- PARSE BODY OF THE GET / POST REQUEST ---
 
 	protected Tree parsePostBody(Tree params, byte[] bytes, String contentType) throws Exception {
@@ -325,15 +434,7 @@ public class ActionInvoker implements RequestProcessor, HttpConstants {
 	// --- PARSE HTTP QUERY STRING ---
 
 	protected void parseQueryString(Tree params, String query) throws UnsupportedEncodingException {
-		String[] pairs = query.split("&");
-		int i;
-		for (String pair : pairs) {
-			i = pair.indexOf("=");
-			if (i > -1) {
-				params.put(URLDecoder.decode(pair.substring(0, i), "UTF-8").trim(),
-						URLDecoder.decode(pair.substring(i + 1), "UTF-8").trim());
-			}
-		}
+		GatewayUtils.parseQueryString(params, query);
 	}
 
 	// --- SEND JSON/STREAMED RESPONSE ---
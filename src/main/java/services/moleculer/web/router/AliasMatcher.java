@@ -0,0 +1,193 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2018 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web.router;
+
+import java.util.regex.Pattern;
+
+/**
+ * Precompiled, immutable matcher of an Alias. The pattern is parsed once
+ * (when the alias is added to the Route), and the Mapping (with the
+ * ActionInvoker and the middleware chain) is created only when the alias
+ * first matches a request.
+ */
+public class AliasMatcher {
+
+	// --- PROPERTIES ---
+
+	protected final Route route;
+	protected final Alias alias;
+	protected final String httpMethod;
+	protected final String pathPattern;
+	protected final boolean isStatic;
+	protected final String pathPrefix;
+	protected final int separators;
+	protected final int variables;
+
+	// --- REGEX PATTERN ---
+
+	protected final Pattern pattern;
+
+	// --- LAZY MAPPING ---
+
+	protected volatile Mapping mapping;
+
+	// --- CONSTRUCTOR ---
+
+	public AliasMatcher(Route route, Alias alias) {
+		this.route = route;
+		this.alias = alias;
+		this.httpMethod = Alias.ALL.equals(alias.httpMethod) ? null : alias.httpMethod;
+		this.pathPattern = route.getPath() + alias.pathPattern;
+
+		// Parse "path pattern" (same rules as in the Mapping)
+		int starPos = pathPattern.indexOf('*');
+		isStatic = pathPattern.indexOf(':') == -1 && starPos == -1;
+		int s = 0;
+		int v = 0;
+		Pattern regex = null;
+		if (isStatic) {
+			pathPrefix = pathPattern;
+		} else if (starPos > -1) {
+			pathPrefix = pathPattern.substring(0, starPos);
+		} else {
+			String[] tokens = pathPattern.split("/");
+			int endIndex = 0;
+			boolean useRegex = false;
+			for (String token : tokens) {
+				token = token.trim();
+				if (token.startsWith(":")) {
+					v++;
+					continue;
+				} else if (v > 0) {
+					useRegex = true;
+				}
+				if (v == 0) {
+					endIndex += token.length() + 1;
+				}
+			}
+			if (useRegex) {
+				StringBuilder tmp = new StringBuilder(pathPattern.length() + 32);
+				tmp.append('^');
+				for (int i = 0; i < tokens.length; i++) {
+					String token = tokens[i].trim();
+					if (token.startsWith(":")) {
+						tmp.append("[\\w\\d_]+");
+					} else {
+						tmp.append(token);
+					}
+					if (i < tokens.length - 1) {
+						tmp.append("\\/");
+					}
+				}
+				tmp.append('$');
+				regex = Pattern.compile(tmp.toString());
+			}
+			for (int i = 0; i < pathPattern.length(); i++) {
+				if (pathPattern.charAt(i) == '/') {
+					s++;
+				}
+			}
+			pathPrefix = endIndex <= pathPattern.length() ? pathPattern.substring(0, endIndex) : pathPattern;
+		}
+		separators = s;
+		variables = v;
+		pattern = regex;
+	}
+
+	// --- MATCH TEST ---
+
+	public boolean matches(String httpMethod, String path) {
+		if (this.httpMethod != null && !this.httpMethod.equals(httpMethod)) {
+			return false;
+		}
+		if (isStatic) {
+			return path.equals(pathPrefix);
+		}
+		if (!path.startsWith(pathPrefix)) {
+			return false;
+		}
+		if (separators > 0) {
+			int i = 0;
+			for (int n = 0; n < path.length(); n++) {
+				if (path.charAt(n) == '/') {
+					i++;
+				}
+			}
+			if (i != separators) {
+				return false;
+			}
+		}
+		return pattern == null || pattern.matcher(path).matches();
+	}
+
+	// --- MAPPING ---
+
+	/**
+	 * Returns the Mapping of the alias (creates it at the first call).
+	 * 
+	 * @return Mapping with the middlewares of the Route
+	 */
+	public Mapping getMapping() {
+		Mapping m = mapping;
+		if (m == null) {
+			synchronized (this) {
+				m = mapping;
+				if (m == null) {
+					m = route.createMapping(alias);
+					mapping = m;
+				}
+			}
+		}
+		return m;
+	}
+
+	// --- PROPERTY GETTERS ---
+
+	public Route getRoute() {
+		return route;
+	}
+
+	public Alias getAlias() {
+		return alias;
+	}
+
+	public String getHttpMethod() {
+		return httpMethod;
+	}
+
+	public String getPathPattern() {
+		return pathPattern;
+	}
+
+	public boolean isStatic() {
+		return isStatic;
+	}
+
+	public int getVariables() {
+		return variables;
+	}
+
+}
@@ -0,0 +1,182 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2018 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web.router;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Bounded, concurrent LRU cache of Mappings (key: "METHOD path"). Reads
+ * don't take any lock: a hit only stamps the entry with the current "clock"
+ * value (a volatile field, modified only by the writers). When the cache
+ * exceeds the capacity, one writer removes the least recently used entries
+ * in a batch (1/8 of the capacity), so the eviction cost is amortized.
+ */
+public class MappingCache {
+
+	// --- ENTRIES ---
+
+	protected final ConcurrentHashMap<String, Entry> entries;
+
+	// --- LRU CLOCK ---
+
+	/**
+	 * Incremented by the writers; read by the readers (a lost increment only
+	 * makes two entries equally old).
+	 */
+	protected volatile long clock;
+
+	// --- EVICTION ---
+
+	protected final AtomicBoolean evicting = new AtomicBoolean();
+
+	protected volatile int capacity;
+
+	// --- CONSTRUCTOR ---
+
+	public MappingCache(int capacity) {
+		this.capacity = Math.max(1, capacity);
+		entries = new ConcurrentHashMap<>(Math.min(this.capacity, 1024) * 2);
+	}
+
+	// --- GET / PUT / CLEAR ---
+
+	public Mapping get(String key) {
+		Entry entry = entries.get(key);
+		if (entry == null) {
+			return null;
+		}
+		long now = clock;
+		if (entry.accessed != now) {
+			entry.accessed = now;
+		}
+		return entry.mapping;
+	}
+
+	/**
+	 * Stores a Mapping. If another thread has already stored a Mapping with
+	 * the same key, the previous one remains.
+	 * 
+	 * @param key
+	 *            cache key ("METHOD path")
+	 * @param mapping
+	 *            the new Mapping
+	 * 
+	 * @return the cached Mapping
+	 */
+	public Mapping put(String key, Mapping mapping) {
+		Entry entry = new Entry(mapping, ++clock);
+		Entry prev = entries.putIfAbsent(key, entry);
+		if (prev != null) {
+			return prev.mapping;
+		}
+		if (entries.size() > capacity) {
+			evict();
+		}
+		return mapping;
+	}
+
+	public void clear() {
+		entries.clear();
+	}
+
+	public int size() {
+		return entries.size();
+	}
+
+	// --- EVICTION ---
+
+	protected void evict() {
+		if (!evicting.compareAndSet(false, true)) {
+			return;
+		}
+		try {
+			int target = capacity - capacity / 8;
+			int size = entries.size();
+			if (size <= target) {
+				return;
+			}
+
+			// Find the access time limit of the entries to remove
+			long[] stamps = new long[size];
+			int count = 0;
+			for (Entry entry : entries.values()) {
+				if (count == stamps.length) {
+					break;
+				}
+				stamps[count++] = entry.accessed;
+			}
+			Arrays.sort(stamps, 0, count);
+			int remove = count - target;
+			if (remove < 1) {
+				return;
+			}
+			long limit = stamps[remove - 1];
+
+			// Remove the least recently used entries
+			Iterator<Entry> i = entries.values().iterator();
+			while (remove > 0 && i.hasNext()) {
+				if (i.next().accessed <= limit) {
+					i.remove();
+					remove--;
+				}
+			}
+		} finally {
+			evicting.set(false);
+		}
+	}
+
+	// --- PROPERTY GETTERS AND SETTERS ---
+
+	public int getCapacity() {
+		return capacity;
+	}
+
+	public void setCapacity(int capacity) {
+		this.capacity = Math.max(1, capacity);
+		if (entries.size() > this.capacity) {
+			evict();
+		}
+	}
+
+	// --- CACHE ENTRY ---
+
+	protected static final class Entry {
+
+		private final Mapping mapping;
+
+		private volatile long accessed;
+
+		private Entry(Mapping mapping, long accessed) {
+			this.mapping = mapping;
+			this.accessed = accessed;
+		}
+
+	}
+
+}
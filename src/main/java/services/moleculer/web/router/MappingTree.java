@@ -0,0 +1,287 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2018 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web.router;
+
+import java.util.Arrays;
+import java.util.HashMap;
+
+/**
+ * Compiled aliases of the Routes: one segment trie per HTTP method. The
+ * lookup walks the path once (literal segments first, then the ":param"
+ * segments, then the "*" prefixes), and captures the offsets of the path
+ * parameters without creating Strings. The tree is built once (at start or
+ * when the Routes change) and is read without locking.
+ */
+public class MappingTree {
+
+	// --- TREES BY HTTP METHODS ---
+
+	protected final HashMap<String, Node> roots = new HashMap<>();
+
+	/**
+	 * Tree of the aliases without HTTP method ("ALL").
+	 */
+	protected final Node any = new Node();
+
+	/**
+	 * Max number of path parameters in a pattern.
+	 */
+	protected int maxVariables;
+
+	protected int size;
+
+	// --- BUILD ---
+
+	/**
+	 * Adds a precompiled alias to the tree. If there is an alias with the same
+	 * pattern, the first one remains.
+	 * 
+	 * @param matcher
+	 *            precompiled alias (its Mapping is created at the first match)
+	 */
+	public void add(AliasMatcher matcher) {
+		String httpMethod = matcher.getHttpMethod();
+		String pathPattern = matcher.getPathPattern();
+		Node node;
+		if (httpMethod == null || Alias.ALL.equals(httpMethod)) {
+			node = any;
+		} else {
+			node = roots.computeIfAbsent(httpMethod, key -> new Node());
+		}
+		String pattern = pathPattern.startsWith("/") ? pathPattern.substring(1) : pathPattern;
+		int star = pattern.indexOf('*');
+		String prefix = star > -1 ? pattern.substring(0, star) : pattern;
+		String[] segments = prefix.split("/", -1);
+		int last = star > -1 ? segments.length - 1 : segments.length;
+		int variables = 0;
+		for (int i = 0; i < last; i++) {
+			String segment = segments[i];
+			if (segment.startsWith(":")) {
+				if (node.param == null) {
+					node.param = new Node();
+				}
+				node = node.param;
+				variables++;
+			} else {
+				node = node.literal(segment);
+			}
+		}
+		if (star > -1) {
+
+			// Prefix of the last segment (eg. "/files/img*" or "/files/*")
+			node.addWildcard(segments[last], matcher);
+		} else if (node.matcher == null) {
+			node.matcher = matcher;
+		}
+		maxVariables = Math.max(maxVariables, variables);
+		size++;
+	}
+
+	// --- LOOKUP ---
+
+	/**
+	 * Finds the Mapping of a path.
+	 * 
+	 * @param httpMethod
+	 *            HTTP method of the request
+	 * @param path
+	 *            path of the request (eg. "/api/user/123")
+	 * @param offsets
+	 *            start and end offsets of the path parameters (the array must
+	 *            have "2 * maxVariables" elements, or can be null if
+	 *            "maxVariables" is 0)
+	 * 
+	 * @return Mapping or null
+	 */
+	public Mapping find(String httpMethod, String path, int[] offsets) {
+		if (path.isEmpty() || path.charAt(0) != '/') {
+			return null;
+		}
+		AliasMatcher matcher = null;
+		Node root = roots.get(httpMethod);
+		if (root != null) {
+			matcher = match(root, path, 1, offsets, 0);
+		}
+		if (matcher == null) {
+			matcher = match(any, path, 1, offsets, 0);
+		}
+		return matcher == null ? null : matcher.getMapping();
+	}
+
+	protected AliasMatcher match(Node node, String path, int start, int[] offsets, int variable) {
+
+		// End of the path
+		if (start < 0) {
+			return node.matcher;
+		}
+		int end = path.indexOf('/', start);
+		if (end < 0) {
+			end = path.length();
+		}
+		int next = end < path.length() ? end + 1 : -1;
+
+		// Literal segment
+		Node child = node.find(path, start, end);
+		if (child != null) {
+			AliasMatcher matcher = match(child, path, next, offsets, variable);
+			if (matcher != null) {
+				return matcher;
+			}
+		}
+
+		// Path parameter
+		if (node.param != null) {
+			offsets[variable * 2] = start;
+			offsets[variable * 2 + 1] = end;
+			AliasMatcher matcher = match(node.param, path, next, offsets, variable + 1);
+			if (matcher != null) {
+				return matcher;
+			}
+		}
+
+		// Prefix with "*" (the longest prefix wins)
+		if (node.wildcards != null) {
+			for (int i = 0; i < node.wildcards.length; i++) {
+				if (path.startsWith(node.wildcards[i], start)) {
+					return node.wildcardMatchers[i];
+				}
+			}
+		}
+		return null;
+	}
+
+	// --- PROPERTY GETTERS ---
+
+	public int getMaxVariables() {
+		return maxVariables;
+	}
+
+	public int size() {
+		return size;
+	}
+
+	// --- TREE NODE ---
+
+	protected static final class Node {
+
+		/**
+		 * Sorted literal segments and the child nodes.
+		 */
+		private String[] keys = new String[0];
+		private Node[] children = new Node[0];
+
+		private Node param;
+
+		private AliasMatcher matcher;
+
+		/**
+		 * Prefixes of "*" patterns (longest first).
+		 */
+		private String[] wildcards;
+		private AliasMatcher[] wildcardMatchers;
+
+		private final Node literal(String segment) {
+			int i = Arrays.binarySearch(keys, segment);
+			if (i > -1) {
+				return children[i];
+			}
+			i = -i - 1;
+			Node node = new Node();
+			String[] k = new String[keys.length + 1];
+			Node[] c = new Node[children.length + 1];
+			System.arraycopy(keys, 0, k, 0, i);
+			System.arraycopy(children, 0, c, 0, i);
+			k[i] = segment;
+			c[i] = node;
+			System.arraycopy(keys, i, k, i + 1, keys.length - i);
+			System.arraycopy(children, i, c, i + 1, children.length - i);
+			keys = k;
+			children = c;
+			return node;
+		}
+
+		private final void addWildcard(String prefix, AliasMatcher matcher) {
+			if (wildcards == null) {
+				wildcards = new String[] { prefix };
+				wildcardMatchers = new AliasMatcher[] { matcher };
+				return;
+			}
+			int i = 0;
+			while (i < wildcards.length && wildcards[i].length() >= prefix.length()) {
+				if (wildcards[i].equals(prefix)) {
+					return;
+				}
+				i++;
+			}
+			String[] w = new String[wildcards.length + 1];
+			AliasMatcher[] m = new AliasMatcher[wildcards.length + 1];
+			System.arraycopy(wildcards, 0, w, 0, i);
+			System.arraycopy(wildcardMatchers, 0, m, 0, i);
+			w[i] = prefix;
+			m[i] = matcher;
+			System.arraycopy(wildcards, i, w, i + 1, wildcards.length - i);
+			System.arraycopy(wildcardMatchers, i, m, i + 1, wildcards.length - i);
+			wildcards = w;
+			wildcardMatchers = m;
+		}
+
+		/**
+		 * Binary search of the "path[start...end]" segment (without substring).
+		 */
+		private final Node find(String path, int start, int end) {
+			int low = 0;
+			int high = keys.length - 1;
+			while (low <= high) {
+				int mid = (low + high) >>> 1;
+				int cmp = compare(keys[mid], path, start, end);
+				if (cmp < 0) {
+					low = mid + 1;
+				} else if (cmp > 0) {
+					high = mid - 1;
+				} else {
+					return children[mid];
+				}
+			}
+			return null;
+		}
+
+		private static final int compare(String key, String path, int start, int end) {
+			int len1 = key.length();
+			int len2 = end - start;
+			int lim = Math.min(len1, len2);
+			for (int i = 0; i < lim; i++) {
+				char c1 = key.charAt(i);
+				char c2 = path.charAt(start + i);
+				if (c1 != c2) {
+					return c1 - c2;
+				}
+			}
+			return len1 - len2;
+		}
+
+	}
+
+}
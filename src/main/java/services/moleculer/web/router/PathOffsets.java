@@ -0,0 +1,73 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2018 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web.router;
+
+/**
+ * Start and end offsets of the path parameters, captured by the MappingTree
+ * (stored in the "$pathParams" property of the WebResponse).
+ */
+public class PathOffsets {
+
+	// --- PROPERTIES ---
+
+	protected final String path;
+	protected final int[] offsets;
+
+	// --- CONSTRUCTOR ---
+
+	public PathOffsets(String path, int[] offsets) {
+		this.path = path;
+		this.offsets = offsets;
+	}
+
+	// --- MATCH TEST ---
+
+	/**
+	 * Checks that the offsets belong to the specified path (a middleware may
+	 * rewrite the path of the request).
+	 * 
+	 * @param path
+	 *            current path of the request
+	 * @param variables
+	 *            number of path parameters
+	 * 
+	 * @return true if the offsets are usable
+	 */
+	public boolean matches(String path, int variables) {
+		return offsets != null && offsets.length >= variables * 2 && this.path.equals(path);
+	}
+
+	// --- PROPERTY GETTERS ---
+
+	public String getPath() {
+		return path;
+	}
+
+	public int[] getOffsets() {
+		return offsets;
+	}
+
+}
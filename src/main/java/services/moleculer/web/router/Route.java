@@ -34,6 +34,7 @@ import java.util.LinkedHashSet;
 import java.util.LinkedList;
 import java.util.Set;
 import java.util.concurrent.ExecutorService;
+import java.util.concurrent.atomic.AtomicLong;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -60,6 +61,10 @@ public class Route {
 	protected String[] whiteList;
 	protected Alias[] aliases;
 
+	// --- PRECOMPILED ALIASES ---
+
+	protected volatile AliasMatcher[] matchers = new AliasMatcher[0];
+
 	// --- PARENT BROKER ---
 
 	protected ServiceBroker broker;
@@ -85,6 +90,29 @@ public class Route {
 
 	protected final Set<HttpMiddleware> routeMiddlewares = new LinkedHashSet<>(32);
 
+	// --- LOCAL ACTIONS ---
+
+	/**
+	 * Invoke local actions directly (without the ServiceInvoker). The direct
+	 * call is used only with the DefaultServiceInvoker, and without timeout,
+	 * retry count and target node in the CallOptions of the route. The limits
+	 * configured in the ServiceInvoker itself do not apply to the direct
+	 * calls, therefore it is disabled by default.
+	 */
+	protected boolean directLocalCalls;
+
+	/**
+	 * Version of the service list of the ApiGateway (the ActionInvokers of
+	 * the route resolve their local endpoints again when it changes).
+	 */
+	protected final AtomicLong servicesVersion = new AtomicLong();
+
+	/**
+	 * Global middlewares of the ApiGateway (installed after the route-specific
+	 * middlewares).
+	 */
+	protected Set<HttpMiddleware> globalMiddlewares;
+
 	// --- CONSTRUCTORS ---
 
 	public Route() {
@@ -104,21 +132,12 @@ public class Route {
 		if (this.path != null && !this.path.isEmpty() && !path.startsWith(this.path)) {
 			return null;
 		}
-		String shortPath = path.substring(this.path.length());
-		if (aliases != null && aliases.length > 0) {
-			for (Alias alias : aliases) {
-				if (Alias.ALL.equals(alias.httpMethod) || httpMethod.equals(alias.httpMethod)) {
-					Mapping mapping = new Mapping(broker, httpMethod, this.path + alias.pathPattern, alias.actionName,
-							opts, templateEngine, this, beforeCall, afterCall, executor);
-					if (mapping.matches(httpMethod, path)) {
-						if (!routeMiddlewares.isEmpty()) {
-							mapping.use(routeMiddlewares);
-						}
-						return mapping;
-					}
-				}
+		for (AliasMatcher matcher : matchers) {
+			if (matcher.matches(httpMethod, path)) {
+				return matcher.getMapping();
 			}
 		}
+		String shortPath = path.substring(this.path.length());
 		String actionName = shortPath.replace('/', '.').replace('~', '$');
 		while (actionName.startsWith(".")) {
 			actionName = actionName.substring(1);
@@ -126,26 +145,63 @@ public class Route {
 		if (whiteList != null && whiteList.length > 0) {
 			for (String pattern : whiteList) {
 				if (Matcher.matches(shortPath, pattern)) {
-					Mapping mapping = new Mapping(broker, httpMethod, path, actionName, opts,
-							templateEngine, this, beforeCall, afterCall, executor);
-					if (!routeMiddlewares.isEmpty()) {
-						mapping.use(routeMiddlewares);
-					}
-					return mapping;
+					return createMapping(httpMethod, path, actionName);
 				}
 			}
 		}
 		if (mappingPolicy == MappingPolicy.ALL) {
-			Mapping mapping = new Mapping(broker, httpMethod, path, actionName, opts, templateEngine, this,
-					beforeCall, afterCall, executor);
-			if (!routeMiddlewares.isEmpty()) {
-				mapping.use(routeMiddlewares);
-			}
-			return mapping;
+			return createMapping(httpMethod, path, actionName);
 		}
 		return null;
 	}
 
+	/**
+	 * Creates the Mapping of an alias (with the route-specific and global
+	 * middlewares).
+	 * 
+	 * @param alias
+	 *            alias of this Route
+	 * 
+	 * @return the new Mapping
+	 */
+	public Mapping createMapping(Alias alias) {
+		return createMapping(alias.httpMethod, this.path + alias.pathPattern, alias.actionName);
+	}
+
+	protected Mapping createMapping(String httpMethod, String pathPattern, String actionName) {
+		Mapping mapping = new Mapping(broker, httpMethod, pathPattern, actionName, opts, templateEngine, this,
+				beforeCall, afterCall, executor);
+		if (!routeMiddlewares.isEmpty()) {
+			mapping.use(routeMiddlewares);
+		}
+		if (globalMiddlewares != null && !globalMiddlewares.isEmpty()) {
+			mapping.use(globalMiddlewares);
+		}
+		return mapping;
+	}
+
+	// --- PRECOMPILE ALIASES ---
+
+	/**
+	 * Creates the AliasMatchers of the aliases.
+	 * 
+	 * @param reuse
+	 *            keep the matchers (and the created Mappings) of the previous
+	 *            aliases
+	 */
+	protected void compileAliases(boolean reuse) {
+		AliasMatcher[] prev = matchers;
+		AliasMatcher[] array = new AliasMatcher[aliases == null ? 0 : aliases.length];
+		for (int i = 0; i < array.length; i++) {
+			if (reuse && i < prev.length && prev[i].alias == aliases[i]) {
+				array[i] = prev[i];
+			} else {
+				array[i] = new AliasMatcher(this, aliases[i]);
+			}
+		}
+		matchers = array;
+	}
+
 	// --- ADD MIDDLEWARES TO ROUTE ---
 
 	public Route use(HttpMiddleware... middlewares) {
@@ -158,8 +214,10 @@ public class Route {
 	}
 
 	public Route use(Collection<HttpMiddleware> middlewares) {
-		if (middlewares != null) {
-			routeMiddlewares.addAll(middlewares);
+		if (middlewares != null && routeMiddlewares.addAll(middlewares)) {
+
+			// Drop the Mappings with the previous middleware chain
+			compileAliases(false);
 		}
 
 		// Return this (for method chaining)
@@ -172,6 +230,7 @@ public class Route {
 
 		// Set pointer of parent broker
 		this.broker = broker;
+		this.globalMiddlewares = globalMiddlewares;
 
 		// Start middlewares
 		for (HttpMiddleware middleware : routeMiddlewares) {
@@ -260,6 +319,7 @@ public class Route {
 		}
 		this.aliases = new Alias[list.size()];
 		list.toArray(this.aliases);
+		compileAliases(true);
 
 		// Return this (for method chaining)
 		return this;
@@ -333,6 +393,26 @@ public class Route {
 		return path;
 	}
 
+	public boolean isDirectLocalCalls() {
+		return directLocalCalls;
+	}
+
+	/**
+	 * Invalidates the resolved local endpoints of the route (invoked by the
+	 * ApiGateway when the "$services.changed" event is received).
+	 */
+	public void servicesChanged() {
+		servicesVersion.incrementAndGet();
+	}
+
+	public long getServicesVersion() {
+		return servicesVersion.get();
+	}
+
+	public void setDirectLocalCalls(boolean directLocalCalls) {
+		this.directLocalCalls = directLocalCalls;
+	}
+
 	public HttpMiddleware[] getMiddlewares() {
 		HttpMiddleware[] array = new HttpMiddleware[routeMiddlewares.size()];
 		routeMiddlewares.toArray(array);
@@ -360,6 +440,13 @@ public class Route {
 		return copy;
 	}
 
+	public AliasMatcher[] getAliasMatchers() {
+		AliasMatcher[] array = matchers;
+		AliasMatcher[] copy = new AliasMatcher[array.length];
+		System.arraycopy(array, 0, copy, 0, copy.length);
+		return copy;
+	}
+
 	public Alias[] getAliases() {
 		if (aliases == null) {
 			return null;
@@ -371,6 +458,7 @@ public class Route {
 
 	public void setPath(String path) {
 		this.path = formatPath(path);
+		compileAliases(false);
 	}
 
 	public void setMappingPolicy(MappingPolicy mappingPolicy) {
@@ -392,6 +480,7 @@ public class Route {
 
 	public void setAliases(Alias... aliases) {
 		this.aliases = null;
+		compileAliases(false);
 		if (aliases != null && aliases.length > 0) {
 			for (Alias alias : aliases) {
 				addAlias(alias);
@@ -25,25 +25,171 @@
  */
 package services.moleculer.web.servlet.websocket;
 
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+
 import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
 import javax.websocket.Session;
 
 import services.moleculer.web.common.Endpoint;
+import services.moleculer.web.common.OutboundQueue;
 
 public class ServletEndpoint implements Endpoint {
 
 	protected final Session session;
-	protected final RemoteEndpoint.Basic basic;
+	protected final RemoteEndpoint.Async async;
+
+	/**
+	 * Messages waiting for a client which has fallen behind (null = endpoint
+	 * without remote). The limits and the overflow policy apply to them.
+	 */
+	protected final OutboundQueue<Object> queue;
+
+	/**
+	 * Messages waiting for the previous send, below the high water mark (the
+	 * overflow policy does not apply to them).
+	 */
+	protected final ArrayDeque<Object> waiting = new ArrayDeque<>();
+
+	/**
+	 * Max size of the message being sent and the waiting messages (above
+	 * this limit the messages go to the limited queue).
+	 */
+	protected final int highWaterMark;
+
+	/**
+	 * Handler of the completed sends (sends the next queued message).
+	 */
+	protected final SendHandler next;
+
+	protected boolean sending;
+
+	/**
+	 * Size of the message being sent and the waiting messages in bytes.
+	 */
+	protected long pendingBytes;
+
+	/**
+	 * Size of the message being sent.
+	 */
+	protected int sendingSize;
 
-	protected ServletEndpoint(Session session, boolean openRemote) {
+	protected ServletEndpoint(Session session, OutboundQueue<Object> queue) {
+		this(session, queue, 64 * 1024);
+	}
+
+	protected ServletEndpoint(Session session, OutboundQueue<Object> queue, int highWaterMark) {
 		this.session = session;
-		this.basic = openRemote ? session.getBasicRemote() : null;
+		this.queue = queue;
+		this.highWaterMark = highWaterMark;
+		if (queue == null) {
+			this.async = null;
+			this.next = null;
+		} else {
+			this.async = session.getAsyncRemote();
+			this.next = result -> {
+				Object message;
+				synchronized (this) {
+					pendingBytes -= sendingSize;
+					if (!result.isOK()) {
+
+						// Closed connection
+						reset();
+						return;
+					}
+					message = waiting.poll();
+					if (message == null) {
+						message = queue.poll();
+						if (message == null) {
+							sending = false;
+							return;
+						}
+						sendingSize = sizeOf(message);
+						pendingBytes += sendingSize;
+					} else {
+						sendingSize = sizeOf(message);
+					}
+				}
+				transmit(message);
+			};
+		}
 	}
 
 	@Override
 	public void send(String message) {
+		enqueue(message);
+	}
+
+	@Override
+	public void send(ByteBuffer message) {
+		enqueue(message);
+	}
+
+	/**
+	 * Sends the message, or queues it while the previous one is being sent
+	 * (the sends do not block the broadcasting thread). The messages go to
+	 * the limited queue only when the client has fallen behind.
+	 */
+	protected void enqueue(Object message) {
+		int size = sizeOf(message);
+		synchronized (this) {
+			if (sending) {
+				if (queue.isEmpty() && pendingBytes + size <= highWaterMark) {
+					waiting.addLast(message);
+					pendingBytes += size;
+					return;
+				}
+
+				// Above the high water mark
+				if (!queue.add(message)) {
+					close();
+				}
+				return;
+			}
+			sending = true;
+			sendingSize = size;
+			pendingBytes = size;
+		}
+		transmit(message);
+	}
+
+	protected void transmit(Object message) {
+		try {
+			if (message instanceof String) {
+				async.sendText((String) message, next);
+			} else {
+				async.sendBinary((ByteBuffer) message, next);
+			}
+		} catch (Exception cause) {
+			synchronized (this) {
+				reset();
+			}
+		}
+	}
+
+	protected void reset() {
+		sending = false;
+		waiting.clear();
+		pendingBytes = 0;
+		queue.clear();
+	}
+
+	/**
+	 * Returns the size of a message (String or ByteBuffer).
+	 * 
+	 * @param message
+	 *            message
+	 * 
+	 * @return size of the message
+	 */
+	public static int sizeOf(Object message) {
+		return message instanceof String ? ((String) message).length() : ((ByteBuffer) message).remaining();
+	}
+
+	protected void close() {
 		try {
-			basic.sendText(message);			
+			session.close();
 		} catch (Exception ignored) {
 		}
 	}
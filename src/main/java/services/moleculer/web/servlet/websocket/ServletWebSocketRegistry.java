@@ -50,6 +50,16 @@ public class ServletWebSocketRegistry extends WebSocketRegistry {
 	protected final String contextPath;
 	protected final int contextPathLength;
 
+	// --- FLOW CONTROL ---
+
+	/**
+	 * Max size of the messages in progress per client (the message being sent
+	 * and the messages behind it). Above this limit the client is considered
+	 * slow, and the limits and the overflow policy of the outbound queue
+	 * apply.
+	 */
+	protected int writeBufferHighWaterMark = 64 * 1024;
+
 	// --- CONSTRUCTOR ---
 
 	public ServletWebSocketRegistry(ServletConfig config, ServiceBroker broker, long cleanupSeconds)
@@ -76,118 +86,133 @@ public class ServletWebSocketRegistry extends WebSocketRegistry {
 		// Get "pathInfo"
 		String pathInfo = getPathInfo(session);
 
-		// Check access
-		Promise filter;
-		if (webSocketFilter == null) {
-			filter = Promise.resolve(true);
-		} else {
-			filter = webSocketFilter.onConnect(new WebRequest() {
+		// Upgrade request (for the WebSocket Filter and the action calls)
+		WebRequest request = new WebRequest() {
 
-				@Override
-				public final boolean isMultipart() {
-					return false;
-				}
+			@Override
+			public final boolean isMultipart() {
+				return false;
+			}
 
-				@Override
-				public final String getQuery() {
-					return session.getQueryString();
-				}
+			@Override
+			public final String getQuery() {
+				return session.getQueryString();
+			}
 
-				@Override
-				public final String getPath() {
-					return pathInfo;
-				}
+			@Override
+			public final String getPath() {
+				return pathInfo;
+			}
 
-				@Override
-				public final String getMethod() {
-					return "GET";
-				}
+			@Override
+			public final String getMethod() {
+				return "GET";
+			}
 
-				@Override
-				public final Iterator<String> getHeaders() {
-					return getHeaderMap().keySet().iterator();
-				}
+			@Override
+			public final Iterator<String> getHeaders() {
+				return getHeaderMap().keySet().iterator();
+			}
 
-				@Override
-				public final String getHeader(String name) {
-					return getHeader(name);
-				}
+			@Override
+			public final String getHeader(String name) {
+				return getHeader(name, null);
+			}
 
-				@Override
-				public final String getContentType() {
-					return getHeader(HttpConstants.CONTENT_TYPE, "text/plain");
-				}
+			@Override
+			public final String getContentType() {
+				return getHeader(HttpConstants.CONTENT_TYPE, "text/plain");
+			}
 
-				@Override
-				public final int getContentLength() {
-					try {
-						return Integer.parseInt(getHeader(HttpConstants.CONTENT_LENGTH, "-1"));
-					} catch (Exception ignored) {
-					}
-					return -1;
+			@Override
+			public final int getContentLength() {
+				try {
+					return Integer.parseInt(getHeader(HttpConstants.CONTENT_LENGTH, "-1"));
+				} catch (Exception ignored) {
 				}
+				return -1;
+			}
 
-				@Override
-				public final PacketStream getBody() {
-					return new PacketStream(null, null);
-				}
+			@Override
+			public final PacketStream getBody() {
+				return new PacketStream(null, null);
+			}
 
-				@Override
-				public final String getAddress() {
-					return "0.0.0.0";
-				}
+			@Override
+			public final String getAddress() {
+				return "0.0.0.0";
+			}
 
-				@Override
-				public final Object getInternalObject() {
-					return session;
-				}
-				
-				@SuppressWarnings("unchecked")
-				private final Map<String, List<String>> getHeaderMap() {
-					Map<String, Object> props = session.getUserProperties();
-					if (props == null) {
-						return Collections.emptyMap();
-					}
-					return (Map<String, List<String>>) props.get("moleculer.headers");
+			@Override
+			public final Object getInternalObject() {
+				return session;
+			}
+			
+			@SuppressWarnings("unchecked")
+			private final Map<String, List<String>> getHeaderMap() {
+				Map<String, Object> props = session.getUserProperties();
+				if (props == null) {
+					return Collections.emptyMap();
 				}
+				Map<String, List<String>> map = (Map<String, List<String>>) props.get("moleculer.headers");
+				return map == null ? Collections.emptyMap() : map;
+			}
 
-				@Override
-				public String getProtocol() {
-					return session.getProtocolVersion();
+			@Override
+			public String getProtocol() {
+				return session.getProtocolVersion();
+			}
+			
+			private final String getHeader(String name, String defaultValue) {
+				Map<String, List<String>> map = getHeaderMap();
+				if (map == null || map.isEmpty()) {
+					return defaultValue;
 				}
-				
-				private final String getHeader(String name, String defaultValue) {
-					Map<String, List<String>> map = getHeaderMap();
-					if (map.isEmpty()) {
-						return defaultValue;
-					}
-					for (String key : map.keySet()) {
-						if (name.equalsIgnoreCase(key)) {
-							List<String> list = map.get(key);
-							if (list != null && !list.isEmpty()) {
-								return list.get(0);
-							}
+				for (String key : map.keySet()) {
+					if (name.equalsIgnoreCase(key)) {
+						List<String> list = map.get(key);
+						if (list != null && !list.isEmpty()) {
+							return list.get(0);
 						}
 					}
-					return defaultValue;
 				}
+				return defaultValue;
+			}
+
+		};
 
-			});
+		// Check access
+		Promise filter;
+		if (webSocketFilter == null) {
+			filter = Promise.resolve(true);
+		} else {
+			filter = webSocketFilter.onConnect(request);
 		}
 		filter.then(accept -> {
 			if (accept.asBoolean()) {
 				
 				// Accept connection
-				ServletEndpoint endpoint = new ServletEndpoint(session, true);
+				ServletEndpoint endpoint = new ServletEndpoint(session,
+						createOutboundQueue(ServletEndpoint::sizeOf, null), writeBufferHighWaterMark);
 
 				// Register
 				register(pathInfo, endpoint);
+				if (!session.isOpen()) {
+
+					// Closed during the WebSocket Filter's check
+					deregister(pathInfo, endpoint);
+					return;
+				}
 
-				// Add heartbeat handler
+				// Add heartbeat and action call handler
 				session.addMessageHandler(new MessageHandler.Whole<String>() {
 
 					public final void onMessage(String text) {
-						endpoint.send("!");
+						if (text.isEmpty() || text.charAt(0) == '!') {
+							endpoint.send("!");
+						} else {
+							ServletWebSocketRegistry.this.onMessage(endpoint, request, text);
+						}
 					}
 
 				});
@@ -201,7 +226,7 @@ public class ServletWebSocketRegistry extends WebSocketRegistry {
 	}
 
 	protected void onClose(Session session) {
-		deregister(getPathInfo(session), new ServletEndpoint(session, false));
+		deregister(getPathInfo(session), new ServletEndpoint(session, null));
 	}
 
 	protected String getPathInfo(Session session) {
@@ -216,4 +241,14 @@ public class ServletWebSocketRegistry extends WebSocketRegistry {
 		return path;
 	}
 
+	// --- GETTERS AND SETTERS ---
+
+	public int getWriteBufferHighWaterMark() {
+		return writeBufferHighWaterMark;
+	}
+
+	public void setWriteBufferHighWaterMark(int writeBufferHighWaterMark) {
+		this.writeBufferHighWaterMark = writeBufferHighWaterMark;
+	}
+
 }
\ No newline at end of file
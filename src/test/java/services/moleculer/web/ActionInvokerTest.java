@@ -0,0 +1,190 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2018 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import io.datatree.Promise;
+import io.datatree.Tree;
+import junit.framework.TestCase;
+import services.moleculer.ServiceBroker;
+import services.moleculer.context.CallOptions;
+import services.moleculer.service.Action;
+import services.moleculer.service.Service;
+import services.moleculer.web.common.Endpoint;
+import services.moleculer.web.common.WebSocketRequest;
+import services.moleculer.web.common.WebSocketResponse;
+import services.moleculer.web.router.MappingPolicy;
+import services.moleculer.web.router.Route;
+
+/**
+ * Local actions called directly and via the ServiceInvoker must give the same
+ * responses.
+ */
+public class ActionInvokerTest extends TestCase {
+
+	protected ServiceBroker broker;
+	protected ApiGateway gateway;
+
+	@Override
+	protected void setUp() throws Exception {
+		broker = ServiceBroker.builder().nodeID("node1").build();
+		broker.createService(new Service("test") {
+
+			@SuppressWarnings("unused")
+			Action value = ctx -> {
+				return ctx.params.get("a", 0) + 1;
+			};
+
+			@SuppressWarnings("unused")
+			Action tree = ctx -> {
+				return new Tree().put("a", ctx.params.get("a", 0)).put("id", ctx.id != null);
+			};
+
+			@SuppressWarnings("unused")
+			Action async = ctx -> {
+				int a = ctx.params.get("a", 0);
+				return new Promise(r -> {
+					broker.getConfig().getScheduler().schedule(() -> r.resolve(a * 2), 20, TimeUnit.MILLISECONDS);
+				});
+			};
+
+			@SuppressWarnings("unused")
+			Action fail = ctx -> {
+				throw new IllegalArgumentException("Invalid value!");
+			};
+
+			@SuppressWarnings("unused")
+			Action slow = ctx -> {
+				return new Promise(r -> {
+					broker.getConfig().getScheduler().schedule(() -> r.resolve(1), 1000, TimeUnit.MILLISECONDS);
+				});
+			};
+
+		});
+
+		gateway = new ApiGateway();
+		addRoute("/direct", true, null);
+		addRoute("/invoker", false, null);
+		addRoute("/timeout", true, CallOptions.timeout(100));
+		broker.createService(gateway);
+		broker.start();
+	}
+
+	protected void addRoute(String path, boolean directLocalCalls, CallOptions.Options opts) {
+		Route route = new Route(path);
+		route.setMappingPolicy(MappingPolicy.ALL);
+		route.setDirectLocalCalls(directLocalCalls);
+		route.setCallOptions(opts);
+		gateway.addRoute(route);
+	}
+
+	// ---------------- TESTS ----------------
+
+	@Test
+	public void testSameResponses() throws Exception {
+		for (String action : new String[] { "value", "tree", "async", "fail", "missing" }) {
+			Tree direct = call("/direct/test/" + action, "{\"a\":5}");
+			Tree invoker = call("/invoker/test/" + action, "{\"a\":5}");
+			assertEquals(action, invoker.get("status", 200), direct.get("status", 200));
+			assertEquals(action, invoker.get("result", "?"), direct.get("result", "?"));
+			assertEquals(action, invoker.get("error.message", "?"), direct.get("error.message", "?"));
+		}
+		assertEquals(6, call("/direct/test/value", "{\"a\":5}").get("result", 0));
+		assertEquals(10, call("/direct/test/async", "{\"a\":5}").get("result", 0));
+		assertTrue(call("/direct/test/tree", "{\"a\":5}").get("result.id", false));
+		assertTrue(call("/direct/test/fail", "{}").get("status", 200) >= 400);
+	}
+
+	@Test
+	public void testTimeoutFallback() throws Exception {
+
+		// The timeout of the route is handled by the ServiceInvoker
+		Tree rsp = call("/timeout/test/slow", "{}");
+		assertTrue(rsp.get("status", 200) >= 400);
+		assertEquals(1, call("/direct/test/slow", "{}").get("result", 0));
+	}
+
+	@Test
+	public void testServicesChanged() throws Exception {
+
+		// Service deployed after the first call (resolved again)
+		assertTrue(call("/direct/test2/value", "{}").get("status", 200) >= 400);
+		broker.createService(new Service("test2") {
+
+			@SuppressWarnings("unused")
+			Action value = ctx -> {
+				return 2;
+			};
+
+		});
+		long timeout = System.currentTimeMillis() + 5000;
+		while (call("/direct/test2/value", "{}").get("result", 0) != 2) {
+			assertTrue(System.currentTimeMillis() < timeout);
+			Thread.sleep(50);
+		}
+	}
+
+	protected Tree call(String path, String json) throws Exception {
+		CompletableFuture<String> future = new CompletableFuture<>();
+		Endpoint endpoint = new Endpoint() {
+
+			@Override
+			public void send(String message) {
+				future.complete(message);
+			}
+
+			@Override
+			public boolean isOpen() {
+				return true;
+			}
+
+			@Override
+			public Object getInternal() {
+				return this;
+			}
+
+		};
+		WebSocketRequest req = new WebSocketRequest(broker, null, "POST", path,
+				json.getBytes(StandardCharsets.UTF_8));
+		gateway.service(req, new WebSocketResponse(endpoint, null));
+		return new Tree(future.get(5, TimeUnit.SECONDS));
+	}
+
+	// ---------------- STOP ----------------
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (broker != null) {
+			broker.stop();
+		}
+	}
+
+}
@@ -0,0 +1,186 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2018 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web;
+
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import services.moleculer.ServiceBroker;
+import services.moleculer.web.router.Alias;
+import services.moleculer.web.router.Mapping;
+import services.moleculer.web.router.MappingCache;
+import services.moleculer.web.router.Route;
+
+public class MappingCacheTest extends TestCase {
+
+	protected static final int CAPACITY = 2048;
+	protected static final int HOT_KEYS = 1024;
+	protected static final int COLD_KEYS = 16384;
+	protected static final int THREADS = 4;
+	protected static final long DURATION = 1000;
+
+	protected Mapping mapping;
+
+	@Override
+	protected void setUp() throws Exception {
+		Route route = new Route("/api");
+		route.started(new ServiceBroker(), new HashSet<>());
+		mapping = route.createMapping(new Alias(Alias.GET, "/test", "test.action"));
+	}
+
+	@Test
+	public void testEviction() throws Exception {
+		MappingCache cache = new MappingCache(100);
+		for (int i = 0; i < 100; i++) {
+			assertSame(mapping, cache.put("GET /path" + i, mapping));
+		}
+
+		// Use the first half
+		for (int i = 0; i < 50; i++) {
+			assertSame(mapping, cache.get("GET /path" + i));
+		}
+
+		// Overflow -> the unused entries are removed
+		for (int i = 100; i < 110; i++) {
+			cache.put("GET /path" + i, mapping);
+		}
+		assertTrue(cache.size() <= 100);
+		for (int i = 0; i < 50; i++) {
+			assertNotNull(cache.get("GET /path" + i));
+		}
+		assertNull(cache.get("GET /path50"));
+
+		cache.setCapacity(10);
+		assertTrue(cache.size() <= 10);
+		cache.clear();
+		assertEquals(0, cache.size());
+	}
+
+	@Test
+	public void testConcurrentRouting() throws Exception {
+
+		// Previous implementation: insertion-ordered LinkedHashMap with RW lock
+		LockedCache locked = new LockedCache();
+		long[] lockedResult = measure(key -> locked.get(key), (key, value) -> locked.put(key, value));
+
+		MappingCache cache = new MappingCache(CAPACITY);
+		long[] lockFreeResult = measure(key -> cache.get(key), (key, value) -> cache.put(key, value));
+
+		System.out.println("Lookups/sec with locked FIFO cache (" + THREADS + " threads): " + lockedResult[0]
+				+ ", hit ratio: " + lockedResult[1] + "%");
+		System.out.println("Lookups/sec with lock-free LRU cache (" + THREADS + " threads): " + lockFreeResult[0]
+				+ ", hit ratio: " + lockFreeResult[1] + "%");
+		assertTrue(lockFreeResult[0] > 0);
+		assertTrue(lockFreeResult[1] >= lockedResult[1]);
+		assertTrue(cache.size() <= CAPACITY);
+	}
+
+	protected long[] measure(Getter getter, Putter putter) throws Exception {
+		LongAdder lookups = new LongAdder();
+		LongAdder hits = new LongAdder();
+		long end = System.currentTimeMillis() + DURATION;
+		Thread[] threads = new Thread[THREADS];
+		for (int t = 0; t < THREADS; t++) {
+			threads[t] = new Thread(() -> {
+				ThreadLocalRandom rnd = ThreadLocalRandom.current();
+				while (System.currentTimeMillis() < end) {
+					for (int n = 0; n < 1000; n++) {
+
+						// 90% of the requests goes to the "hot" paths
+						String key = rnd.nextInt(10) == 0 ? "GET /cold/" + rnd.nextInt(COLD_KEYS)
+								: "GET /hot/" + rnd.nextInt(HOT_KEYS);
+						if (getter.get(key) == null) {
+							putter.put(key, mapping);
+						} else {
+							hits.increment();
+						}
+					}
+					lookups.add(1000);
+				}
+			});
+			threads[t].start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		long count = lookups.sum();
+		return new long[] { count * 1000 / DURATION, hits.sum() * 100 / Math.max(1, count) };
+	}
+
+	protected static interface Getter {
+
+		Mapping get(String key);
+
+	}
+
+	protected static interface Putter {
+
+		void put(String key, Mapping mapping);
+
+	}
+
+	protected static class LockedCache {
+
+		protected final ReentrantReadWriteLock lock = new ReentrantReadWriteLock(false);
+
+		protected final LinkedHashMap<String, Mapping> map = new LinkedHashMap<String, Mapping>((CAPACITY + 1) * 2) {
+
+			private static final long serialVersionUID = 1L;
+
+			protected final boolean removeEldestEntry(Map.Entry<String, Mapping> entry) {
+				return this.size() > CAPACITY;
+			};
+
+		};
+
+		protected Mapping get(String key) {
+			lock.readLock().lock();
+			try {
+				return map.get(key);
+			} finally {
+				lock.readLock().unlock();
+			}
+		}
+
+		protected void put(String key, Mapping mapping) {
+			lock.writeLock().lock();
+			try {
+				map.put(key, mapping);
+			} finally {
+				lock.writeLock().unlock();
+			}
+		}
+
+	}
+
+}
@@ -0,0 +1,198 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2018 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import services.moleculer.ServiceBroker;
+import services.moleculer.web.router.Alias;
+import services.moleculer.web.router.AliasMatcher;
+import services.moleculer.web.router.Mapping;
+import services.moleculer.web.router.MappingTree;
+import services.moleculer.web.router.Route;
+
+public class MappingTreeTest extends TestCase {
+
+	protected static final int ALIASES = 2000;
+	protected static final int LOOKUPS = 200000;
+
+	protected ServiceBroker broker;
+
+	@Override
+	protected void setUp() throws Exception {
+		broker = new ServiceBroker();
+	}
+
+	@Test
+	public void testMatching() throws Exception {
+		Route route = new Route("/api");
+		route.started(broker, new HashSet<>());
+		MappingTree tree = new MappingTree();
+		Mapping list = add(tree, route, Alias.GET, "/users", "users.list");
+		Mapping get = add(tree, route, Alias.GET, "/users/:id", "users.get");
+		Mapping me = add(tree, route, Alias.GET, "/users/me", "users.me");
+		Mapping items = add(tree, route, Alias.ALL, "/users/:id/items/:item", "items.get");
+		Mapping files = add(tree, route, Alias.ALL, "/files/*", "files.get");
+		Mapping images = add(tree, route, Alias.ALL, "/files/img/*", "images.get");
+
+		int[] offsets = new int[tree.getMaxVariables() * 2];
+		assertEquals(2, tree.getMaxVariables());
+		assertSame(list, tree.find("GET", "/api/users", offsets));
+		assertSame(me, tree.find("GET", "/api/users/me", offsets));
+
+		String path = "/api/users/123";
+		assertSame(get, tree.find("GET", path, offsets));
+		assertEquals("123", path.substring(offsets[0], offsets[1]));
+
+		path = "/api/users/456/items/abc";
+		assertSame(items, tree.find("POST", path, offsets));
+		assertEquals("456", path.substring(offsets[0], offsets[1]));
+		assertEquals("abc", path.substring(offsets[2], offsets[3]));
+
+		// Literal segment is preferred, but the tree backtracks to the param
+		path = "/api/users/me/items/xyz";
+		assertSame(items, tree.find("GET", path, offsets));
+		assertEquals("me", path.substring(offsets[0], offsets[1]));
+
+		// Longest "*" prefix wins
+		assertSame(files, tree.find("GET", "/api/files/a/b.txt", offsets));
+		assertSame(images, tree.find("GET", "/api/files/img/a.png", offsets));
+		assertNull(tree.find("GET", "/api/files", offsets));
+
+		// Method mismatch and unknown paths
+		assertNull(tree.find("POST", "/api/users/123", offsets));
+		assertNull(tree.find("GET", "/api/users/123/items", offsets));
+		assertNull(tree.find("GET", "/api/user", offsets));
+		assertNull(tree.find("GET", "/other/users", offsets));
+	}
+
+	@Test
+	public void testPerformance() throws Exception {
+		Route route = new Route("/api");
+		route.started(broker, new HashSet<>());
+		MappingTree tree = new MappingTree();
+		ArrayList<Mapping> mappings = new ArrayList<>(ALIASES);
+		String[] paths = new String[ALIASES];
+		for (int i = 0; i < ALIASES; i++) {
+			String pattern = "/resource" + i + "/:id/items/:item";
+			mappings.add(add(tree, route, Alias.GET, pattern, "service" + i + ".get"));
+			paths[i] = "/api/resource" + i + "/" + i + "/items/item" + i;
+		}
+
+		// Both lookups must find the same mappings
+		int[] offsets = new int[tree.getMaxVariables() * 2];
+		for (int i = 0; i < ALIASES; i++) {
+			assertSame(mappings.get(i), scan(mappings, paths[i]));
+			assertSame(mappings.get(i), tree.find("GET", paths[i], offsets));
+		}
+
+		// Warm up
+		measureScan(mappings, paths, LOOKUPS / 10);
+		measureTree(tree, paths, LOOKUPS / 10);
+
+		long scan = measureScan(mappings, paths, LOOKUPS / 100);
+		long trie = measureTree(tree, paths, LOOKUPS);
+		System.out.println("Lookups/sec with linear scan (" + ALIASES + " aliases): " + scan);
+		System.out.println("Lookups/sec with mapping tree (" + ALIASES + " aliases): " + trie);
+		assertTrue(trie > scan);
+	}
+
+	@Test
+	public void testColdRouting() throws Exception {
+		Route route = new Route("/api");
+		route.started(broker, new HashSet<>());
+		for (int i = 0; i < 100; i++) {
+			route.addAlias(Alias.GET, "/resource" + i + "/:id", "service" + i + ".get");
+		}
+
+		// The Mapping is created only for the matching alias (only once)
+		Mapping mapping = route.findMapping("GET", "/api/resource99/1");
+		assertNotNull(mapping);
+		assertSame(mapping, route.findMapping("GET", "/api/resource99/2"));
+		assertNull(route.findMapping("POST", "/api/resource99/1"));
+
+		// Previous implementation: new Mapping per probed alias
+		Alias[] aliases = route.getAliases();
+		int count = 100;
+		long start = System.nanoTime();
+		for (int n = 0; n < count; n++) {
+			String path = "/api/resource" + (n % aliases.length) + '/' + n;
+			for (Alias alias : aliases) {
+				if (route.createMapping(alias).matches("GET", path)) {
+					break;
+				}
+			}
+		}
+		long probes = count * 1000000000L / Math.max(1, System.nanoTime() - start);
+
+		count = 100000;
+		start = System.nanoTime();
+		for (int n = 0; n < count; n++) {
+			assertNotNull(route.findMapping("GET", "/api/resource" + (n % aliases.length) + '/' + n));
+		}
+		long matchers = count * 1000000000L / Math.max(1, System.nanoTime() - start);
+		System.out.println("Cold lookups/sec with new Mapping per alias: " + probes);
+		System.out.println("Cold lookups/sec with precompiled aliases: " + matchers);
+		assertTrue(matchers > probes);
+	}
+
+	protected Mapping add(MappingTree tree, Route route, String httpMethod, String pathPattern, String actionName) {
+		AliasMatcher matcher = new AliasMatcher(route, new Alias(httpMethod, pathPattern, actionName));
+		tree.add(matcher);
+		return matcher.getMapping();
+	}
+
+	protected Mapping scan(ArrayList<Mapping> mappings, String path) {
+		for (Mapping mapping : mappings) {
+			if (mapping.matches("GET", path)) {
+				return mapping;
+			}
+		}
+		return null;
+	}
+
+	protected long measureScan(ArrayList<Mapping> mappings, String[] paths, int count) {
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			assertNotNull(scan(mappings, paths[i % paths.length]));
+		}
+		return count * 1000000000L / Math.max(1, System.nanoTime() - start);
+	}
+
+	protected long measureTree(MappingTree tree, String[] paths, int count) {
+		int[] offsets = new int[tree.getMaxVariables() * 2];
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			assertNotNull(tree.find("GET", paths[i % paths.length], offsets));
+		}
+		return count * 1000000000L / Math.max(1, System.nanoTime() - start);
+	}
+
+}
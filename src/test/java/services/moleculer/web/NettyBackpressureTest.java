@@ -0,0 +1,131 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpServerCodec;
+import junit.framework.TestCase;
+import services.moleculer.web.netty.MoleculerHandler;
+
+public class NettyBackpressureTest extends TestCase {
+
+	protected static final int STREAM_SIZE = 64 * 1024 * 1024;
+	protected static final int PACKET_SIZE = 64 * 1024;
+	protected static final int MAX_IN_FLIGHT = 16 * 1024 * 1024;
+
+	@Test
+	public void testThrottledClient() throws Exception {
+		AtomicLong produced = new AtomicLong();
+		byte[] packet = new byte[PACKET_SIZE];
+
+		// Streamed response (the producer writes as fast as it can)
+		ApiGateway gateway = new ApiGateway() {
+
+			@Override
+			public void service(WebRequest req, WebResponse rsp) throws Exception {
+				new Thread(() -> {
+					try {
+						rsp.setHeader("Content-Type", "application/octet-stream");
+						for (int i = 0; i < STREAM_SIZE / PACKET_SIZE; i++) {
+							rsp.send(packet);
+							produced.addAndGet(PACKET_SIZE);
+						}
+					} catch (Exception ignored) {
+					} finally {
+						rsp.end();
+					}
+				}).start();
+			}
+
+		};
+
+		EventLoopGroup group = new NioEventLoopGroup(1);
+		Socket socket = null;
+		try {
+			ServerBootstrap bootstrap = new ServerBootstrap();
+			bootstrap.group(group).channel(NioServerSocketChannel.class);
+			bootstrap.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK,
+					new WriteBufferWaterMark(32 * 1024, 64 * 1024));
+			bootstrap.childHandler(new ChannelInitializer<Channel>() {
+
+				@Override
+				protected void initChannel(Channel ch) throws Exception {
+					ch.pipeline().addLast("codec", new HttpServerCodec());
+					ch.pipeline().addLast("handler", new MoleculerHandler(gateway, null, null));
+				}
+
+			});
+			Channel server = bootstrap.bind(0).sync().channel();
+			int port = ((InetSocketAddress) server.localAddress()).getPort();
+
+			// Slow client
+			socket = new Socket();
+			socket.setReceiveBufferSize(64 * 1024);
+			socket.connect(new InetSocketAddress("localhost", port));
+			OutputStream out = socket.getOutputStream();
+			out.write("GET /stream HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+
+			InputStream in = socket.getInputStream();
+			byte[] buffer = new byte[16 * 1024];
+			long consumed = 0;
+			long maxInFlight = 0;
+			int n;
+			while (consumed < STREAM_SIZE && (n = in.read(buffer)) > -1) {
+				consumed += n;
+				maxInFlight = Math.max(maxInFlight, produced.get() - consumed);
+				if (consumed % (256 * 1024) < n) {
+					Thread.sleep(5);
+				}
+			}
+			System.out.println("Max in-flight bytes: " + (maxInFlight / 1024) + " kbytes");
+			assertTrue(consumed >= STREAM_SIZE);
+			assertTrue(maxInFlight < MAX_IN_FLIGHT);
+		} finally {
+			if (socket != null) {
+				socket.close();
+			}
+			group.shutdownGracefully();
+		}
+	}
+
+}
@@ -0,0 +1,142 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import org.junit.Test;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.HttpServerCodec;
+import junit.framework.TestCase;
+import services.moleculer.web.netty.EventLoopMonitor;
+import services.moleculer.web.netty.MoleculerHandler;
+
+public class NettyDispatchTest extends TestCase {
+
+	protected static final int CLIENTS = 8;
+	protected static final int BLOCKING_MILLIS = 100;
+
+	@Test
+	public void testBlockingMiddleware() throws Exception {
+		ExecutorService executor = Executors.newCachedThreadPool();
+		try {
+			EventLoopMonitor inline = measure(null);
+			EventLoopMonitor offloaded = measure(executor);
+			System.out.println("Processed on the I/O thread: " + inline);
+			System.out.println("Processed by an executor: " + offloaded);
+
+			// All requests blocked the only I/O thread
+			assertTrue(inline.getBlockedTime() >= CLIENTS * BLOCKING_MILLIS / 2);
+
+			// The I/O thread remained free
+			assertTrue(offloaded.getBlockedTime() < inline.getBlockedTime() / 4);
+		} finally {
+			executor.shutdown();
+		}
+	}
+
+	protected EventLoopMonitor measure(Executor executor) throws Exception {
+
+		// Blocking middleware (eg. DNS lookup)
+		ApiGateway gateway = new ApiGateway() {
+
+			@Override
+			public void service(WebRequest req, WebResponse rsp) throws Exception {
+				Thread.sleep(BLOCKING_MILLIS);
+				rsp.setHeader("Content-Type", "text/plain");
+				rsp.setHeader("Content-Length", "2");
+				rsp.send("OK".getBytes(StandardCharsets.US_ASCII));
+				rsp.end();
+			}
+
+		};
+		EventLoopGroup group = new NioEventLoopGroup(1);
+		EventLoopMonitor monitor = new EventLoopMonitor(5, 20);
+		Socket[] sockets = new Socket[CLIENTS];
+		try {
+			ServerBootstrap bootstrap = new ServerBootstrap();
+			bootstrap.group(group).channel(NioServerSocketChannel.class);
+			bootstrap.childHandler(new ChannelInitializer<Channel>() {
+
+				@Override
+				protected void initChannel(Channel ch) throws Exception {
+					ch.pipeline().addLast("codec", new HttpServerCodec());
+					ch.pipeline().addLast("handler", new MoleculerHandler(gateway, null, null, 0, executor));
+				}
+
+			});
+			Channel server = bootstrap.bind(0).sync().channel();
+			int port = ((InetSocketAddress) server.localAddress()).getPort();
+			monitor.start(group);
+
+			// Parallel clients
+			for (int i = 0; i < CLIENTS; i++) {
+				sockets[i] = new Socket("localhost", port);
+				OutputStream out = sockets[i].getOutputStream();
+				out.write("GET /test HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+				out.flush();
+			}
+			for (Socket socket : sockets) {
+				String response = read(socket.getInputStream());
+				assertTrue(response.startsWith("HTTP/1.1 200"));
+				assertTrue(response.endsWith("OK"));
+			}
+			monitor.stop();
+			return monitor;
+		} finally {
+			for (Socket socket : sockets) {
+				if (socket != null) {
+					socket.close();
+				}
+			}
+			group.shutdownGracefully();
+		}
+	}
+
+	protected String read(InputStream in) throws Exception {
+		StringBuilder tmp = new StringBuilder();
+		byte[] buffer = new byte[1024];
+		int n;
+		while (!tmp.toString().endsWith("OK") && (n = in.read(buffer)) > -1) {
+			tmp.append(new String(buffer, 0, n, StandardCharsets.US_ASCII));
+		}
+		return tmp.toString();
+	}
+
+}
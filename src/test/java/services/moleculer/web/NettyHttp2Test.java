@@ -0,0 +1,251 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2018 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedList;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.Test;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.SimpleChannelInboundHandler;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.DefaultFullHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http2.Http2FrameCodecBuilder;
+import io.netty.handler.codec.http2.Http2MultiplexHandler;
+import io.netty.handler.codec.http2.Http2StreamChannel;
+import io.netty.handler.codec.http2.Http2StreamChannelBootstrap;
+import io.netty.handler.codec.http2.Http2StreamFrameToHttpObjectCodec;
+import io.netty.handler.codec.http2.HttpConversionUtil;
+import junit.framework.TestCase;
+import services.moleculer.ServiceBroker;
+import services.moleculer.web.netty.NettyServer;
+import services.moleculer.web.netty.NettyWebRequest;
+import services.moleculer.web.netty.NettyWebResponse;
+
+/**
+ * HTTP/2 over cleartext TCP (h2c with prior knowledge) and HTTP/1.1 on the
+ * same port.
+ */
+public class NettyHttp2Test extends TestCase {
+
+	protected final LinkedList<WebRequest> requests = new LinkedList<>();
+	protected final LinkedList<WebResponse> responses = new LinkedList<>();
+
+	protected Http2Server server;
+	protected EventLoopGroup group;
+	protected int port;
+
+	@Test
+	public void testPriorKnowledge() throws Exception {
+		Bootstrap bootstrap = new Bootstrap();
+		bootstrap.group(group).channel(NioSocketChannel.class);
+		bootstrap.handler(new ChannelInitializer<Channel>() {
+
+			@Override
+			protected void initChannel(Channel ch) throws Exception {
+				ch.pipeline().addLast(Http2FrameCodecBuilder.forClient().build());
+				ch.pipeline().addLast(new Http2MultiplexHandler(new ChannelInitializer<Channel>() {
+
+					@Override
+					protected void initChannel(Channel ch) throws Exception {
+
+						// Server push is not used
+					}
+
+				}));
+			}
+
+		});
+		Channel channel = bootstrap.connect("127.0.0.1", port).sync().channel();
+		try {
+
+			// Two concurrent streams on one connection
+			CompletableFuture<FullHttpResponse> first = send(channel, "/first");
+			CompletableFuture<FullHttpResponse> second = send(channel, "/second");
+			assertResponse(first.get(10, TimeUnit.SECONDS), 201, "first");
+			assertResponse(second.get(10, TimeUnit.SECONDS), 202, "second");
+
+			// Each stream has its own request and response
+			assertEquals(2, requests.size());
+			assertNotSame(requests.get(0), requests.get(1));
+			assertNotSame(responses.get(0), responses.get(1));
+			for (WebRequest req : requests) {
+				assertTrue(req instanceof NettyWebRequest);
+				assertEquals("HTTP/2.0", req.getProtocol());
+			}
+			for (WebResponse rsp : responses) {
+				assertTrue(rsp instanceof NettyWebResponse);
+			}
+		} finally {
+			channel.close().sync();
+		}
+	}
+
+	@Test
+	public void testHttp1() throws Exception {
+		try (Socket socket = new Socket("127.0.0.1", port)) {
+			socket.setSoTimeout(10000);
+			OutputStream out = socket.getOutputStream();
+			out.write("GET /first HTTP/1.1\r\nHost: localhost\r\n\r\nGET /second HTTP/1.1\r\nHost: localhost\r\n\r\n"
+					.getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+
+			// Pipelined HTTP/1.1 requests (the first response waits for the second request)
+			String txt = read(socket.getInputStream(), "second");
+			int first = txt.indexOf("HTTP/1.1 201");
+			int second = txt.indexOf("HTTP/1.1 202");
+			assertTrue(first > -1 && second > first);
+			assertTrue(txt.indexOf("first") > first && txt.indexOf("first") < second);
+			assertEquals("HTTP/1.1", requests.get(0).getProtocol());
+		}
+	}
+
+	protected CompletableFuture<FullHttpResponse> send(Channel channel, String path) throws Exception {
+		CompletableFuture<FullHttpResponse> future = new CompletableFuture<>();
+		Http2StreamChannel stream = new Http2StreamChannelBootstrap(channel)
+				.handler(new ChannelInitializer<Http2StreamChannel>() {
+
+					@Override
+					protected void initChannel(Http2StreamChannel ch) throws Exception {
+						ch.pipeline().addLast(new Http2StreamFrameToHttpObjectCodec(false));
+						ch.pipeline().addLast(new HttpObjectAggregator(65536));
+						ch.pipeline().addLast(new SimpleChannelInboundHandler<FullHttpResponse>() {
+
+							@Override
+							protected void channelRead0(ChannelHandlerContext ctx, FullHttpResponse msg)
+									throws Exception {
+								future.complete(msg.retainedDuplicate());
+							}
+
+						});
+					}
+
+				}).open().sync().getNow();
+		DefaultFullHttpRequest request = new DefaultFullHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, path);
+		request.headers().set("Host", "localhost");
+		request.headers().set(HttpConversionUtil.ExtensionHeaderNames.SCHEME.text(), "http");
+		stream.writeAndFlush(request).sync();
+		return future;
+	}
+
+	protected void assertResponse(FullHttpResponse rsp, int status, String body) {
+		try {
+			assertEquals(status, rsp.status().code());
+			assertEquals(body, rsp.content().toString(StandardCharsets.UTF_8));
+		} finally {
+			rsp.release();
+		}
+	}
+
+	protected String read(InputStream in, String end) throws Exception {
+		StringBuilder tmp = new StringBuilder();
+		while (!tmp.toString().endsWith(end)) {
+			int b = in.read();
+			assertTrue(b > -1);
+			tmp.append((char) b);
+		}
+		return tmp.toString();
+	}
+
+	// --- SERVER ---
+
+	/**
+	 * Answers the first request when the second request arrives (so both
+	 * requests are in progress at the same time).
+	 */
+	protected class TestGateway extends ApiGateway {
+
+		@Override
+		public void service(WebRequest req, WebResponse rsp) throws Exception {
+			synchronized (requests) {
+				requests.addLast(req);
+				responses.addLast(rsp);
+				if (requests.size() < 2) {
+					return;
+				}
+			}
+			sendText(responses.get(0), 201, "first");
+			sendText(responses.get(1), 202, "second");
+		}
+
+	}
+
+	protected void sendText(WebResponse rsp, int status, String text) throws Exception {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		rsp.setStatus(status);
+		rsp.setHeader("Content-Type", "text/plain");
+		rsp.setHeader("Content-Length", Integer.toString(bytes.length));
+		rsp.send(bytes);
+		rsp.end();
+	}
+
+	protected static class Http2Server extends NettyServer {
+
+		protected Http2Server(int port, ApiGateway gateway) {
+			super(port);
+			this.gateway = gateway;
+			setUseHttp2(true);
+		}
+
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		try (ServerSocket socket = new ServerSocket(0)) {
+			port = socket.getLocalPort();
+		}
+		server = new Http2Server(port, new TestGateway());
+		server.started(new ServiceBroker());
+		group = new NioEventLoopGroup(1);
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (server != null) {
+			server.stopped();
+		}
+		if (group != null) {
+			group.shutdownGracefully();
+		}
+	}
+
+}
@@ -0,0 +1,127 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2018 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web;
+
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import services.moleculer.ServiceBroker;
+import services.moleculer.service.Action;
+import services.moleculer.service.Service;
+import services.moleculer.transporter.InternalTransporter;
+import services.moleculer.web.netty.NettyServer;
+import services.moleculer.web.router.Alias;
+import services.moleculer.web.router.Route;
+
+public class NettyLocalCallTest extends TestCase {
+
+	protected static final int REQUESTS = 5000;
+
+	@Test
+	public void testLatency() throws Exception {
+		double direct = measure(true, false);
+		double invoker = measure(false, false);
+		double remote = measure(true, true);
+		assertTrue(direct > 0);
+		assertTrue(invoker > 0);
+
+		// Local calls are faster than the calls over the transporter
+		assertTrue(direct < remote);
+	}
+
+	protected double measure(boolean directLocalCalls, boolean remote) throws Exception {
+		ServiceBroker gatewayBroker = ServiceBroker.builder().nodeID("gateway").transporter(new InternalTransporter())
+				.build();
+		ServiceBroker serviceBroker = remote
+				? ServiceBroker.builder().nodeID("service").transporter(new InternalTransporter()).build()
+				: gatewayBroker;
+		CloseableHttpAsyncClient client = null;
+		try {
+			gatewayBroker.createService(new NettyServer());
+
+			ApiGateway gateway = new ApiGateway();
+			Route route = new Route();
+			route.setDirectLocalCalls(directLocalCalls);
+			route.addAlias(Alias.GET, "/math/add/:a/:b", "math.add");
+			gateway.addRoute(route);
+			gatewayBroker.createService(gateway);
+
+			serviceBroker.createService(new Service("math") {
+
+				@SuppressWarnings("unused")
+				Action add = ctx -> {
+					return ctx.params.get("a", 0) + ctx.params.get("b", 0);
+				};
+
+			});
+			if (remote) {
+				serviceBroker.start();
+			}
+			gatewayBroker.start();
+
+			client = HttpAsyncClients.createDefault();
+			client.start();
+
+			// Wait for the service, then warm up
+			long timeout = System.currentTimeMillis() + 10000;
+			while (execute(client, 0) != 200 && System.currentTimeMillis() < timeout) {
+				Thread.sleep(100);
+			}
+			for (int i = 0; i < REQUESTS / 5; i++) {
+				assertEquals(200, execute(client, i));
+			}
+
+			// Measure (one request at a time)
+			long start = System.nanoTime();
+			for (int i = 0; i < REQUESTS; i++) {
+				assertEquals(200, execute(client, i));
+			}
+			long duration = System.nanoTime() - start;
+			return duration / 1000d / REQUESTS;
+		} finally {
+			if (client != null) {
+				client.close();
+			}
+			gatewayBroker.stop();
+			if (remote) {
+				serviceBroker.stop();
+			}
+		}
+	}
+
+	protected int execute(CloseableHttpAsyncClient client, int i) throws Exception {
+		HttpResponse rsp = client.execute(new HttpGet("http://localhost:3000/math/add/" + i + "/1"), null).get(30,
+				TimeUnit.SECONDS);
+		return rsp.getStatusLine().getStatusCode();
+	}
+
+}
@@ -0,0 +1,151 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web;
+
+import java.net.ServerSocket;
+import java.util.LinkedList;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.apache.http.HttpResponse;
+import org.apache.http.client.methods.HttpGet;
+import org.apache.http.impl.nio.client.CloseableHttpAsyncClient;
+import org.apache.http.impl.nio.client.HttpAsyncClients;
+import org.junit.Test;
+
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.EventLoop;
+import junit.framework.TestCase;
+import services.moleculer.ServiceBroker;
+import services.moleculer.monitor.ConstantMonitor;
+import services.moleculer.service.Action;
+import services.moleculer.service.Service;
+import services.moleculer.web.netty.NettyServer;
+import services.moleculer.web.router.Alias;
+import services.moleculer.web.router.Route;
+
+public class NettyThroughputTest extends TestCase {
+
+	protected static final int CONNECTIONS = 64;
+	protected static final int REQUESTS = 20000;
+
+	protected int port;
+
+	@Test
+	public void testWorkerScaling() throws Exception {
+
+		// All connections are processed by the only event loop
+		Set<EventLoop> eventLoops = ConcurrentHashMap.newKeySet();
+		double single = measure(1, eventLoops);
+		assertEquals(1, eventLoops.size());
+
+		// The connections are distributed between the event loops
+		int workerThreads = Math.max(2, Runtime.getRuntime().availableProcessors());
+		eventLoops.clear();
+		double multi = measure(workerThreads, eventLoops);
+		assertTrue(eventLoops.size() > 1);
+
+		// Throughput is reported, not asserted (depends on the machine)
+		System.out.println("1 event loop: " + (long) single + " requests/sec");
+		System.out.println(workerThreads + " event loops: " + (long) multi + " requests/sec");
+	}
+
+	protected double measure(int workerThreads, Set<EventLoop> eventLoops) throws Exception {
+		ServiceBroker broker = ServiceBroker.builder().monitor(new ConstantMonitor()).build();
+		CloseableHttpAsyncClient client = null;
+		try {
+			try (ServerSocket socket = new ServerSocket(0)) {
+				port = socket.getLocalPort();
+			}
+			NettyServer server = new NettyServer(port);
+			server.setWorkerThreads(workerThreads);
+			broker.createService(server);
+
+			// Records the event loop of each request
+			ApiGateway gateway = new ApiGateway() {
+
+				@Override
+				public void service(WebRequest req, WebResponse rsp) throws Exception {
+					eventLoops.add(((ChannelHandlerContext) req.getInternalObject()).channel().eventLoop());
+					super.service(req, rsp);
+				}
+
+			};
+			Route route = new Route();
+			route.addAlias(Alias.GET, "/math/add/:a/:b", "math.add");
+			gateway.addRoute(route);
+			broker.createService("api", gateway);
+
+			broker.createService(new Service("math") {
+
+				@SuppressWarnings("unused")
+				Action add = ctx -> {
+					return ctx.params.get("a", 0) + ctx.params.get("b", 0);
+				};
+
+			});
+			broker.start();
+
+			client = HttpAsyncClients.custom().setMaxConnTotal(CONNECTIONS).setMaxConnPerRoute(CONNECTIONS).build();
+			client.start();
+
+			// Warm up
+			execute(client, REQUESTS / 10);
+
+			// Measure
+			long start = System.nanoTime();
+			execute(client, REQUESTS);
+			long duration = System.nanoTime() - start;
+			return REQUESTS / (duration / 1000000000d);
+		} finally {
+			if (client != null) {
+				client.close();
+			}
+			broker.stop();
+		}
+	}
+
+	protected void execute(CloseableHttpAsyncClient client, int count) throws Exception {
+		LinkedList<Future<HttpResponse>> futures = new LinkedList<>();
+		for (int i = 0; i < count; i++) {
+			futures.addLast(client.execute(new HttpGet("http://localhost:" + port + "/math/add/" + i + "/1"), null));
+			if (futures.size() >= CONNECTIONS * 4) {
+				check(futures.removeFirst());
+			}
+		}
+		while (!futures.isEmpty()) {
+			check(futures.removeFirst());
+		}
+	}
+
+	protected void check(Future<HttpResponse> future) throws Exception {
+		HttpResponse rsp = future.get(30, TimeUnit.SECONDS);
+		assertEquals(200, rsp.getStatusLine().getStatusCode());
+	}
+
+}
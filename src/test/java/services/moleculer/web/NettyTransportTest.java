@@ -0,0 +1,132 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2018 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web;
+
+import java.net.ServerSocket;
+
+import org.junit.Test;
+
+import io.netty.channel.epoll.Epoll;
+import io.netty.channel.epoll.EpollEventLoopGroup;
+import io.netty.channel.nio.NioEventLoopGroup;
+import junit.framework.TestCase;
+import services.moleculer.ServiceBroker;
+import services.moleculer.web.netty.NettyServer;
+
+public class NettyTransportTest extends TestCase {
+
+	@Test
+	public void testCustomBossGroup() throws Exception {
+		NioEventLoopGroup bossGroup = new NioEventLoopGroup(1);
+		NettyServer server = new NettyServer(3010);
+		server.setUseEpoll(true);
+		server.setBossGroup(bossGroup);
+		try {
+			server.started(new ServiceBroker());
+
+			// The worker group follows the transport of the custom group
+			assertTrue(server.getWorkerGroup() instanceof NioEventLoopGroup);
+		} finally {
+			server.stopped();
+			bossGroup.shutdownGracefully();
+		}
+	}
+
+	@Test
+	public void testReusePort() throws Exception {
+		if (!Epoll.isAvailable()) {
+			return;
+		}
+		ListenerCounter server = new ListenerCounter(3013);
+		server.setReusePort(true);
+		server.setWorkerThreads(3);
+		try {
+			server.started(new ServiceBroker());
+
+			// One listening socket per event loop
+			assertEquals(3, server.getListeners());
+		} finally {
+			server.stopped();
+		}
+	}
+
+	@Test
+	public void testBindFailure() throws Exception {
+		NioEventLoopGroup bossGroup = new NioEventLoopGroup(1);
+		NioEventLoopGroup workerGroup = new NioEventLoopGroup(2);
+		try (ServerSocket socket = new ServerSocket(0)) {
+			ListenerCounter server = new ListenerCounter(socket.getLocalPort());
+			server.setBossGroup(bossGroup);
+			server.setWorkerGroup(workerGroup);
+			try {
+				server.started(new ServiceBroker());
+				fail("The port is in use!");
+			} catch (Exception expected) {
+			}
+
+			// The groups are released
+			assertEquals(0, server.getListeners());
+			assertTrue(bossGroup.isShuttingDown());
+			assertTrue(workerGroup.isShuttingDown());
+		} finally {
+			bossGroup.shutdownGracefully();
+			workerGroup.shutdownGracefully();
+		}
+	}
+
+	@Test
+	public void testMismatchedGroups() throws Exception {
+		if (!Epoll.isAvailable()) {
+			return;
+		}
+		NioEventLoopGroup bossGroup = new NioEventLoopGroup(1);
+		EpollEventLoopGroup workerGroup = new EpollEventLoopGroup(1);
+		NettyServer server = new NettyServer(3011);
+		server.setBossGroup(bossGroup);
+		server.setWorkerGroup(workerGroup);
+		try {
+			server.started(new ServiceBroker());
+			fail("Mixed transports must be rejected!");
+		} catch (IllegalStateException expected) {
+		} finally {
+			bossGroup.shutdownGracefully();
+			workerGroup.shutdownGracefully();
+		}
+	}
+
+	protected static class ListenerCounter extends NettyServer {
+
+		protected ListenerCounter(int port) {
+			super(port);
+		}
+
+		protected int getListeners() {
+			return serverChannels.size();
+		}
+
+	}
+
+}
@@ -0,0 +1,389 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web;
+
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpServerCodec;
+import io.netty.handler.codec.http.HttpVersion;
+import junit.framework.TestCase;
+import services.moleculer.ServiceBroker;
+import services.moleculer.web.netty.MoleculerHandler;
+import services.moleculer.web.netty.NettyWebRequest;
+
+public class NettyWebRequestTest extends TestCase {
+
+	protected static final int UPLOAD_SIZE = 100 * 1024 * 1024;
+	protected static final int CHUNK_SIZE = 8192;
+
+	protected ServiceBroker broker;
+	protected EmbeddedChannel channel;
+	protected ChannelHandlerContext ctx;
+
+	@Test
+	public void testStreamBody() throws Exception {
+		byte[] bytes = "{\"a\":1,\"b\":2}".getBytes(StandardCharsets.UTF_8);
+		NettyWebRequest req = createRequest("application/json", bytes.length * 2);
+		AtomicLong received = new AtomicLong();
+		CountDownLatch closed = new CountDownLatch(1);
+		req.getBody().onPacket((data, cause, close) -> {
+			if (data != null) {
+				received.addAndGet(data.length);
+			}
+			if (close) {
+				closed.countDown();
+			}
+		});
+
+		// Direct and heap buffers
+		ByteBuf direct = Unpooled.directBuffer().writeBytes(bytes);
+		req.receive(direct, false);
+		assertEquals(bytes.length, direct.readableBytes());
+		direct.release();
+		req.receive(Unpooled.wrappedBuffer(bytes), false);
+		req.receive(Unpooled.EMPTY_BUFFER, true);
+		assertTrue(closed.await(5, TimeUnit.SECONDS));
+		assertEquals(bytes.length * 2, received.get());
+	}
+
+	@Test
+	public void testInboundBackpressure() throws Exception {
+		channel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(16 * 1024, 32 * 1024));
+		NettyWebRequest req = createRequest("application/octet-stream", 1024 * 1024);
+
+		// Slow consumer
+		CountDownLatch blocker = new CountDownLatch(1);
+		CountDownLatch closed = new CountDownLatch(1);
+		req.getBody().onPacket((data, cause, close) -> {
+			blocker.await();
+			if (close) {
+				closed.countDown();
+			}
+		});
+		byte[] bytes = new byte[8 * 1024];
+		for (int i = 0; i < 3; i++) {
+			req.receive(Unpooled.wrappedBuffer(bytes), false);
+		}
+		assertTrue(channel.config().isAutoRead());
+
+		// Above the high water mark -> pause reading
+		for (int i = 0; i < 2; i++) {
+			req.receive(Unpooled.wrappedBuffer(bytes), false);
+		}
+		assertFalse(channel.config().isAutoRead());
+
+		// Consumer is ready -> resume reading
+		req.receive(Unpooled.EMPTY_BUFFER, true);
+		blocker.countDown();
+		assertTrue(closed.await(5, TimeUnit.SECONDS));
+		assertTrue(channel.config().isAutoRead());
+	}
+
+	@Test
+	public void testMissingConsumer() throws Exception {
+		channel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(16 * 1024, 32 * 1024));
+		int size = 8 * 1024 * 1024;
+		NettyWebRequest req = createRequest("application/octet-stream", size);
+
+		// No listener -> the client can send only up to the high water mark
+		int sent = 0;
+		byte[] bytes = new byte[CHUNK_SIZE];
+		while (sent < size && channel.config().isAutoRead()) {
+			req.receive(Unpooled.wrappedBuffer(bytes), false);
+			sent += bytes.length;
+		}
+		assertFalse(channel.config().isAutoRead());
+		assertTrue(req.getPendingBytes() <= 32 * 1024 + CHUNK_SIZE);
+		assertEquals(sent, req.getPendingBytes());
+
+		// Attach consumer -> all packets are delivered
+		AtomicLong received = new AtomicLong();
+		CountDownLatch closed = new CountDownLatch(1);
+		req.getBody().onPacket((data, cause, close) -> {
+			if (data != null) {
+				received.addAndGet(data.length);
+			}
+			if (close) {
+				closed.countDown();
+			}
+		});
+		sent += send(req, size - sent);
+		assertTrue(closed.await(5, TimeUnit.SECONDS));
+		assertEquals(size, sent);
+		assertEquals(size, received.get());
+		assertEquals(0, req.getPendingBytes());
+		assertTrue(channel.config().isAutoRead());
+	}
+
+	@Test
+	public void testUnreadBody() throws Exception {
+
+		// Gateway without mappings (rejects the request without reading the body)
+		ApiGateway gateway = new ApiGateway() {
+
+			@Override
+			public void service(WebRequest req, WebResponse rsp) throws Exception {
+				rsp.setStatus(404);
+				rsp.setHeader("Content-Length", "0");
+				rsp.end();
+			}
+
+		};
+		EventLoopGroup group = new NioEventLoopGroup(1);
+		try {
+			ServerBootstrap bootstrap = new ServerBootstrap();
+			bootstrap.group(group).channel(NioServerSocketChannel.class);
+			bootstrap.childHandler(new ChannelInitializer<Channel>() {
+
+				@Override
+				protected void initChannel(Channel ch) throws Exception {
+					ch.pipeline().addLast(new HttpServerCodec());
+					ch.pipeline().addLast(new MoleculerHandler(gateway, broker, null));
+				}
+
+			});
+			Channel server = bootstrap.bind("127.0.0.1", 0).sync().channel();
+			int port = ((InetSocketAddress) server.localAddress()).getPort();
+			try (Socket socket = new Socket("127.0.0.1", port)) {
+				socket.setSoTimeout(10000);
+				OutputStream out = socket.getOutputStream();
+				InputStream in = socket.getInputStream();
+
+				// POST 8 MB to an unmapped path (keep-alive connection)
+				int size = 8 * 1024 * 1024;
+				Thread writer = new Thread(() -> {
+					try {
+						out.write(("POST /unmapped HTTP/1.1\r\nHost: localhost\r\n"
+								+ "Content-Type: application/octet-stream\r\nContent-Length: " + size + "\r\n\r\n")
+										.getBytes(StandardCharsets.US_ASCII));
+						byte[] bytes = new byte[CHUNK_SIZE];
+						for (int sent = 0; sent < size; sent += bytes.length) {
+							out.write(bytes);
+						}
+						out.flush();
+					} catch (Exception cause) {
+						cause.printStackTrace();
+					}
+				});
+				writer.start();
+				assertTrue(readResponse(in).startsWith("HTTP/1.1 404"));
+
+				// The server reads (and drops) the rest of the body
+				writer.join(10000);
+				assertFalse(writer.isAlive());
+
+				// Second request on the same connection
+				out.write("GET /next HTTP/1.1\r\nHost: localhost\r\n\r\n".getBytes(StandardCharsets.US_ASCII));
+				out.flush();
+				assertTrue(readResponse(in).startsWith("HTTP/1.1 404"));
+			} finally {
+				server.close().sync();
+			}
+		} finally {
+			group.shutdownGracefully();
+		}
+	}
+
+	protected String readResponse(InputStream in) throws Exception {
+
+		// Response headers (the body is empty)
+		StringBuilder tmp = new StringBuilder();
+		while (tmp.length() < 4 || tmp.lastIndexOf("\r\n\r\n") != tmp.length() - 4) {
+			int b = in.read();
+			assertTrue(b > -1);
+			tmp.append((char) b);
+		}
+		return tmp.toString();
+	}
+
+	@Test
+	public void testSlowConsumer() throws Exception {
+		channel.config().setWriteBufferWaterMark(new WriteBufferWaterMark(16 * 1024, 32 * 1024));
+		int size = 4 * 1024 * 1024;
+		NettyWebRequest req = createRequest("application/octet-stream", size);
+
+		// Consumer processes one packet per millisecond
+		AtomicLong received = new AtomicLong();
+		CountDownLatch closed = new CountDownLatch(1);
+		req.getBody().onPacket((data, cause, close) -> {
+			if (data != null) {
+				Thread.sleep(1);
+				received.addAndGet(data.length);
+			}
+			if (close) {
+				closed.countDown();
+			}
+		});
+
+		// Buffered (unprocessed) bytes never exceed the high water mark
+		AtomicLong maxPending = new AtomicLong();
+		byte[] bytes = new byte[CHUNK_SIZE];
+		for (int sent = 0; sent < size; sent += bytes.length) {
+			waitForAutoRead();
+			req.receive(Unpooled.wrappedBuffer(bytes), sent + bytes.length == size);
+			maxPending.accumulateAndGet(req.getPendingBytes(), Math::max);
+		}
+		assertTrue(closed.await(20, TimeUnit.SECONDS));
+		assertEquals(size, received.get());
+		assertTrue(maxPending.get() <= 32 * 1024 + CHUNK_SIZE);
+	}
+
+	@Test
+	public void testAggregatedBody() throws Exception {
+		byte[] bytes = "{\"a\":1,\"b\":2}".getBytes(StandardCharsets.UTF_8);
+		NettyWebRequest req = createRequest("application/json", bytes.length, 4096);
+		assertNotNull(req.getBodyBytes());
+
+		// Body in two chunks
+		req.receive(Unpooled.wrappedBuffer(bytes, 0, 5), false);
+		req.receive(Unpooled.wrappedBuffer(bytes, 5, bytes.length - 5), true);
+		assertEquals(new String(bytes, StandardCharsets.UTF_8),
+				new String(req.getBodyBytes(), StandardCharsets.UTF_8));
+
+		// Larger body -> streaming
+		req = createRequest("application/json", 4097, 4096);
+		assertNull(req.getBodyBytes());
+		assertNotNull(req.getBody());
+
+		// Multipart -> streaming
+		req = createRequest("multipart/form-data; boundary=abc", 100, 4096);
+		assertNull(req.getBodyBytes());
+	}
+
+	@Test
+	public void testMultipartUpload() throws Exception {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return;
+		}
+		com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) bean;
+		long threadID = Thread.currentThread().getId();
+
+		String boundary = "----MoleculerBoundary";
+		byte[] head = ("--" + boundary + "\r\n"
+				+ "Content-Disposition: form-data; name=\"file\"; filename=\"upload.bin\"\r\n"
+				+ "Content-Type: application/octet-stream\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+		byte[] tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+		NettyWebRequest req = createRequest("multipart/form-data; boundary=" + boundary,
+				head.length + UPLOAD_SIZE + tail.length);
+		req.getBody().onPacket((data, cause, close) -> {
+
+			// Drop data
+		});
+
+		// Pooled direct buffer, reused for all chunks (as the HttpObjectDecoder's slices)
+		ByteBuf chunk = channel.alloc().directBuffer(CHUNK_SIZE);
+		for (int i = 0; i < CHUNK_SIZE; i++) {
+			chunk.writeByte('a' + i % 26);
+		}
+		try {
+			req.receive(Unpooled.wrappedBuffer(head), false);
+
+			// Measure
+			long allocated = mx.getThreadAllocatedBytes(threadID);
+			for (int i = 0; i < UPLOAD_SIZE / CHUNK_SIZE; i++) {
+				req.receive(chunk, false);
+			}
+			allocated = mx.getThreadAllocatedBytes(threadID) - allocated;
+			assertTrue(allocated < UPLOAD_SIZE / 10);
+
+			req.receive(Unpooled.wrappedBuffer(tail), true);
+		} finally {
+			chunk.release();
+		}
+	}
+
+	protected int send(NettyWebRequest req, int size) throws Exception {
+		byte[] bytes = new byte[CHUNK_SIZE];
+		for (int sent = 0; sent < size; sent += bytes.length) {
+			waitForAutoRead();
+			req.receive(Unpooled.wrappedBuffer(bytes), sent + bytes.length == size);
+		}
+		return size;
+	}
+
+	protected void waitForAutoRead() throws Exception {
+		long timeout = System.currentTimeMillis() + 5000;
+		while (!channel.config().isAutoRead()) {
+			assertTrue(System.currentTimeMillis() < timeout);
+			Thread.sleep(1);
+		}
+	}
+
+	protected NettyWebRequest createRequest(String contentType, int contentLength) throws Exception {
+		return createRequest(contentType, contentLength, 0);
+	}
+
+	protected NettyWebRequest createRequest(String contentType, int contentLength, int aggregationThreshold)
+			throws Exception {
+		DefaultHttpHeaders headers = new DefaultHttpHeaders();
+		headers.set("Content-Type", contentType);
+		headers.set("Content-Length", Integer.toString(contentLength));
+		DefaultHttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.POST, "/upload",
+				headers);
+		return new NettyWebRequest(ctx, request, headers, broker, "/upload", aggregationThreshold);
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		broker = ServiceBroker.builder().build();
+		channel = new EmbeddedChannel(new ChannelInboundHandlerAdapter());
+		ctx = channel.pipeline().firstContext();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (channel != null) {
+			channel.finishAndReleaseAll();
+		}
+	}
+
+}
@@ -0,0 +1,364 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.LinkedList;
+
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelOutboundHandlerAdapter;
+import io.netty.channel.FileRegion;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultHttpHeaders;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpResponseDecoder;
+import io.netty.handler.codec.http.HttpResponseEncoder;
+import io.netty.handler.codec.http.HttpVersion;
+import junit.framework.TestCase;
+import services.moleculer.web.common.HttpConstants;
+import services.moleculer.web.netty.MoleculerHandler;
+import services.moleculer.web.netty.NettyWebRequest;
+import services.moleculer.web.netty.NettyWebResponse;
+
+public class NettyWebResponseTest extends TestCase implements HttpConstants {
+
+	protected static final int ITERATIONS = 100000;
+
+	protected static final byte[] JSON = "{\"a\":1,\"b\":2,\"c\":3}".getBytes(StandardCharsets.UTF_8);
+
+	protected EmbeddedChannel channel;
+	protected ChannelHandlerContext ctx;
+	protected int flushes;
+
+	@Test
+	public void testSingleWrite() throws Exception {
+
+		// Known Content-Length -> one message, one flush
+		NettyWebResponse rsp = createResponse();
+		rsp.setHeader(CONTENT_TYPE, CONTENT_TYPE_JSON);
+		rsp.setHeader(CONTENT_LENGTH, Integer.toString(JSON.length));
+		rsp.send(JSON);
+		rsp.end();
+		assertEquals(1, flushes);
+		assertEquals(1, channel.outboundMessages().size());
+		String txt = readOutbound();
+		assertTrue(txt.startsWith("HTTP/1.1 200 OK\r\n"));
+		assertTrue(txt.contains("Content-Type: application/json;charset=utf-8\r\n"));
+		assertTrue(txt.endsWith("\r\n\r\n{\"a\":1,\"b\":2,\"c\":3}"));
+		assertTrue(channel.isOpen());
+
+		// Multiple parts with Content-Length -> one flush
+		rsp = createResponse();
+		rsp.setHeader(CONTENT_LENGTH, Integer.toString(JSON.length * 2));
+		rsp.send(JSON);
+		rsp.send(JSON);
+		assertEquals(0, flushes);
+		rsp.end();
+		assertEquals(1, flushes);
+		assertTrue(readOutbound().endsWith("\r\n\r\n{\"a\":1,\"b\":2,\"c\":3}{\"a\":1,\"b\":2,\"c\":3}"));
+		assertTrue(channel.isOpen());
+
+		// Empty response
+		rsp = createResponse();
+		rsp.setStatus(404);
+		rsp.setHeader(CONTENT_LENGTH, "0");
+		rsp.end();
+		assertEquals(1, flushes);
+		assertTrue(readOutbound().startsWith("HTTP/1.1 404 Not Found\r\n"));
+		assertTrue(channel.isOpen());
+
+		// Unknown Content-Length -> chunked transfer encoding
+		rsp = createResponse();
+		rsp.send(JSON);
+		rsp.end();
+		txt = readOutbound();
+		assertTrue(txt.contains("Transfer-Encoding: chunked\r\n"));
+		assertTrue(txt.endsWith("\r\n\r\n13\r\n{\"a\":1,\"b\":2,\"c\":3}\r\n0\r\n\r\n"));
+		assertTrue(channel.isOpen());
+
+		// "Connection: close" request header
+		createRequest();
+		DefaultHttpHeaders headers = new DefaultHttpHeaders();
+		headers.set(CONNECTION, CLOSE);
+		DefaultHttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/test");
+		NettyWebRequest req = new NettyWebRequest(ctx, request, headers, null, "/test");
+		rsp = new NettyWebResponse(ctx, req);
+		rsp.send(JSON);
+		rsp.end();
+		txt = readOutbound();
+		assertTrue(txt.contains("Connection: close\r\n"));
+		assertTrue(txt.endsWith("\r\n\r\n{\"a\":1,\"b\":2,\"c\":3}"));
+		assertFalse(channel.isOpen());
+	}
+
+	@Test
+	public void testSendFile() throws Exception {
+		File file = File.createTempFile("moleculer-", ".bin");
+		try {
+			Files.write(file.toPath(), JSON);
+			NettyWebResponse rsp = createResponse();
+			assertTrue(rsp.sendFile(file, 0, file.length()));
+			rsp.end();
+
+			// Header, FileRegion, last content
+			ByteBuf header = channel.readOutbound();
+			String txt = header.toString(StandardCharsets.UTF_8);
+			header.release();
+			assertTrue(txt.contains("Content-Length: " + JSON.length + "\r\n"));
+			Object region = channel.readOutbound();
+			assertTrue(region instanceof FileRegion);
+			assertEquals(JSON.length, ((FileRegion) region).count());
+			((FileRegion) region).release();
+			readOutbound();
+			assertTrue(channel.isOpen());
+		} finally {
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testUnknownLength() throws Exception {
+
+		// File of unknown size (ServeStatic streams it without Content-Length)
+		byte[] file = new byte[30000];
+		for (int i = 0; i < file.length; i++) {
+			file[i] = (byte) ('a' + i % 26);
+		}
+		NettyWebResponse rsp = createResponse();
+		for (int i = 0; i < file.length; i += 10000) {
+			rsp.send(Arrays.copyOfRange(file, i, i + 10000));
+		}
+		rsp.end();
+
+		// The body is framed exactly once
+		ByteBuf bytes = Unpooled.buffer();
+		ByteBuf buf;
+		while ((buf = channel.readOutbound()) != null) {
+			bytes.writeBytes(buf);
+			buf.release();
+		}
+		String txt = bytes.toString(StandardCharsets.ISO_8859_1);
+		int header = txt.indexOf("\r\n\r\n");
+		assertTrue(txt.substring(0, header + 2).contains("Transfer-Encoding: chunked\r\n"));
+		assertTrue(txt.substring(header).startsWith("\r\n\r\n2710\r\nabcdef"));
+		EmbeddedChannel client = new EmbeddedChannel(new HttpResponseDecoder(), new HttpObjectAggregator(1024 * 1024));
+		try {
+			client.writeInbound(bytes);
+			FullHttpResponse response = client.readInbound();
+			try {
+				assertTrue(Arrays.equals(file, ByteBufUtil.getBytes(response.content())));
+			} finally {
+				response.release();
+			}
+			assertNull(client.readInbound());
+		} finally {
+			client.finishAndReleaseAll();
+		}
+	}
+
+	@Test
+	public void testPipelining() throws Exception {
+		LinkedList<NettyWebResponse> queue = new LinkedList<>();
+		NettyWebRequest req = createRequest();
+		NettyWebResponse rsp1 = new NettyWebResponse(ctx, req, queue);
+		NettyWebResponse rsp2 = new NettyWebResponse(ctx, req, queue);
+		NettyWebResponse rsp3 = new NettyWebResponse(ctx, req, queue);
+
+		// Second and third responses are ready first
+		sendText(rsp3, "third");
+		sendText(rsp2, "second");
+		assertNull(channel.readOutbound());
+		assertEquals(0, flushes);
+
+		// First response -> all responses, in order of the requests
+		sendText(rsp1, "first");
+		String txt = readOutbound();
+		int i1 = txt.indexOf("first");
+		int i2 = txt.indexOf("second");
+		int i3 = txt.indexOf("third");
+		assertTrue(i1 > 0 && i1 < i2 && i2 < i3);
+		assertTrue(queue.isEmpty());
+		assertTrue(channel.isOpen());
+
+		// Next response is written without delay
+		NettyWebResponse rsp4 = new NettyWebResponse(ctx, req, queue);
+		rsp4.setHeader(CONTENT_LENGTH, "10");
+		rsp4.send("fou".getBytes(StandardCharsets.UTF_8));
+		assertEquals(0, channel.outboundMessages().size());
+		rsp4.send("rth-resp".getBytes(StandardCharsets.UTF_8));
+		rsp4.end();
+		assertTrue(readOutbound().endsWith("\r\n\r\nfourth-resp"));
+		assertTrue(queue.isEmpty());
+	}
+
+	@Test
+	public void testPipelinedError() throws Exception {
+		LinkedList<WebResponse> pending = new LinkedList<>();
+		ApiGateway gateway = new ApiGateway() {
+
+			@Override
+			public void service(WebRequest req, WebResponse rsp) throws Exception {
+				pending.add(rsp);
+			}
+
+		};
+		EmbeddedChannel ch = new EmbeddedChannel(new HttpResponseEncoder(), new MoleculerHandler(gateway, null, null));
+		try {
+
+			// First request is still in progress
+			ch.writeInbound(new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/first"));
+			assertEquals(1, pending.size());
+
+			// Second (pipelined) request fails (WebSocket upgrade without registry)
+			DefaultHttpRequest upgrade = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/ws");
+			upgrade.headers().set("Upgrade", "websocket");
+			ch.writeInbound(upgrade);
+			assertNull(ch.readOutbound());
+
+			// The error response follows the first response
+			sendText((NettyWebResponse) pending.removeFirst(), "first");
+			StringBuilder tmp = new StringBuilder();
+			ByteBuf buf;
+			while ((buf = ch.readOutbound()) != null) {
+				tmp.append(buf.toString(StandardCharsets.UTF_8));
+				buf.release();
+			}
+			String txt = tmp.toString();
+			int first = txt.indexOf("first");
+			int error = txt.indexOf("HTTP/1.1 ", first);
+			assertTrue(first > 0 && error > first);
+		} finally {
+			ch.finishAndReleaseAll();
+		}
+	}
+
+	protected void sendText(NettyWebResponse rsp, String text) throws Exception {
+		byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+		rsp.setHeader(CONTENT_LENGTH, Integer.toString(bytes.length));
+		rsp.send(bytes);
+		rsp.end();
+	}
+
+	@Test
+	public void testAllocation() throws Exception {
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (!(bean instanceof com.sun.management.ThreadMXBean)) {
+			return;
+		}
+		com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) bean;
+		long threadID = Thread.currentThread().getId();
+		NettyWebRequest req = createRequest();
+
+		// Warm up
+		for (int i = 0; i < ITERATIONS; i++) {
+			sendJson(req);
+		}
+
+		// Measure
+		long allocated = mx.getThreadAllocatedBytes(threadID);
+		long start = System.nanoTime();
+		flushes = 0;
+		for (int i = 0; i < ITERATIONS; i++) {
+			sendJson(req);
+		}
+		long duration = System.nanoTime() - start;
+		allocated = mx.getThreadAllocatedBytes(threadID) - allocated;
+
+		System.out.println("Allocated bytes per response: " + (allocated / ITERATIONS));
+		System.out.println("Flushes per response: " + ((double) flushes / ITERATIONS));
+		System.out.println("Nanoseconds per response: " + (duration / ITERATIONS));
+		assertEquals(ITERATIONS, flushes);
+	}
+
+	protected void sendJson(NettyWebRequest req) throws Exception {
+		NettyWebResponse rsp = new NettyWebResponse(ctx, req);
+		rsp.setHeader(CONTENT_TYPE, CONTENT_TYPE_JSON);
+		rsp.setHeader(CONTENT_LENGTH, Integer.toString(JSON.length));
+		rsp.send(JSON);
+		rsp.end();
+		ByteBuf buf;
+		while ((buf = channel.readOutbound()) != null) {
+			buf.release();
+		}
+	}
+
+	protected NettyWebResponse createResponse() throws Exception {
+		NettyWebRequest req = createRequest();
+		return new NettyWebResponse(ctx, req);
+	}
+
+	protected NettyWebRequest createRequest() throws Exception {
+		if (channel == null) {
+			channel = new EmbeddedChannel();
+			channel.pipeline().addLast("counter", new ChannelOutboundHandlerAdapter() {
+
+				@Override
+				public void flush(ChannelHandlerContext ctx) throws Exception {
+					flushes++;
+					super.flush(ctx);
+				}
+
+			});
+			channel.pipeline().addLast("encoder", new HttpResponseEncoder());
+			channel.pipeline().addLast("handler", new ChannelInboundHandlerAdapter());
+			ctx = channel.pipeline().context("handler");
+		}
+		flushes = 0;
+		DefaultHttpRequest request = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/test");
+		return new NettyWebRequest(ctx, request, new DefaultHttpHeaders(), null, "/test");
+	}
+
+	protected String readOutbound() {
+		StringBuilder tmp = new StringBuilder();
+		ByteBuf buf;
+		while ((buf = channel.readOutbound()) != null) {
+			tmp.append(buf.toString(StandardCharsets.UTF_8));
+			buf.release();
+		}
+		return tmp.toString();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (channel != null) {
+			channel.finishAndReleaseAll();
+		}
+	}
+
+}
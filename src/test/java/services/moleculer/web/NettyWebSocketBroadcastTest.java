@@ -0,0 +1,216 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web;
+
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.junit.Test;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.DefaultEventLoopGroup;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.channel.local.LocalAddress;
+import io.netty.channel.local.LocalChannel;
+import io.netty.channel.local.LocalServerChannel;
+import io.netty.handler.codec.http.websocketx.BinaryWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocket13FrameEncoder;
+import junit.framework.TestCase;
+import services.moleculer.ServiceBroker;
+import services.moleculer.web.common.Endpoint;
+import services.moleculer.web.netty.NettyWebSocketRegistry;
+
+public class NettyWebSocketBroadcastTest extends TestCase {
+
+	protected static final int SOCKETS = 1000;
+	protected static final int MESSAGES = 200;
+
+	@Test
+	public void testBroadcastThroughput() throws Exception {
+		ServiceBroker broker = new ServiceBroker();
+
+		// Previous implementation (one frame and flush per socket)
+		NettyWebSocketRegistry perSocket = new NettyWebSocketRegistry(broker, 15) {
+
+			@Override
+			protected void send(Endpoint[] endpoints, String message) {
+				for (Endpoint endpoint : endpoints) {
+					endpoint.send(message);
+				}
+			}
+
+		};
+		NettyWebSocketRegistry encodeOnce = new NettyWebSocketRegistry(broker, 15);
+
+		// Warm up
+		measure(perSocket, MESSAGES / 4);
+		measure(encodeOnce, MESSAGES / 4);
+
+		double before = measure(perSocket, MESSAGES);
+		double after = measure(encodeOnce, MESSAGES);
+		System.out.println("Frames/sec (encoded per socket): " + (long) before);
+		System.out.println("Frames/sec (encoded once): " + (long) after);
+		assertTrue(after > 0);
+
+		perSocket.stopped();
+		encodeOnce.stopped();
+	}
+
+	@Test
+	public void testBinary() throws Exception {
+		NettyWebSocketRegistry registry = new NettyWebSocketRegistry(new ServiceBroker(), 15);
+		String path = "/ws/feed";
+		LinkedList<EmbeddedChannel> channels = new LinkedList<>();
+		for (int i = 0; i < 3; i++) {
+			channels.add(new EmbeddedChannel(new ChannelInboundHandlerAdapter() {
+
+				@Override
+				public void handlerAdded(ChannelHandlerContext ctx) throws Exception {
+					registry.register(path, ctx);
+				}
+
+			}));
+		}
+
+		// Pre-serialized bytes are sent without conversion
+		byte[] bytes = "binary-payload".getBytes(StandardCharsets.UTF_8);
+		registry.send(path, bytes);
+		for (EmbeddedChannel channel : channels) {
+			channel.runPendingTasks();
+			Object frame = channel.readOutbound();
+			assertTrue(frame instanceof BinaryWebSocketFrame);
+			ByteBuf content = ((BinaryWebSocketFrame) frame).content();
+			assertTrue(ByteBufUtil.equals(content, Unpooled.wrappedBuffer(bytes)));
+			((BinaryWebSocketFrame) frame).release();
+			channel.finishAndReleaseAll();
+		}
+		registry.stopped();
+	}
+
+	protected double measure(NettyWebSocketRegistry registry, int messages) throws Exception {
+		EventLoopGroup group = new DefaultEventLoopGroup(4);
+		LinkedList<Channel> clients = new LinkedList<>();
+		AtomicLong received = new AtomicLong();
+		String path = "/ws/test";
+		try {
+			LocalAddress address = new LocalAddress("broadcast-" + System.nanoTime());
+			ServerBootstrap bootstrap = new ServerBootstrap();
+			bootstrap.group(group).channel(LocalServerChannel.class);
+			bootstrap.childHandler(new ChannelInitializer<Channel>() {
+
+				@Override
+				protected void initChannel(Channel ch) throws Exception {
+					ch.pipeline().addLast("encoder", new WebSocket13FrameEncoder(false));
+					ch.pipeline().addLast("handler", new ChannelInboundHandlerAdapter() {
+
+						@Override
+						public void channelActive(ChannelHandlerContext ctx) throws Exception {
+							registry.register(path, ctx);
+							super.channelActive(ctx);
+						}
+
+					});
+				}
+
+			});
+			Channel server = bootstrap.bind(address).sync().channel();
+
+			// Clients count the received bytes
+			Bootstrap client = new Bootstrap();
+			client.group(group).channel(LocalChannel.class);
+			client.handler(new ChannelInitializer<Channel>() {
+
+				@Override
+				protected void initChannel(Channel ch) throws Exception {
+					ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+
+						@Override
+						public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+							ByteBuf buffer = (ByteBuf) msg;
+							received.addAndGet(buffer.readableBytes());
+							buffer.release();
+						}
+
+					});
+				}
+
+			});
+			for (int i = 0; i < SOCKETS; i++) {
+				clients.add(client.connect(address).sync().channel());
+			}
+			while (registry.countClients().getOrDefault(path, 0) < SOCKETS) {
+				Thread.sleep(10);
+			}
+
+			// Broadcast
+			String message = createMessage();
+			long expected = (long) SOCKETS * messages * (message.length() + 4);
+			long start = System.nanoTime();
+			for (int i = 0; i < messages; i++) {
+				registry.send(path, message);
+			}
+			long timeout = System.currentTimeMillis() + 60000;
+			while (received.get() < expected && System.currentTimeMillis() < timeout) {
+				Thread.sleep(1);
+			}
+			long duration = System.nanoTime() - start;
+			assertEquals(expected, received.get());
+
+			for (Channel channel : clients) {
+				channel.close();
+			}
+			server.close().sync();
+			return (double) SOCKETS * messages / (duration / 1000000000d);
+		} finally {
+			group.shutdownGracefully().sync();
+
+			// Remove the closed endpoints
+			registry.run();
+		}
+	}
+
+	protected String createMessage() {
+		StringBuilder tmp = new StringBuilder("{\"series\":[");
+		for (int i = 0; i < 20; i++) {
+			if (i > 0) {
+				tmp.append(',');
+			}
+			tmp.append("{\"name\":\"cpu-").append(i).append("\",\"value\":").append(i * 7 % 100).append('}');
+		}
+		return tmp.append("]}").toString();
+	}
+
+}
@@ -0,0 +1,207 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2018 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web;
+
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.function.BooleanSupplier;
+
+import org.java_websocket.client.WebSocketClient;
+import org.java_websocket.drafts.Draft_6455;
+import org.java_websocket.handshake.ServerHandshake;
+import org.junit.Test;
+
+import io.datatree.Tree;
+import junit.framework.TestCase;
+import services.moleculer.ServiceBroker;
+import services.moleculer.transporter.InternalTransporter;
+import services.moleculer.web.common.WebSocketSubscriptions.Subscriber;
+import services.moleculer.web.netty.NettyServer;
+import services.moleculer.web.router.MappingPolicy;
+import services.moleculer.web.router.Route;
+
+/**
+ * Three gateway nodes in one JVM, connected with the in-JVM transporter. The
+ * WebSocket messages are delivered only to the nodes with subscribers.
+ */
+public class NettyWebSocketClusterTest extends TestCase {
+
+	protected final ServiceBroker[] brokers = new ServiceBroker[3];
+	protected final ApiGateway[] gateways = new ApiGateway[3];
+	protected final LinkedList<WebSocketClient> clients = new LinkedList<>();
+
+	@Override
+	protected void setUp() throws Exception {
+		for (int i = 0; i < brokers.length; i++) {
+			brokers[i] = ServiceBroker.builder().nodeID("node" + i).transporter(new InternalTransporter()).build();
+
+			NettyServer server = new NettyServer();
+			server.setPort(3100 + i);
+			brokers[i].createService(server);
+
+			gateways[i] = new ApiGateway();
+			gateways[i].setWebSocketAdvertiseDelay(10);
+
+			// Publish all actions (including "api.deliverWebSocket")
+			Route route = new Route();
+			route.setMappingPolicy(MappingPolicy.ALL);
+			gateways[i].addRoute(route);
+			brokers[i].createService(gateways[i]);
+			brokers[i].start();
+		}
+	}
+
+	// ---------------- TESTS ----------------
+
+	@Test
+	public void testFanOut() throws Exception {
+		ConcurrentLinkedQueue<String> a = new ConcurrentLinkedQueue<>();
+		ConcurrentLinkedQueue<String> b = new ConcurrentLinkedQueue<>();
+		WebSocketClient clientA = connect(3101, "/ws/a", a);
+		connect(3102, "/ws/b", b);
+
+		// Wait for the advertisements
+		ApiGateway gateway = gateways[0];
+		waitFor(() -> !gateway.getWebSocketSubscriptions().find("/ws/a").isEmpty()
+				&& !gateway.getWebSocketSubscriptions().find("/ws/b").isEmpty());
+		List<Subscriber> subscribers = gateway.getWebSocketSubscriptions().find("/ws/a");
+		assertEquals(1, subscribers.size());
+		assertEquals("node1", subscribers.get(0).getNodeID());
+		subscribers = gateway.getWebSocketSubscriptions().find("/ws/b");
+		assertEquals(1, subscribers.size());
+		assertEquals("node2", subscribers.get(0).getNodeID());
+		assertTrue(gateway.getWebSocketSubscriptions().find("/ws/c").isEmpty());
+
+		// Send from a node without subscribers
+		Tree data = new Tree();
+		data.put("value", 1);
+		gateway.sendWebSocket("/ws/a", data);
+		waitFor(() -> !a.isEmpty());
+		assertEquals("{\"value\":1}", a.poll());
+
+		// Emit from any node (one gateway receives and forwards it)
+		Tree packet = new Tree();
+		packet.put("path", "/ws/b");
+		packet.put("data", 2);
+		brokers[0].emit("websocket.publish", packet);
+		waitFor(() -> !b.isEmpty());
+		assertEquals("2", b.poll());
+		Thread.sleep(200);
+		assertTrue(a.isEmpty());
+		assertTrue(b.isEmpty());
+
+		// The closed path is withdrawn
+		clientA.closeBlocking();
+		waitFor(() -> gateway.getWebSocketSubscriptions().find("/ws/a").isEmpty());
+		assertFalse(gateway.getWebSocketSubscriptions().find("/ws/b").isEmpty());
+	}
+
+	@Test
+	public void testRestCall() throws Exception {
+		ConcurrentLinkedQueue<String> a = new ConcurrentLinkedQueue<>();
+		connect(3101, "/ws/a", a);
+		ApiGateway gateway = gateways[0];
+		waitFor(() -> !gateway.getWebSocketSubscriptions().find("/ws/a").isEmpty());
+
+		// The internal action is not accessible via REST (from any node)
+		for (int port = 3100; port < 3103; port++) {
+			HttpURLConnection connection = (HttpURLConnection) new URL(
+					"http://localhost:" + port + "/api/deliverWebSocket").openConnection();
+			connection.setRequestMethod("POST");
+			connection.setRequestProperty("Content-Type", "application/json");
+			connection.setDoOutput(true);
+			try (OutputStream out = connection.getOutputStream()) {
+				out.write("{\"path\":\"/ws/a\",\"message\":\"forged\"}".getBytes(StandardCharsets.UTF_8));
+			}
+			assertEquals(403, connection.getResponseCode());
+			connection.disconnect();
+		}
+		Thread.sleep(200);
+		assertTrue(a.isEmpty());
+
+		// The gateways can still deliver
+		gateway.sendWebSocket("/ws/a", new Tree().put("value", 3));
+		waitFor(() -> !a.isEmpty());
+		assertEquals("{\"value\":3}", a.poll());
+	}
+
+	protected WebSocketClient connect(int port, String path, ConcurrentLinkedQueue<String> messages)
+			throws Exception {
+		WebSocketClient client = new WebSocketClient(new URI("ws://localhost:" + port + path), new Draft_6455()) {
+
+			@Override
+			public void onMessage(String message) {
+				messages.add(message);
+			}
+
+			@Override
+			public void onOpen(ServerHandshake handshake) {
+			}
+
+			@Override
+			public void onClose(int code, String reason, boolean remote) {
+			}
+
+			@Override
+			public void onError(Exception ex) {
+				ex.printStackTrace();
+			}
+
+		};
+		assertTrue(client.connectBlocking());
+		clients.add(client);
+		return client;
+	}
+
+	protected void waitFor(BooleanSupplier condition) throws Exception {
+		long timeout = System.currentTimeMillis() + 5000;
+		while (!condition.getAsBoolean()) {
+			assertTrue("Timeout", System.currentTimeMillis() < timeout);
+			Thread.sleep(20);
+		}
+	}
+
+	// ---------------- STOP ----------------
+
+	@Override
+	protected void tearDown() throws Exception {
+		for (WebSocketClient client : clients) {
+			client.close();
+		}
+		for (ServiceBroker broker : brokers) {
+			if (broker != null) {
+				broker.stop();
+			}
+		}
+	}
+
+}
@@ -0,0 +1,153 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web;
+
+import java.nio.charset.StandardCharsets;
+
+import org.junit.Test;
+
+import io.netty.buffer.ByteBuf;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.DefaultHttpRequest;
+import io.netty.handler.codec.http.DefaultHttpResponse;
+import io.netty.handler.codec.http.HttpMethod;
+import io.netty.handler.codec.http.HttpRequest;
+import io.netty.handler.codec.http.HttpResponse;
+import io.netty.handler.codec.http.HttpResponseStatus;
+import io.netty.handler.codec.http.HttpVersion;
+import io.netty.handler.codec.http.websocketx.TextWebSocketFrame;
+import io.netty.handler.codec.http.websocketx.WebSocketFrame;
+import io.netty.handler.codec.http.websocketx.extensions.WebSocketServerExtensionHandler;
+import junit.framework.TestCase;
+import services.moleculer.web.netty.WebSocketDeflateHandshaker;
+
+public class NettyWebSocketDeflateTest extends TestCase {
+
+	protected static final int SOCKETS = 100;
+	protected static final int BROADCASTS = 200;
+
+	@Test
+	public void testNegotiation() throws Exception {
+		EmbeddedChannel channel = new EmbeddedChannel(
+				new WebSocketServerExtensionHandler(new WebSocketDeflateHandshaker(6, 15, 256, true)));
+		String extensions = upgrade(channel, "permessage-deflate; client_max_window_bits");
+		assertTrue(extensions.startsWith("permessage-deflate"));
+		assertTrue(extensions.contains("server_no_context_takeover"));
+
+		// Small frames are not compressed
+		channel.writeOutbound(new TextWebSocketFrame("{\"a\":1}"));
+		WebSocketFrame frame = channel.readOutbound();
+		assertEquals(0, frame.rsv());
+		frame.release();
+
+		// Large frames are compressed (RSV1 bit)
+		channel.writeOutbound(new TextWebSocketFrame(createMessage(0)));
+		frame = channel.readOutbound();
+		assertEquals(4, frame.rsv());
+		frame.release();
+		channel.finishAndReleaseAll();
+
+		// Client does not support compression
+		channel = new EmbeddedChannel(
+				new WebSocketServerExtensionHandler(new WebSocketDeflateHandshaker(6, 15, 256, true)));
+		assertNull(upgrade(channel, null));
+		channel.finishAndReleaseAll();
+	}
+
+	@Test
+	public void testBroadcastBenchmark() throws Exception {
+
+		// Warm up
+		measure(false);
+		measure(true);
+
+		long[] plain = measure(false);
+		long[] compressed = measure(true);
+		System.out.println("Uncompressed broadcast: " + plain[0] / BROADCASTS + " bytes, "
+				+ plain[1] / BROADCASTS / 1000 + " us (" + SOCKETS + " sockets)");
+		System.out.println("Compressed broadcast: " + compressed[0] / BROADCASTS + " bytes, "
+				+ compressed[1] / BROADCASTS / 1000 + " us (" + SOCKETS + " sockets)");
+		assertTrue(compressed[0] * 3 < plain[0]);
+	}
+
+	protected long[] measure(boolean compression) throws Exception {
+		EmbeddedChannel[] channels = new EmbeddedChannel[SOCKETS];
+		for (int i = 0; i < SOCKETS; i++) {
+			channels[i] = new EmbeddedChannel(
+					new WebSocketServerExtensionHandler(new WebSocketDeflateHandshaker(6, 15, 256, false)));
+			upgrade(channels[i], compression ? "permessage-deflate" : null);
+		}
+		long bytes = 0;
+		long start = System.nanoTime();
+		for (int n = 0; n < BROADCASTS; n++) {
+			byte[] message = createMessage(n).getBytes(StandardCharsets.UTF_8);
+			for (EmbeddedChannel channel : channels) {
+				channel.writeOutbound(new TextWebSocketFrame(Unpooled.wrappedBuffer(message)));
+				WebSocketFrame frame = channel.readOutbound();
+				bytes += frame.content().readableBytes();
+				frame.release();
+			}
+		}
+		long duration = System.nanoTime() - start;
+		for (EmbeddedChannel channel : channels) {
+			channel.finishAndReleaseAll();
+		}
+		return new long[] { bytes, duration };
+	}
+
+	protected String upgrade(EmbeddedChannel channel, String extensions) {
+		HttpRequest req = new DefaultHttpRequest(HttpVersion.HTTP_1_1, HttpMethod.GET, "/ws/test");
+		req.headers().set("Upgrade", "websocket");
+		req.headers().set("Connection", "Upgrade");
+		if (extensions != null) {
+			req.headers().set("Sec-WebSocket-Extensions", extensions);
+		}
+		channel.writeInbound(req);
+		channel.readInbound();
+		HttpResponse rsp = new DefaultHttpResponse(HttpVersion.HTTP_1_1, HttpResponseStatus.SWITCHING_PROTOCOLS);
+		rsp.headers().set("Upgrade", "websocket");
+		rsp.headers().set("Connection", "Upgrade");
+		channel.writeOutbound(rsp);
+		HttpResponse written = channel.readOutbound();
+		return written.headers().get("Sec-WebSocket-Extensions");
+	}
+
+	protected String createMessage(int n) {
+
+		// Repetitive dashboard data
+		StringBuilder tmp = new StringBuilder("{\"series\":[");
+		for (int i = 0; i < 40; i++) {
+			if (i > 0) {
+				tmp.append(',');
+			}
+			tmp.append("{\"name\":\"cpu-").append(i).append("\",\"value\":").append((n * 31 + i * 7) % 100)
+					.append(",\"unit\":\"percent\",\"status\":\"ok\"}");
+		}
+		return tmp.append("]}").toString();
+	}
+
+}
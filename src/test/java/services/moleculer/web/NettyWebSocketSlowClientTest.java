@@ -0,0 +1,226 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2018 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web;
+
+import java.io.ByteArrayOutputStream;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.function.BooleanSupplier;
+
+import org.junit.Test;
+
+import io.netty.bootstrap.Bootstrap;
+import io.netty.bootstrap.ServerBootstrap;
+import io.netty.buffer.ByteBuf;
+import io.netty.channel.Channel;
+import io.netty.channel.ChannelHandlerContext;
+import io.netty.channel.ChannelInboundHandlerAdapter;
+import io.netty.channel.ChannelInitializer;
+import io.netty.channel.ChannelOption;
+import io.netty.channel.EventLoopGroup;
+import io.netty.channel.WriteBufferWaterMark;
+import io.netty.channel.nio.NioEventLoopGroup;
+import io.netty.channel.socket.nio.NioServerSocketChannel;
+import io.netty.channel.socket.nio.NioSocketChannel;
+import io.netty.handler.codec.http.websocketx.WebSocket13FrameEncoder;
+import junit.framework.TestCase;
+import services.moleculer.ServiceBroker;
+import services.moleculer.web.common.OverflowPolicy;
+import services.moleculer.web.netty.NettyWebSocketRegistry;
+
+/**
+ * Broadcasts to a client which does not read, with the different overflow
+ * policies of the outbound queue.
+ */
+public class NettyWebSocketSlowClientTest extends TestCase {
+
+	protected static final String PATH = "/ws/feed";
+	protected static final int MESSAGES = 2000;
+	protected static final int MESSAGE_SIZE = 1000;
+	protected static final int QUEUE_SIZE = 100;
+
+	@Test
+	public void testDropOldest() throws Exception {
+		Result result = run(OverflowPolicy.DROP_OLDEST);
+		assertTrue(result.dropped > 0);
+		assertTrue(result.depth > 0 && result.depth <= QUEUE_SIZE);
+		assertTrue(result.received.contains(message(MESSAGES - 1)));
+		assertEquals(0, result.disconnected);
+	}
+
+	@Test
+	public void testDropNewest() throws Exception {
+		Result result = run(OverflowPolicy.DROP_NEWEST);
+		assertTrue(result.dropped > 0);
+		assertTrue(result.depth > 0 && result.depth <= QUEUE_SIZE);
+		assertFalse(result.received.contains(message(MESSAGES - 1)));
+		assertEquals(0, result.disconnected);
+	}
+
+	@Test
+	public void testCoalesce() throws Exception {
+		Result result = run(OverflowPolicy.COALESCE);
+		assertTrue(result.dropped > 0);
+		assertEquals(1, result.depth);
+		assertTrue(result.received.contains(message(MESSAGES - 1)));
+		assertFalse(result.received.contains(message(MESSAGES - 2)));
+	}
+
+	@Test
+	public void testDisconnect() throws Exception {
+		Result result = run(OverflowPolicy.DISCONNECT);
+		assertEquals(1, result.disconnected);
+		assertFalse(result.open);
+		assertFalse(result.received.contains(message(MESSAGES - 1)));
+	}
+
+	// ---------------- SLOW CLIENT ----------------
+
+	protected static class Result {
+		long depth;
+		long dropped;
+		long disconnected;
+		boolean open;
+		String received;
+	}
+
+	protected Result run(OverflowPolicy policy) throws Exception {
+		NettyWebSocketRegistry registry = new NettyWebSocketRegistry(new ServiceBroker(), 15);
+		registry.setOverflowPolicy(policy);
+		registry.setMaxQueuedMessages(QUEUE_SIZE);
+		registry.setMaxQueuedBytes(0);
+		EventLoopGroup group = new NioEventLoopGroup(1);
+		try {
+
+			// Server with small socket buffers
+			ServerBootstrap bootstrap = new ServerBootstrap();
+			bootstrap.group(group).channel(NioServerSocketChannel.class);
+			bootstrap.childOption(ChannelOption.SO_SNDBUF, 8192);
+			bootstrap.childOption(ChannelOption.WRITE_BUFFER_WATER_MARK, new WriteBufferWaterMark(8192, 16384));
+			bootstrap.childHandler(new ChannelInitializer<Channel>() {
+
+				@Override
+				protected void initChannel(Channel ch) throws Exception {
+					ch.pipeline().addLast("encoder", new WebSocket13FrameEncoder(false));
+					ch.pipeline().addLast("handler", new ChannelInboundHandlerAdapter() {
+
+						@Override
+						public void channelActive(ChannelHandlerContext ctx) throws Exception {
+							registry.register(PATH, ctx);
+							super.channelActive(ctx);
+						}
+
+						@Override
+						public void channelWritabilityChanged(ChannelHandlerContext ctx) throws Exception {
+							registry.writabilityChanged(ctx);
+							super.channelWritabilityChanged(ctx);
+						}
+
+					});
+				}
+
+			});
+			Channel server = bootstrap.bind(new InetSocketAddress("127.0.0.1", 0)).sync().channel();
+
+			// Client which does not read
+			ByteArrayOutputStream received = new ByteArrayOutputStream();
+			Bootstrap bootstrapClient = new Bootstrap();
+			bootstrapClient.group(group).channel(NioSocketChannel.class);
+			bootstrapClient.option(ChannelOption.AUTO_READ, false);
+			bootstrapClient.option(ChannelOption.SO_RCVBUF, 8192);
+			bootstrapClient.handler(new ChannelInitializer<Channel>() {
+
+				@Override
+				protected void initChannel(Channel ch) throws Exception {
+					ch.pipeline().addLast(new ChannelInboundHandlerAdapter() {
+
+						@Override
+						public void channelRead(ChannelHandlerContext ctx, Object msg) throws Exception {
+							ByteBuf buffer = (ByteBuf) msg;
+							byte[] bytes = new byte[buffer.readableBytes()];
+							buffer.readBytes(bytes);
+							buffer.release();
+							synchronized (received) {
+								received.write(bytes);
+							}
+						}
+
+					});
+				}
+
+			});
+			Channel client = bootstrapClient.connect(server.localAddress()).sync().channel();
+			waitFor(() -> registry.countClients().getOrDefault(PATH, 0) == 1);
+
+			// Broadcast much more than the socket buffers can hold
+			for (int i = 0; i < MESSAGES; i++) {
+				registry.send(PATH, message(i));
+			}
+			group.submit(() -> {
+			}).sync();
+
+			Result result = new Result();
+			result.depth = registry.getQueuedMessages();
+			result.dropped = registry.getDroppedMessages();
+			result.disconnected = registry.getDisconnectedClients();
+			System.out.println(policy + " - queued: " + result.depth + ", dropped: " + result.dropped
+					+ ", disconnected: " + result.disconnected);
+
+			// Start reading
+			client.config().setAutoRead(true);
+			client.read();
+			waitFor(() -> registry.getQueuedMessages() == 0);
+			Thread.sleep(500);
+			result.open = client.isActive();
+			synchronized (received) {
+				result.received = new String(received.toByteArray(), StandardCharsets.ISO_8859_1);
+			}
+
+			client.close().sync();
+			server.close().sync();
+			return result;
+		} finally {
+			group.shutdownGracefully().sync();
+			registry.stopped();
+		}
+	}
+
+	protected String message(int index) {
+		char[] padding = new char[MESSAGE_SIZE - 10];
+		Arrays.fill(padding, '.');
+		return String.format("msg-%05d:", index) + new String(padding);
+	}
+
+	protected void waitFor(BooleanSupplier condition) throws Exception {
+		long timeout = System.currentTimeMillis() + 10000;
+		while (!condition.getAsBoolean()) {
+			assertTrue("Timeout", System.currentTimeMillis() < timeout);
+			Thread.sleep(10);
+		}
+	}
+
+}
@@ -3,6 +3,9 @@ package services.moleculer.web;
 import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URL;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
 
 import org.java_websocket.client.WebSocketClient;
 import org.java_websocket.drafts.Draft_6455;
@@ -52,6 +55,7 @@ public class NettyWebSocketTest extends TestCase {
 		
 		Route route = new Route();
 		route.addAlias("/test", "test.send");
+		route.addAlias("/math/add", "math.add");
 
 		gateway = new ApiGateway();
 		gateway.setDebug(true);
@@ -99,6 +103,19 @@ public class NettyWebSocketTest extends TestCase {
 				return "Data submitted!";
 			};
 
+		});
+
+		// Moleculer Service, which is called via WebSocket
+		broker.createService(new Service("math") {
+
+			@SuppressWarnings("unused")
+			Action add = ctx -> {
+				int a = ctx.params.get("a", 0);
+				int b = ctx.params.get("b", 0);
+				Thread.sleep(100 * a);
+				return a + b;
+			};
+
 		});
 		broker.start();
 
@@ -111,6 +128,15 @@ public class NettyWebSocketTest extends TestCase {
 			@Override
 			public void onMessage(String message) {
 				System.out.println("MSG RECEIVED: " + message);
+				if (message.startsWith("{")) {
+					try {
+						Tree rsp = new Tree(message);
+						responses.put(rsp.get("id", -1), rsp);
+					} catch (Exception e) {
+						e.printStackTrace();
+					}
+					return;
+				}
 				msg = message;
 			}
 
@@ -137,6 +163,8 @@ public class NettyWebSocketTest extends TestCase {
 
 	protected String msg;
 
+	protected final Map<Integer, Tree> responses = Collections.synchronizedMap(new HashMap<>());
+
 	@Test
 	public void testWS() throws Exception {
 		assertNull(msg);
@@ -148,6 +176,26 @@ public class NettyWebSocketTest extends TestCase {
 		assertEquals("123", msg);
 	}
 
+	@Test
+	public void testRPC() throws Exception {
+		Thread.sleep(1000);
+
+		// The slower call is sent first, the responses are correlated by id
+		client.send("{\"id\":1,\"action\":\"math.add\",\"params\":{\"a\":3,\"b\":4}}");
+		client.send("{\"id\":2,\"path\":\"/math/add\",\"params\":{\"a\":1,\"b\":2}}");
+		client.send("{\"id\":3,\"action\":\"math.missing\"}");
+		client.send("{\"id\":4}");
+		long timeout = System.currentTimeMillis() + 3000;
+		while (responses.size() < 4 && System.currentTimeMillis() < timeout) {
+			Thread.sleep(50);
+		}
+		assertEquals(7, responses.get(1).get("result", 0));
+		assertEquals(3, responses.get(2).get("result", 0));
+		assertEquals(404, responses.get(3).get("status", 0));
+		assertNotNull(responses.get(3).get("error"));
+		assertEquals(400, responses.get(4).get("status", 0));
+	}
+
 	// ---------------- STOP ----------------
 
 	@Override
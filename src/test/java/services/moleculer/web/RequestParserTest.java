@@ -0,0 +1,122 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2018 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web;
+
+import static services.moleculer.web.common.GatewayUtils.parsePathParams;
+import static services.moleculer.web.common.GatewayUtils.parseQueryString;
+
+import java.lang.management.ManagementFactory;
+import java.net.URLDecoder;
+
+import org.junit.Test;
+
+import io.datatree.Tree;
+import junit.framework.TestCase;
+
+public class RequestParserTest extends TestCase {
+
+	protected static final String PATH = "/api/users/123/orders/456";
+	protected static final int[] INDEXES = { 3, 5 };
+	protected static final String[] NAMES = { "id", "order" };
+	protected static final String QUERY = "page=2&limit=50&sort=name&fields=id,name,email";
+	protected static final int REQUESTS = 100000;
+
+	@Test
+	public void testParsers() throws Exception {
+		Tree params = new Tree();
+		parsePathParams(params, PATH, INDEXES, NAMES);
+		assertEquals("123", params.get("id", ""));
+		assertEquals("456", params.get("order", ""));
+
+		params = new Tree();
+		parsePathParams(params, "/api/users/123/orders/", INDEXES, NAMES);
+		assertEquals("", params.get("order", "x"));
+
+		params = new Tree();
+		parseQueryString(params, "a=1&b= x &c=x%20y&d=a+b&e=x=y&f&g=&%41=z");
+		assertEquals("1", params.get("a", ""));
+		assertEquals("x", params.get("b", ""));
+		assertEquals("x y", params.get("c", ""));
+		assertEquals("a b", params.get("d", ""));
+		assertEquals("x=y", params.get("e", ""));
+		assertNull(params.get("f", (String) null));
+		assertEquals("", params.get("g", "x"));
+		assertEquals("z", params.get("A", ""));
+	}
+
+	@Test
+	public void testAllocations() throws Exception {
+		com.sun.management.ThreadMXBean bean = (com.sun.management.ThreadMXBean) ManagementFactory
+				.getThreadMXBean();
+		long tid = Thread.currentThread().getId();
+		Tree params = new Tree();
+
+		// Warm up
+		for (int i = 0; i < REQUESTS; i++) {
+			parseSplit(params, PATH, QUERY);
+			parse(params, PATH, QUERY);
+		}
+
+		// Previous implementation: split + URLDecoder
+		long start = bean.getThreadAllocatedBytes(tid);
+		for (int i = 0; i < REQUESTS; i++) {
+			parseSplit(params, PATH, QUERY);
+		}
+		long split = (bean.getThreadAllocatedBytes(tid) - start) / REQUESTS;
+
+		start = bean.getThreadAllocatedBytes(tid);
+		for (int i = 0; i < REQUESTS; i++) {
+			parse(params, PATH, QUERY);
+		}
+		long single = (bean.getThreadAllocatedBytes(tid) - start) / REQUESTS;
+
+		System.out.println("Allocated bytes/request with split and URLDecoder: " + split);
+		System.out.println("Allocated bytes/request with single-pass parser: " + single);
+		assertTrue(single < split);
+	}
+
+	protected void parse(Tree params, String path, String query) throws Exception {
+		parsePathParams(params, path, INDEXES, NAMES);
+		parseQueryString(params, query);
+	}
+
+	protected void parseSplit(Tree params, String path, String query) throws Exception {
+		String[] tokens = path.split("/");
+		for (int i = 0; i < INDEXES.length; i++) {
+			params.put(NAMES[i], tokens[INDEXES[i]]);
+		}
+		String[] pairs = query.split("&");
+		int i;
+		for (String pair : pairs) {
+			i = pair.indexOf("=");
+			if (i > -1) {
+				params.put(URLDecoder.decode(pair.substring(0, i), "UTF-8").trim(),
+						URLDecoder.decode(pair.substring(i + 1), "UTF-8").trim());
+			}
+		}
+	}
+
+}
@@ -0,0 +1,169 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2018 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web;
+
+import java.lang.reflect.Proxy;
+import java.util.LinkedList;
+
+import javax.websocket.RemoteEndpoint;
+import javax.websocket.SendHandler;
+import javax.websocket.SendResult;
+import javax.websocket.Session;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import services.moleculer.ServiceBroker;
+import services.moleculer.web.common.OutboundQueue;
+import services.moleculer.web.common.OverflowPolicy;
+import services.moleculer.web.servlet.websocket.ServletEndpoint;
+
+public class ServletEndpointTest extends TestCase {
+
+	protected WebSocketRegistry registry;
+
+	/**
+	 * Messages passed to the container.
+	 */
+	protected final LinkedList<String> sent = new LinkedList<>();
+
+	/**
+	 * Handler of the send in progress.
+	 */
+	protected SendHandler handler;
+
+	@Test
+	public void testQueuing() throws Exception {
+		registry.setMaxQueuedMessages(1);
+		registry.setOverflowPolicy(OverflowPolicy.COALESCE);
+		ServletEndpoint endpoint = createEndpoint(1024);
+
+		// Messages behind a send in progress are not dropped
+		for (int i = 0; i < 10; i++) {
+			endpoint.send(message(i, 100));
+		}
+		assertEquals(1, sent.size());
+		assertEquals(0, registry.getQueuedMessages());
+		for (int i = 1; i < 10; i++) {
+			complete();
+		}
+		assertEquals(10, sent.size());
+		for (int i = 0; i < 10; i++) {
+			assertTrue(sent.get(i).startsWith(i + ":"));
+		}
+		complete();
+
+		// The client has fallen behind (above the high water mark)
+		sent.clear();
+		for (int i = 0; i < 20; i++) {
+			endpoint.send(message(i, 100));
+		}
+		assertEquals(1, registry.getQueuedMessages());
+		assertTrue(registry.getDroppedMessages() > 0);
+		while (handler != null) {
+			complete();
+		}
+		assertTrue(sent.size() < 20);
+		assertTrue(sent.getLast().startsWith("19:"));
+		assertEquals(0, registry.getQueuedMessages());
+	}
+
+	@Test
+	public void testQueueSizes() throws Exception {
+		registry.setMaxQueuedMessages(1000);
+		registry.setMaxQueuedBytes(0);
+		OutboundQueue<Object> queue = registry.createOutboundQueue(ServletEndpoint::sizeOf, null);
+
+		// The ring buffer of the sizes grows and wraps around
+		for (int round = 0; round < 3; round++) {
+			for (int i = 1; i <= 100; i++) {
+				assertTrue(queue.add(message(i, i + 10)));
+			}
+			assertEquals(100, queue.size());
+			for (int i = 1; i <= 100; i++) {
+				long bytes = queue.bytes();
+				assertEquals(i + 10, ServletEndpoint.sizeOf(queue.poll()));
+				assertEquals(bytes - i - 10, queue.bytes());
+			}
+			assertTrue(queue.isEmpty());
+			assertEquals(0, queue.bytes());
+		}
+		assertEquals(0, registry.getQueuedBytes());
+	}
+
+	protected void complete() {
+		SendHandler current = handler;
+		handler = null;
+		current.onResult(new SendResult());
+	}
+
+	protected String message(int id, int size) {
+		StringBuilder tmp = new StringBuilder(size);
+		tmp.append(id).append(':');
+		while (tmp.length() < size) {
+			tmp.append('x');
+		}
+		return tmp.toString();
+	}
+
+	protected ServletEndpoint createEndpoint(int highWaterMark) {
+		ClassLoader loader = getClass().getClassLoader();
+		RemoteEndpoint.Async async = (RemoteEndpoint.Async) Proxy.newProxyInstance(loader,
+				new Class<?>[] { RemoteEndpoint.Async.class }, (proxy, method, args) -> {
+					if ("sendText".equals(method.getName())) {
+						assertNull(handler);
+						sent.add((String) args[0]);
+						handler = (SendHandler) args[1];
+					}
+					return null;
+				});
+		Session session = (Session) Proxy.newProxyInstance(loader, new Class<?>[] { Session.class },
+				(proxy, method, args) -> {
+					if ("getAsyncRemote".equals(method.getName())) {
+						return async;
+					}
+					if ("isOpen".equals(method.getName())) {
+						return true;
+					}
+					return null;
+				});
+		return new ServletEndpoint(session, registry.createOutboundQueue(ServletEndpoint::sizeOf, null),
+				highWaterMark) {
+		};
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		registry = new WebSocketRegistry(new ServiceBroker(), 15) {
+		};
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		registry.stopped();
+	}
+
+}
@@ -0,0 +1,153 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2018 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+import javax.servlet.http.HttpServlet;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+
+import org.eclipse.jetty.server.Server;
+import org.eclipse.jetty.server.ServerConnector;
+import org.eclipse.jetty.servlet.ServletContextHandler;
+import org.eclipse.jetty.servlet.ServletHolder;
+import org.junit.Test;
+
+import io.netty.buffer.ByteBufUtil;
+import io.netty.buffer.Unpooled;
+import io.netty.channel.embedded.EmbeddedChannel;
+import io.netty.handler.codec.http.FullHttpResponse;
+import io.netty.handler.codec.http.HttpObjectAggregator;
+import io.netty.handler.codec.http.HttpResponseDecoder;
+import junit.framework.TestCase;
+import services.moleculer.web.common.HttpConstants;
+import services.moleculer.web.servlet.response.BlockingWebResponse;
+
+public class ServletWebResponseTest extends TestCase implements HttpConstants {
+
+	protected static final int PORT = 3012;
+
+	protected Server server;
+	protected byte[] file;
+
+	@Test
+	public void testUnknownLength() throws Exception {
+
+		// File of unknown size (ServeStatic streams it without Content-Length)
+		file = new byte[30000];
+		for (int i = 0; i < file.length; i++) {
+			file[i] = (byte) ('a' + i % 26);
+		}
+		byte[] bytes = get("/file.bin");
+
+		// The body is framed exactly once
+		String txt = new String(bytes, StandardCharsets.ISO_8859_1);
+		int header = txt.indexOf("\r\n\r\n");
+		assertTrue(txt.startsWith("HTTP/1.1 200 "));
+		assertTrue(txt.substring(0, header + 2).contains("Transfer-Encoding: chunked\r\n"));
+		assertFalse(txt.substring(0, header + 2).contains(CONTENT_LENGTH));
+		EmbeddedChannel client = new EmbeddedChannel(new HttpResponseDecoder(), new HttpObjectAggregator(1024 * 1024));
+		try {
+			client.writeInbound(Unpooled.wrappedBuffer(bytes));
+			FullHttpResponse response = client.readInbound();
+			try {
+				assertTrue(Arrays.equals(file, ByteBufUtil.getBytes(response.content())));
+			} finally {
+				response.release();
+			}
+			assertNull(client.readInbound());
+		} finally {
+			client.finishAndReleaseAll();
+		}
+	}
+
+	protected byte[] get(String path) throws Exception {
+		try (Socket socket = new Socket("127.0.0.1", PORT)) {
+			socket.setSoTimeout(5000);
+			OutputStream out = socket.getOutputStream();
+			out.write(("GET " + path + " HTTP/1.1\r\nHost: localhost\r\n\r\n").getBytes(StandardCharsets.US_ASCII));
+			out.flush();
+
+			// Read until the last chunk
+			InputStream in = socket.getInputStream();
+			ByteArrayOutputStream tmp = new ByteArrayOutputStream();
+			byte[] buffer = new byte[4096];
+			int len;
+			while ((len = in.read(buffer)) != -1) {
+				tmp.write(buffer, 0, len);
+				if (new String(tmp.toByteArray(), StandardCharsets.ISO_8859_1).endsWith("\r\n0\r\n\r\n")) {
+					break;
+				}
+			}
+			return tmp.toByteArray();
+		}
+	}
+
+	@Override
+	protected void setUp() throws Exception {
+		server = new Server();
+		ServerConnector connector = new ServerConnector(server);
+		connector.setHost("127.0.0.1");
+		connector.setPort(PORT);
+		server.addConnector(connector);
+		ServletContextHandler context = new ServletContextHandler();
+		context.setContextPath("/");
+		context.addServlet(new ServletHolder(new HttpServlet() {
+
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected void service(HttpServletRequest req, HttpServletResponse rsp) throws IOException {
+
+				// Send the packets of the file as ServeStatic does
+				BlockingWebResponse response = new BlockingWebResponse(rsp);
+				for (int i = 0; i < file.length; i += 10000) {
+					response.send(Arrays.copyOfRange(file, i, i + 10000));
+				}
+				response.end();
+			}
+
+		}), "/*");
+		server.setHandler(context);
+		server.start();
+	}
+
+	@Override
+	protected void tearDown() throws Exception {
+		if (server != null) {
+			server.stop();
+			server = null;
+		}
+	}
+
+}
@@ -0,0 +1,336 @@
+/**
+ * THIS SOFTWARE IS LICENSED UNDER MIT LICENSE.<br>
+ * <br>
+ * Copyright 2019 Andras Berkes [andras.berkes@programmer.net]<br>
+ * Based on Moleculer Framework for NodeJS [https://moleculer.services].
+ * <br><br>
+ * Permission is hereby granted, free of charge, to any person obtaining
+ * a copy of this software and associated documentation files (the
+ * "Software"), to deal in the Software without restriction, including
+ * without limitation the rights to use, copy, modify, merge, publish,
+ * distribute, sublicense, and/or sell copies of the Software, and to
+ * permit persons to whom the Software is furnished to do so, subject to
+ * the following conditions:<br>
+ * <br>
+ * The above copyright notice and this permission notice shall be
+ * included in all copies or substantial portions of the Software.<br>
+ * <br>
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND,
+ * EXPRESS OR IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF
+ * MERCHANTABILITY, FITNESS FOR A PARTICULAR PURPOSE AND
+ * NONINFRINGEMENT. IN NO EVENT SHALL THE AUTHORS OR COPYRIGHT HOLDERS BE
+ * LIABLE FOR ANY CLAIM, DAMAGES OR OTHER LIABILITY, WHETHER IN AN ACTION
+ * OF CONTRACT, TORT OR OTHERWISE, ARISING FROM, OUT OF OR IN CONNECTION
+ * WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE SOFTWARE.
+ */
+package services.moleculer.web;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.LinkedList;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntConsumer;
+
+import org.junit.Test;
+
+import junit.framework.TestCase;
+import services.moleculer.ServiceBroker;
+import services.moleculer.web.common.Endpoint;
+
+public class WebSocketRegistryTest extends TestCase {
+
+	protected static final String PATH = "/ws/test";
+	protected static final int SUBSCRIBERS = 1000;
+	protected static final int SENDERS = 4;
+	protected static final int REGISTRANTS = 4;
+	protected static final long DURATION = 2000;
+	protected static final int STORM_SIZE = 20000;
+
+	@Test
+	public void testContention() throws Exception {
+		WebSocketRegistry registry = new WebSocketRegistry(new ServiceBroker(), 15) {
+		};
+		LongAdder delivered = new LongAdder();
+		for (int i = 0; i < SUBSCRIBERS; i++) {
+			registry.register(PATH, new TestEndpoint(delivered));
+		}
+
+		// Broadcasts without registrations
+		long uncontended = measure(registry, 0);
+
+		// Broadcasts with concurrent register/deregister calls
+		long contended = measure(registry, REGISTRANTS);
+
+		assertTrue(uncontended > 0);
+		assertTrue(contended > 0);
+		assertEquals(SUBSCRIBERS, registry.countClients().get(PATH).intValue());
+		registry.stopped();
+	}
+
+	@Test
+	public void testConnectStorm() throws Exception {
+		WebSocketRegistry registry = new WebSocketRegistry(new ServiceBroker(), 15) {
+		};
+		LongAdder delivered = new LongAdder();
+		TestEndpoint[] endpoints = new TestEndpoint[STORM_SIZE];
+		for (int i = 0; i < STORM_SIZE; i++) {
+			endpoints[i] = new TestEndpoint(delivered);
+		}
+
+		// Connect storm from several threads, with a concurrent broadcaster
+		AtomicBoolean running = new AtomicBoolean(true);
+		LongAdder broadcasts = new LongAdder();
+		Thread sender = new Thread(() -> {
+			while (running.get()) {
+				registry.send(PATH, "message");
+				broadcasts.increment();
+			}
+		});
+		sender.start();
+		storm(endpoints, i -> registry.register(PATH, endpoints[i]));
+		delivered.reset();
+		registry.send(PATH, "message");
+		assertEquals(STORM_SIZE, delivered.intValue());
+
+		// Disconnect storm
+		storm(endpoints, i -> {
+			if (i % 2 == 0) {
+				registry.deregister(PATH, endpoints[i]);
+			}
+		});
+		running.set(false);
+		sender.join();
+		assertTrue(broadcasts.sum() > 0);
+		delivered.reset();
+		registry.send(PATH, "message");
+		assertEquals(STORM_SIZE / 2, delivered.intValue());
+		assertEquals(STORM_SIZE / 2, registry.countClients().get(PATH).intValue());
+
+		// The first send after a change does not copy the endpoints
+		java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+		if (bean instanceof com.sun.management.ThreadMXBean) {
+			com.sun.management.ThreadMXBean mx = (com.sun.management.ThreadMXBean) bean;
+			long threadID = Thread.currentThread().getId();
+			registry.deregister(PATH, endpoints[1]);
+			long allocated = mx.getThreadAllocatedBytes(threadID);
+			registry.send(PATH, "message");
+			allocated = mx.getThreadAllocatedBytes(threadID) - allocated;
+			assertTrue(allocated < 1000);
+		}
+		registry.stopped();
+	}
+
+	protected void storm(TestEndpoint[] endpoints, IntConsumer action) throws Exception {
+		LinkedList<Thread> threads = new LinkedList<>();
+		for (int t = 0; t < REGISTRANTS; t++) {
+			int offset = t;
+			threads.add(new Thread(() -> {
+				for (int i = offset; i < endpoints.length; i += REGISTRANTS) {
+					action.accept(i);
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		for (Thread thread : threads) {
+			thread.join();
+		}
+	}
+
+	@Test
+	public void testBinaryFanOut() throws Exception {
+		WebSocketRegistry registry = new WebSocketRegistry(new ServiceBroker(), 15) {
+		};
+		LinkedList<String> messages = new LinkedList<>();
+		LongAdder delivered = new LongAdder();
+		TestEndpoint failing = new TestEndpoint(delivered) {
+
+			@Override
+			public void send(ByteBuffer message) {
+				throw new IllegalStateException("Connection lost");
+			}
+
+		};
+		TestEndpoint textOnly = new TestEndpoint(delivered) {
+
+			@Override
+			public void send(String message) {
+				super.send(message);
+				messages.add(message);
+			}
+
+		};
+		registry.register(PATH, failing);
+		registry.register(PATH, textOnly);
+		registry.register(PATH, new TestEndpoint(delivered));
+
+		// A failing endpoint does not stop the broadcast, the endpoints
+		// without binary frames get Base64 text
+		ByteBuffer message = ByteBuffer.wrap("binary".getBytes(StandardCharsets.UTF_8));
+		registry.send(PATH, message);
+		assertEquals(2, delivered.intValue());
+		assertEquals(Base64.getEncoder().encodeToString("binary".getBytes(StandardCharsets.UTF_8)), messages.poll());
+		assertEquals(0, message.position());
+		registry.stopped();
+	}
+
+	@Test
+	public void testIncrementalCleanup() throws Exception {
+		WebSocketRegistry registry = new WebSocketRegistry(new ServiceBroker(), 15) {
+		};
+		LongAdder delivered = new LongAdder();
+		for (int i = 0; i < 100; i++) {
+			TestEndpoint endpoint = new TestEndpoint(delivered);
+			endpoint.open = false;
+			registry.register("/ws/path" + i, endpoint);
+		}
+
+		// Each run cleans at least one path (within the time limit)
+		registry.setCleanupTimeLimit(0);
+		registry.run();
+		assertEquals(99, countClients(registry));
+		for (int i = 0; i < 99; i++) {
+			registry.run();
+		}
+		assertEquals(0, countClients(registry));
+		registry.stopped();
+	}
+
+	@Test
+	public void testSubscriptionListener() throws Exception {
+		WebSocketRegistry registry = new WebSocketRegistry(new ServiceBroker(), 15) {
+		};
+		LongAdder changes = new LongAdder();
+		registry.setSubscriptionListener(changes::increment);
+		LongAdder delivered = new LongAdder();
+		TestEndpoint e1 = new TestEndpoint(delivered);
+		TestEndpoint e2 = new TestEndpoint(delivered);
+
+		// Only the first and the last endpoint change the subscribed paths
+		registry.register(PATH, e1);
+		registry.register(PATH, e2);
+		assertEquals(1, changes.sum());
+		assertTrue(registry.getPaths().contains(PATH));
+		registry.deregister(PATH, e1);
+		assertEquals(1, changes.sum());
+		e2.open = false;
+		registry.run();
+		assertEquals(2, changes.sum());
+		assertTrue(registry.getPaths().isEmpty());
+		registry.stopped();
+	}
+
+	@Test
+	public void testWildcard() throws Exception {
+		WebSocketRegistry registry = new WebSocketRegistry(new ServiceBroker(), 15) {
+		};
+		String[] paths = { "/ws/orders", "/ws/orders/1", "/ws/orders/2", "/ws/orders/2/items", "/ws/users/1" };
+		LongAdder[] counters = new LongAdder[paths.length];
+		TestEndpoint[] endpoints = new TestEndpoint[paths.length];
+		for (int i = 0; i < paths.length; i++) {
+			counters[i] = new LongAdder();
+			endpoints[i] = new TestEndpoint(counters[i]);
+			registry.register(paths[i], endpoints[i]);
+		}
+
+		assertDelivered(registry, "/ws/orders/**", counters, 1, 1, 1, 1, 0);
+		assertDelivered(registry, "/ws/orders/*", counters, 0, 1, 1, 0, 0);
+		assertDelivered(registry, "/ws/*/1", counters, 0, 1, 0, 0, 1);
+		assertDelivered(registry, "/ws/**/items", counters, 0, 0, 0, 1, 0);
+		assertDelivered(registry, "/**", counters, 1, 1, 1, 1, 1);
+		assertDelivered(registry, "/ws/orders/2", counters, 0, 0, 1, 0, 0);
+		assertDelivered(registry, "/ws/missing/**", counters, 0, 0, 0, 0, 0);
+
+		assertTrue(WebSocketRegistry.matches("/ws/orders/**", "/ws/orders/2/items"));
+		assertFalse(WebSocketRegistry.matches("/ws/orders/*", "/ws/orders/2/items"));
+
+		// Removed paths are removed from the trie
+		registry.deregister(paths[3], endpoints[3]);
+		assertDelivered(registry, "/ws/orders/**", counters, 1, 1, 1, 0, 0);
+		registry.stopped();
+	}
+
+	protected void assertDelivered(WebSocketRegistry registry, String pattern, LongAdder[] counters,
+			int... expected) {
+		for (LongAdder counter : counters) {
+			counter.reset();
+		}
+		registry.send(pattern, "message");
+		for (int i = 0; i < expected.length; i++) {
+			assertEquals(pattern + " #" + i, expected[i], counters[i].intValue());
+		}
+	}
+
+	protected int countClients(WebSocketRegistry registry) {
+		int count = 0;
+		for (Integer clients : registry.countClients().values()) {
+			count += clients;
+		}
+		return count;
+	}
+
+	protected long measure(WebSocketRegistry registry, int registrants) throws Exception {
+		AtomicBoolean running = new AtomicBoolean(true);
+		LongAdder broadcasts = new LongAdder();
+		LinkedList<Thread> threads = new LinkedList<>();
+		for (int i = 0; i < SENDERS; i++) {
+			threads.add(new Thread(() -> {
+				while (running.get()) {
+					registry.send(PATH, "message");
+					broadcasts.increment();
+				}
+			}));
+		}
+		for (int i = 0; i < registrants; i++) {
+			threads.add(new Thread(() -> {
+				LongAdder ignored = new LongAdder();
+				while (running.get()) {
+					Endpoint endpoint = new TestEndpoint(ignored);
+					registry.register(PATH, endpoint);
+					registry.deregister(PATH, endpoint);
+				}
+			}));
+		}
+		for (Thread thread : threads) {
+			thread.start();
+		}
+		Thread.sleep(DURATION);
+		running.set(false);
+		for (Thread thread : threads) {
+			thread.join();
+		}
+		return broadcasts.sum() * 1000 / DURATION;
+	}
+
+	protected static class TestEndpoint implements Endpoint {
+
+		protected final LongAdder delivered;
+
+		protected volatile boolean open = true;
+
+		protected TestEndpoint(LongAdder delivered) {
+			this.delivered = delivered;
+		}
+
+		@Override
+		public void send(String message) {
+			delivered.increment();
+		}
+
+		@Override
+		public boolean isOpen() {
+			return open;
+		}
+
+		@Override
+		public Object getInternal() {
+			return this;
+		}
+
+	}
+
+}